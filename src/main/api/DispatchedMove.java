@@ -0,0 +1,16 @@
+package main.api;
+
+/**
+ * A {@link Move} that has been carried out, along with the firefighter that moved and the
+ * building whose fire was put out
+ */
+public class DispatchedMove extends Move {
+    public final Firefighter firefighter;
+    public final CityNode building;
+
+    public DispatchedMove(int fireFighterIdx, int buildingIdx, Firefighter firefighter, CityNode building) {
+        super(fireFighterIdx, buildingIdx);
+        this.firefighter = firefighter;
+        this.building = building;
+    }
+}
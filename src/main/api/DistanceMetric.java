@@ -0,0 +1,27 @@
+package main.api;
+
+/**
+ * Travel cost between two locations in the city
+ */
+@FunctionalInterface
+public interface DistanceMetric {
+
+  /**
+   * Distance used when every cell of the city can be crossed
+   */
+  DistanceMetric TAXICAB = CityNode::absDistance;
+
+  /**
+   * Returned when there is no route between two locations
+   */
+  int UNREACHABLE = Integer.MAX_VALUE;
+
+  /**
+   * Get the travel cost between two locations
+   *
+   * @param from start location
+   * @param to end location
+   * @return the travel cost, or {@link #UNREACHABLE} if there is no route
+   */
+  int distance(CityNode from, CityNode to);
+}
@@ -39,4 +39,47 @@ public interface FireDispatch {
    * @param burningBuildings list of locations to be visited
    */
   void greedyDispatch(CityNode[] burningBuildings);
+
+  /**
+   * Orders the buildings along a space filling curve to dispatch very large numbers of fires quickly
+   *
+   * @param burningBuildings list of locations to be visited
+   */
+  void spaceFillingCurveDispatch(CityNode[] burningBuildings);
+
+  /**
+   * Builds one route per firefighter by merging routes from the FireStation with the largest savings
+   *
+   * @param burningBuildings list of locations to be visited
+   */
+  void savingsDispatch(CityNode[] burningBuildings);
+
+  /**
+   * Improves on the savings routes with a time or iteration bounded large neighbourhood search
+   *
+   * @param burningBuildings list of locations to be visited
+   */
+  void largeNeighbourhoodDispatch(CityNode[] burningBuildings);
+
+  /**
+   * Routes city scale incidents block by block, solving the blocks in parallel
+   *
+   * @param burningBuildings list of locations to be visited
+   */
+  void hierarchicalDispatch(CityNode[] burningBuildings);
+
+  /**
+   * Searches for the plan with the least total distance, proving it optimal or reporting the gap
+   * when the search budget runs out
+   *
+   * @param burningBuildings list of locations to be visited
+   */
+  void branchAndBoundDispatch(CityNode[] burningBuildings);
+
+  /**
+   * Finds the optimal split of a small incident between the firefighters with exact dynamic programming
+   *
+   * @param burningBuildings list of locations to be visited
+   */
+  void setPartitionDispatch(CityNode[] burningBuildings);
 }
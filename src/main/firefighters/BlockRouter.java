@@ -0,0 +1,200 @@
+package main.firefighters;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Coarse to fine routing for city scale incidents. The grid is tiled into square blocks holding about
+ * blockFires fires each and every block is reduced to the centroid of its fires. Savings routes over
+ * the centroids give each firefighter a stretch of blocks. Blocks are then routed independently and in
+ * parallel, each as a savings route entered from the centroid of the block before and walked towards
+ * the centroid of the block after, tidied with a bounded 2-opt. A final bounded 2-opt over each
+ * firefighter's whole route stitches the block routes together at the boundaries.
+ *
+ * For a fixed block size, neighbour count and 2-opt window every step is O(m log m) or better, and
+ * blocks only ever see their own fires
+ */
+public final class BlockRouter {
+  public static final int DEFAULT_BLOCK_FIRES = 1024;
+  private static final int NO_EXIT = -1;
+
+  private BlockRouter() {}
+
+  /**
+   * Plans a route for every firefighter
+   *
+   * @param startXs X coordinate of each firefighter
+   * @param startYs Y coordinate of each firefighter
+   * @param n number of firefighters
+   * @param stationX X coordinate of the FireStation, where the block tour is split from
+   * @param stationY Y coordinate of the FireStation
+   * @param xs X coordinates of the buildings
+   * @param ys Y coordinates of the buildings
+   * @param candidates indices of the buildings to route
+   * @param count number of candidates
+   * @param blockFires fires per block on average
+   * @param xDimension X dimension of the city
+   * @param yDimension Y dimension of the city
+   * @return building indices each firefighter visits, in order
+   */
+  public static int[][] plan(int[] startXs, int[] startYs, int n, int stationX, int stationY, int[] xs, int[] ys,
+                             int[] candidates, int count, int blockFires, int xDimension, int yDimension) {
+    int[][] plan = new int[n][];
+    Arrays.fill(plan, new int[0]);
+    if (n == 0 || count == 0)
+      return plan;
+
+    // Tile the city so blocks hold about blockFires fires on average
+    int side = (int) Math.max(1, Math.ceil(Math.sqrt((double) xDimension * yDimension * blockFires / count)));
+    int gridHeight = (yDimension - 1) / side + 1;
+    int blocks = ((xDimension - 1) / side + 1) * gridHeight;
+
+    // Counting sort of the fires into blocks
+    int[] blockStart = new int[blocks + 1];
+    for (int i = 0; i < count; i++)
+      blockStart[blockOf(xs[candidates[i]], ys[candidates[i]], side, gridHeight) + 1]++;
+    for (int b = 0; b < blocks; b++)
+      blockStart[b + 1] += blockStart[b];
+    int[] items = new int[count];
+    int[] fill = Arrays.copyOf(blockStart, blocks);
+    for (int i = 0; i < count; i++)
+      items[fill[blockOf(xs[candidates[i]], ys[candidates[i]], side, gridHeight)]++] = candidates[i];
+
+    // Reduce every block with fires to the centroid of its fires
+    int used = 0;
+    for (int b = 0; b < blocks; b++) {
+      if (blockStart[b + 1] > blockStart[b])
+        used++;
+    }
+    int[] usedBlocks = new int[used];
+    int[] centreXs = new int[used];
+    int[] centreYs = new int[used];
+    used = 0;
+    for (int b = 0; b < blocks; b++) {
+      int size = blockStart[b + 1] - blockStart[b];
+      if (size == 0)
+        continue;
+      long sumX = 0;
+      long sumY = 0;
+      for (int s = blockStart[b]; s < blockStart[b + 1]; s++) {
+        sumX += xs[items[s]];
+        sumY += ys[items[s]];
+      }
+      usedBlocks[used] = b;
+      centreXs[used] = (int) (sumX / size);
+      centreYs[used] = (int) (sumY / size);
+      used++;
+    }
+
+    // Savings routes over the centroids, at most one stretch of blocks per firefighter
+    int[] all = new int[used];
+    for (int i = 0; i < used; i++)
+      all[i] = i;
+    int[][] stretches = SavingsRouter.routes(stationX, stationY, centreXs, centreYs, all, used, n,
+        SavingsRouter.DEFAULT_NEIGHBOURS);
+
+    // Each stretch goes to the free firefighter closest to either of its ends, starting from that end.
+    // A block is entered from the centroid of the block before it, or from the firefighter for the
+    // first block, and left towards the centroid of the block after it
+    int[] owner = new int[stretches.length];
+    int[] entryXs = new int[used];
+    int[] entryYs = new int[used];
+    int[] exitXs = new int[used];
+    int[] exitYs = new int[used];
+    boolean[] assigned = new boolean[n];
+    boolean[] routed = new boolean[stretches.length];
+    for (int r = 0; r < stretches.length; r++) {
+      int bestStretch = -1;
+      int firefighterIdx = -1;
+      boolean reversed = false;
+      int best = Integer.MAX_VALUE;
+      for (int q = 0; q < stretches.length; q++) {
+        if (routed[q])
+          continue;
+        int head = stretches[q][0];
+        int tail = stretches[q][stretches[q].length - 1];
+        for (int f = 0; f < n; f++) {
+          if (assigned[f])
+            continue;
+          int toHead = Math.abs(startXs[f] - centreXs[head]) + Math.abs(startYs[f] - centreYs[head]);
+          int toTail = Math.abs(startXs[f] - centreXs[tail]) + Math.abs(startYs[f] - centreYs[tail]);
+          if (toHead < best || toTail < best) {
+            best = Math.min(toHead, toTail);
+            bestStretch = q;
+            firefighterIdx = f;
+            reversed = toTail < toHead;
+          }
+        }
+      }
+      routed[bestStretch] = true;
+      assigned[firefighterIdx] = true;
+      owner[bestStretch] = firefighterIdx;
+
+      int[] stretch = stretches[bestStretch];
+      if (reversed)
+        HilbertRouter.reverse(stretch, 0, stretch.length - 1);
+      for (int p = 0; p < stretch.length; p++) {
+        entryXs[stretch[p]] = p == 0 ? startXs[firefighterIdx] : centreXs[stretch[p - 1]];
+        entryYs[stretch[p]] = p == 0 ? startYs[firefighterIdx] : centreYs[stretch[p - 1]];
+        exitXs[stretch[p]] = p + 1 < stretch.length ? centreXs[stretch[p + 1]] : NO_EXIT;
+        exitYs[stretch[p]] = p + 1 < stretch.length ? centreYs[stretch[p + 1]] : NO_EXIT;
+      }
+    }
+
+    // Route inside every block in parallel, each block owns its slice of items
+    IntStream.range(0, used).parallel().forEach(u -> {
+      int from = blockStart[usedBlocks[u]];
+      int to = blockStart[usedBlocks[u] + 1];
+      routeBlock(entryXs[u], entryYs[u], exitXs[u], exitYs[u], xs, ys, items, from, to);
+    });
+
+    // Join the block routes of each stretch and smooth the seams
+    for (int r = 0; r < stretches.length; r++) {
+      int length = 0;
+      for (int u : stretches[r])
+        length += blockStart[usedBlocks[u] + 1] - blockStart[usedBlocks[u]];
+
+      int[] route = new int[length];
+      length = 0;
+      for (int u : stretches[r]) {
+        int b = usedBlocks[u];
+        System.arraycopy(items, blockStart[b], route, length, blockStart[b + 1] - blockStart[b]);
+        length += blockStart[b + 1] - blockStart[b];
+      }
+      int f = owner[r];
+      HilbertRouter.improve(startXs[f], startYs[f], xs, ys, route, HilbertRouter.DEFAULT_WINDOW,
+          HilbertRouter.DEFAULT_PASSES);
+      plan[f] = route;
+    }
+    return plan;
+  }
+
+  /**
+   * Orders items[from, to) as a single savings route, walked in whichever direction joins the entry
+   * and exit points more cheaply, then tidies it
+   */
+  private static void routeBlock(int entryX, int entryY, int exitX, int exitY, int[] xs, int[] ys, int[] items,
+                                 int from, int to) {
+    int[] block = Arrays.copyOfRange(items, from, to);
+    int[] route = SavingsRouter.routes(entryX, entryY, xs, ys, block, block.length, 1,
+        SavingsRouter.DEFAULT_NEIGHBOURS)[0];
+
+    int head = route[0];
+    int tail = route[route.length - 1];
+    long forward = Math.abs(entryX - xs[head]) + Math.abs(entryY - ys[head]);
+    long backward = Math.abs(entryX - xs[tail]) + Math.abs(entryY - ys[tail]);
+    if (exitX != NO_EXIT) {
+      forward += Math.abs(exitX - xs[tail]) + Math.abs(exitY - ys[tail]);
+      backward += Math.abs(exitX - xs[head]) + Math.abs(exitY - ys[head]);
+    }
+    if (backward < forward)
+      HilbertRouter.reverse(route, 0, route.length - 1);
+
+    HilbertRouter.improve(entryX, entryY, xs, ys, route, HilbertRouter.DEFAULT_WINDOW, HilbertRouter.DEFAULT_PASSES);
+    System.arraycopy(route, 0, items, from, route.length);
+  }
+
+  private static int blockOf(int x, int y, int side, int gridHeight) {
+    return (x / side) * gridHeight + y / side;
+  }
+}
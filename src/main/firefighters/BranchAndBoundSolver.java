@@ -0,0 +1,367 @@
+package main.firefighters;
+
+import java.util.Arrays;
+
+/**
+ * Exact solver for open routes, one per firefighter, minimizing the total distance driven.
+ * Routes are built one firefighter at a time, depth first: a node either sends the current firefighter
+ * on to another fire or closes its route and moves on to the next firefighter.
+ *
+ * Every way of finishing a partial plan is a forest joining the remaining fires to the route ends still
+ * open, so the minimum spanning forest over them is a lower bound. The bound never decreases along a
+ * branch, children are tried cheapest bound first and pruned against the incumbent, which starts as the
+ * greedy plan. Firefighters starting from the same place are interchangeable, so consecutive ones must
+ * start their routes at increasing fires.
+ *
+ * All search state is sized up front and the search itself allocates nothing. When the time or node
+ * budget runs out the smallest bound left unexplored is a lower bound on the optimum, reported as
+ * the gap
+ */
+public final class BranchAndBoundSolver {
+  public static final int MAX_FIRES = 24;
+  private static final int START = -1;
+  private static final int CLOSE = -1;
+  private static final int TIME_CHECK_MASK = 63;
+
+  private final int n;
+  private final int m;
+  private final int[] candidates;
+  private final int[][] startDist;
+  private final int[][] pairDist;
+  // rootDist[f][i] = closest start of firefighters f.. to fire i, rootDist[n] is unreachable
+  private final int[][] rootDist;
+  private final boolean[] sameStart;
+
+  private final boolean[] visited;
+  private final int[] first;
+  private final int[] pathFire;
+  private final int[] pathFirefighter;
+  private final int[] bestFire;
+  private final int[] bestFirefighter;
+  private final int[][] childFire;
+  private final long[][] childBound;
+  private final long[] key;
+  private final int[] rest;
+  private int visitedCount;
+
+  private long timeMillis = Long.MAX_VALUE;
+  private long nodeLimit = Long.MAX_VALUE;
+  private long deadline;
+  private long nodes;
+  private boolean exhausted;
+  private long incumbent;
+  private long openBound;
+
+  /**
+   * @param startXs X coordinate each firefighter starts from
+   * @param startYs Y coordinate each firefighter starts from
+   * @param n number of firefighters
+   * @param xs X coordinates of the buildings
+   * @param ys Y coordinates of the buildings
+   * @param candidates indices of the buildings to route
+   * @param count number of candidates, at most {@link #MAX_FIRES}
+   */
+  public BranchAndBoundSolver(int[] startXs, int[] startYs, int n, int[] xs, int[] ys, int[] candidates, int count) {
+    this(taxicabStarts(startXs, startYs, n, xs, ys, candidates, count),
+        taxicabPairs(xs, ys, candidates, count), candidates, count);
+  }
+
+  /**
+   * Distances can come from any metric. Unreachable legs are {@link DistanceMetric#UNREACHABLE}, and
+   * every candidate must be reachable from at least one firefighter
+   *
+   * @param startDist distance from each firefighter to each candidate, [n][count]
+   * @param pairDist distance between each pair of candidates, [count][count]
+   * @param candidates indices of the buildings to route
+   * @param count number of candidates, at most {@link #MAX_FIRES}
+   */
+  public BranchAndBoundSolver(int[][] startDist, int[][] pairDist, int[] candidates, int count) {
+    if (startDist.length < 1)
+      throw new IllegalArgumentException("Need at least one firefighter: " + startDist.length);
+    if (count > MAX_FIRES)
+      throw new IllegalArgumentException("Too many fires for an exact search: " + count);
+
+    this.n = startDist.length;
+    this.m = count;
+    this.candidates = Arrays.copyOf(candidates, count);
+    this.startDist = new int[n][];
+    this.pairDist = new int[m][];
+    this.rootDist = new int[n + 1][m];
+    this.sameStart = new boolean[n];
+    for (int f = 0; f < n; f++) {
+      this.startDist[f] = Arrays.copyOf(startDist[f], m);
+      sameStart[f] = f > 0 && Arrays.equals(this.startDist[f], this.startDist[f - 1]);
+    }
+    for (int i = 0; i < m; i++)
+      this.pairDist[i] = Arrays.copyOf(pairDist[i], m);
+    Arrays.fill(rootDist[n], Integer.MAX_VALUE);
+    for (int f = n - 1; f >= 0; f--) {
+      for (int i = 0; i < m; i++)
+        rootDist[f][i] = Math.min(this.startDist[f][i], rootDist[f + 1][i]);
+    }
+
+    this.visited = new boolean[m];
+    this.first = new int[n];
+    this.pathFire = new int[m];
+    this.pathFirefighter = new int[m];
+    this.bestFire = new int[m];
+    this.bestFirefighter = new int[m];
+    this.childFire = new int[m + n][m + 1];
+    this.childBound = new long[m + n][m + 1];
+    this.key = new long[m];
+    this.rest = new int[m];
+  }
+
+  /**
+   * @param timeMillis wall clock budget, Long.MAX_VALUE for none
+   * @param nodes search nodes to expand, Long.MAX_VALUE for none
+   * @return this solver
+   */
+  public BranchAndBoundSolver withBudget(long timeMillis, long nodes) {
+    if (timeMillis < 0 || nodes < 0)
+      throw new IllegalArgumentException("Budget cannot be negative: " + timeMillis + "ms, " + nodes + " nodes");
+    this.timeMillis = timeMillis;
+    this.nodeLimit = nodes;
+    return this;
+  }
+
+  /**
+   * Searches until the plan is proven optimal or the budget runs out
+   *
+   * @return building indices each firefighter visits, in order
+   */
+  public int[][] solve() {
+    greedy();
+    Arrays.fill(visited, false);
+    Arrays.fill(first, m);
+    visitedCount = 0;
+    nodes = 0;
+    exhausted = false;
+    openBound = Long.MAX_VALUE;
+    deadline = timeMillis >= Long.MAX_VALUE / 1_000_000 ? Long.MAX_VALUE : System.nanoTime() + timeMillis * 1_000_000;
+
+    if (m > 0)
+      search(0, START, 0, 0);
+    return plan();
+  }
+
+  /**
+   * @return total distance of the best plan found
+   */
+  public long cost() {
+    return incumbent;
+  }
+
+  /**
+   * @return lower bound on the optimum, equal to {@link #cost()} once proven optimal
+   */
+  public long lowerBound() {
+    return Math.min(incumbent, openBound);
+  }
+
+  /**
+   * @return how far the best plan can be above the optimum, as a fraction of its cost
+   */
+  public double gap() {
+    return incumbent == 0 ? 0 : (double) (incumbent - lowerBound()) / incumbent;
+  }
+
+  public boolean isOptimal() {
+    return lowerBound() == incumbent;
+  }
+
+  /**
+   * @return search nodes expanded by the last call to {@link #solve}
+   */
+  public long nodesExpanded() {
+    return nodes;
+  }
+
+  /**
+   * Seeds the incumbent by repeatedly making the shortest move of any firefighter
+   */
+  private void greedy() {
+    int[] at = new int[n];
+    Arrays.fill(at, START);
+    boolean[] taken = new boolean[m];
+    incumbent = 0;
+    for (int k = 0; k < m; k++) {
+      int bestF = -1;
+      int bestI = -1;
+      int best = Integer.MAX_VALUE;
+      for (int f = 0; f < n; f++) {
+        int[] row = at[f] == START ? startDist[f] : pairDist[at[f]];
+        for (int i = 0; i < m; i++) {
+          if (!taken[i] && row[i] < best) {
+            best = row[i];
+            bestF = f;
+            bestI = i;
+          }
+        }
+      }
+      taken[bestI] = true;
+      at[bestF] = bestI;
+      bestFire[k] = bestI;
+      bestFirefighter[k] = bestF;
+      incumbent += best;
+    }
+  }
+
+  /**
+   * @param f firefighter whose route is being extended
+   * @param end last fire of its route, or START if it has not moved
+   * @param cost distance of the partial plan
+   * @param level depth of this node, picks the child buffers
+   */
+  private void search(int f, int end, long cost, int level) {
+    if (visitedCount == m) {
+      if (cost < incumbent) {
+        incumbent = cost;
+        System.arraycopy(pathFire, 0, bestFire, 0, m);
+        System.arraycopy(pathFirefighter, 0, bestFirefighter, 0, m);
+      }
+      return;
+    }
+    nodes++;
+
+    // Bound every child and keep them sorted by bound
+    int[] fires = childFire[level];
+    long[] bounds = childBound[level];
+    int[] row = end == START ? startDist[f] : pairDist[end];
+    int children = 0;
+    for (int i = 0; i < m; i++) {
+      if (visited[i] || (end == START && sameStart[f] && i <= first[f - 1]))
+        continue;
+      visited[i] = true;
+      long bound = cost + row[i] + forest(pairDist[i], rootDist[f + 1]);
+      visited[i] = false;
+      children = insert(fires, bounds, children, i, bound);
+    }
+    if (f + 1 < n)
+      children = insert(fires, bounds, children, CLOSE, cost + forest(null, rootDist[f + 1]));
+
+    for (int c = 0; c < children; c++) {
+      if (bounds[c] >= incumbent)
+        return;
+      if (outOfBudget()) {
+        // Children are sorted, the first one left carries the smallest bound
+        openBound = Math.min(openBound, bounds[c]);
+        return;
+      }
+
+      int i = fires[c];
+      if (i == CLOSE) {
+        search(f + 1, START, cost, level + 1);
+        continue;
+      }
+      visited[i] = true;
+      pathFire[visitedCount] = i;
+      pathFirefighter[visitedCount] = f;
+      visitedCount++;
+      if (end == START)
+        first[f] = i;
+      search(f, i, cost + row[i], level + 1);
+      if (end == START)
+        first[f] = m;
+      visitedCount--;
+      visited[i] = false;
+    }
+  }
+
+  private static int insert(int[] fires, long[] bounds, int size, int fire, long bound) {
+    int p = size;
+    while (p > 0 && bounds[p - 1] > bound) {
+      fires[p] = fires[p - 1];
+      bounds[p] = bounds[p - 1];
+      p--;
+    }
+    fires[p] = fire;
+    bounds[p] = bound;
+    return size + 1;
+  }
+
+  /**
+   * Prim's minimum spanning forest joining the unvisited fires to the given roots
+   *
+   * @param endRow distances from the current end of the route, null if it is closed
+   * @param roots distances from the closest start still to come
+   * @return weight of the forest
+   */
+  private long forest(int[] endRow, int[] roots) {
+    int size = 0;
+    for (int i = 0; i < m; i++) {
+      if (!visited[i]) {
+        key[i] = endRow == null ? roots[i] : Math.min(endRow[i], roots[i]);
+        rest[size++] = i;
+      }
+    }
+
+    long total = 0;
+    while (size > 0) {
+      int p = 0;
+      for (int q = 1; q < size; q++) {
+        if (key[rest[q]] < key[rest[p]])
+          p = q;
+      }
+      int u = rest[p];
+      rest[p] = rest[--size];
+      total += key[u];
+      int[] uRow = pairDist[u];
+      for (int q = 0; q < size; q++) {
+        int v = rest[q];
+        if (uRow[v] < key[v])
+          key[v] = uRow[v];
+      }
+    }
+    return total;
+  }
+
+  private boolean outOfBudget() {
+    if (!exhausted)
+      exhausted = nodes >= nodeLimit || ((nodes & TIME_CHECK_MASK) == 0 && deadline != Long.MAX_VALUE &&
+          System.nanoTime() - deadline > 0);
+    return exhausted;
+  }
+
+  private static int[][] taxicabStarts(int[] startXs, int[] startYs, int n, int[] xs, int[] ys, int[] candidates,
+                                       int count) {
+    int[] bxs = new int[count];
+    int[] bys = new int[count];
+    for (int i = 0; i < count; i++) {
+      bxs[i] = xs[candidates[i]];
+      bys[i] = ys[candidates[i]];
+    }
+    int[][] startDist = new int[n][count];
+    for (int f = 0; f < n; f++)
+      DistanceKernel.distanceRow(startXs[f], startYs[f], bxs, bys, startDist[f], count);
+    return startDist;
+  }
+
+  private static int[][] taxicabPairs(int[] xs, int[] ys, int[] candidates, int count) {
+    int[] bxs = new int[count];
+    int[] bys = new int[count];
+    for (int i = 0; i < count; i++) {
+      bxs[i] = xs[candidates[i]];
+      bys[i] = ys[candidates[i]];
+    }
+    int[][] pairDist = new int[count][count];
+    for (int i = 0; i < count; i++)
+      DistanceKernel.distanceRow(bxs[i], bys[i], bxs, bys, pairDist[i], count);
+    return pairDist;
+  }
+
+  private int[][] plan() {
+    int[] lengths = new int[n];
+    for (int k = 0; k < m; k++)
+      lengths[bestFirefighter[k]]++;
+    int[][] plan = new int[n][];
+    for (int f = 0; f < n; f++)
+      plan[f] = new int[lengths[f]];
+    Arrays.fill(lengths, 0);
+    for (int k = 0; k < m; k++) {
+      int f = bestFirefighter[k];
+      plan[f][lengths[f]++] = candidates[bestFire[k]];
+    }
+    return plan;
+  }
+}
@@ -0,0 +1,233 @@
+package main.firefighters;
+
+/**
+ * The k nearest burning neighbours of every burning building by taxicab distance, packed into flat
+ * int arrays. Memory is O(m * k) instead of the O(m^2) of a full distance matrix.
+ * Buildings are bucketed into a uniform grid sized to hold about two buildings per cell, so each
+ * list is found by searching outward ring by ring and the whole structure builds in about O(m log m).
+ *
+ * Removing a building takes it out of the grid. Lists that still hold it skip it when read and
+ * are searched again once fewer than half their entries are left. Not thread safe
+ */
+public final class CandidateLists {
+  public static final int NONE = DistanceKernel.NONE;
+  private static final int CELL_OCCUPANCY = 2;
+
+  private final int[] xs;
+  private final int[] ys;
+  private final int k;
+  private final int[] neighbours;
+  private final int[] counts;
+  private final boolean[] removed;
+  private int live;
+
+  private final int minX;
+  private final int minY;
+  private final int cellSize;
+  private final int gridWidth;
+  private final int gridHeight;
+  private final int[] cellStart;
+  private final int[] cellCount;
+  private final int[] cellItems;
+  private final int[] slot;
+
+  // Sorted k best of the current search
+  private final int[] bestIdx;
+  private final int[] bestDist;
+
+  /**
+   * Builds the lists for the first m buildings of xs, ys
+   *
+   * @param xs X coordinates of the buildings, kept by reference
+   * @param ys Y coordinates of the buildings, kept by reference
+   * @param m number of buildings
+   * @param k neighbours kept per building
+   */
+  public CandidateLists(int[] xs, int[] ys, int m, int k) {
+    if (k < 1)
+      throw new IllegalArgumentException("k must be positive: " + k);
+    this.xs = xs;
+    this.ys = ys;
+    this.k = k;
+    this.neighbours = new int[m * k];
+    this.counts = new int[m];
+    this.removed = new boolean[m];
+    this.live = m;
+    this.bestIdx = new int[k];
+    this.bestDist = new int[k];
+
+    int loX = Integer.MAX_VALUE, hiX = 0, loY = Integer.MAX_VALUE, hiY = 0;
+    for (int i = 0; i < m; i++) {
+      loX = Math.min(loX, xs[i]);
+      hiX = Math.max(hiX, xs[i]);
+      loY = Math.min(loY, ys[i]);
+      hiY = Math.max(hiY, ys[i]);
+    }
+    this.minX = m == 0 ? 0 : loX;
+    this.minY = m == 0 ? 0 : loY;
+    long width = Math.max(1L, (long) hiX - minX + 1);
+    long height = Math.max(1L, (long) hiY - minY + 1);
+    this.cellSize = (int) Math.max(1, Math.ceil(Math.sqrt((double) width * height * CELL_OCCUPANCY / Math.max(1, m))));
+    this.gridWidth = (int) ((width - 1) / cellSize + 1);
+    this.gridHeight = (int) ((height - 1) / cellSize + 1);
+
+    // Counting sort of the buildings into cells
+    int cells = gridWidth * gridHeight;
+    this.cellStart = new int[cells + 1];
+    this.cellCount = new int[cells];
+    this.cellItems = new int[m];
+    this.slot = new int[m];
+    for (int i = 0; i < m; i++)
+      cellStart[cellOf(xs[i], ys[i]) + 1]++;
+    for (int c = 0; c < cells; c++)
+      cellStart[c + 1] += cellStart[c];
+    for (int i = 0; i < m; i++) {
+      int c = cellOf(xs[i], ys[i]);
+      slot[i] = cellStart[c] + cellCount[c]++;
+      cellItems[slot[i]] = i;
+    }
+
+    for (int i = 0; i < m; i++)
+      refill(i);
+  }
+
+  public int k() {
+    return k;
+  }
+
+  /**
+   * @return number of buildings not yet removed
+   */
+  public int size() {
+    return live;
+  }
+
+  public boolean isRemoved(int building) {
+    return removed[building];
+  }
+
+  /**
+   * Removes a building, normally once its fire is out. Other lists drop it lazily
+   *
+   * @param building index of the building
+   */
+  public void remove(int building) {
+    if (removed[building])
+      return;
+    removed[building] = true;
+    live--;
+
+    // Swap the last building of the cell into the freed slot
+    int c = cellOf(xs[building], ys[building]);
+    int last = cellItems[cellStart[c] + --cellCount[c]];
+    cellItems[slot[building]] = last;
+    slot[last] = slot[building];
+  }
+
+  /**
+   * Gets the nearest remaining neighbours of a building, nearest first with ties broken by index.
+   * Works for removed buildings too, which is how a route finds where to go after a fire is out
+   *
+   * @param building index of the building
+   * @param out destination for the neighbour indices, at least k long
+   * @return number of neighbours written, at least half of k unless fewer buildings remain
+   */
+  public int neighbours(int building, int[] out) {
+    int base = building * k;
+    int count = 0;
+    for (int j = 0; j < counts[building]; j++) {
+      int neighbour = neighbours[base + j];
+      if (!removed[neighbour])
+        neighbours[base + count++] = neighbour;
+    }
+    counts[building] = count;
+
+    int others = removed[building] ? live : live - 1;
+    if (count < (k + 1) / 2 && count < others)
+      count = refill(building);
+
+    System.arraycopy(neighbours, base, out, 0, count);
+    return count;
+  }
+
+  /**
+   * Finds the nearest remaining building to any point, such as a firefighter
+   *
+   * @param x X coordinate
+   * @param y Y coordinate
+   * @return index of the nearest building, or {@link #NONE} if every building is removed
+   */
+  public int nearest(int x, int y) {
+    return search(x, y, NONE) > 0 ? bestIdx[0] : NONE;
+  }
+
+  private int refill(int building) {
+    int found = search(xs[building], ys[building], building);
+    System.arraycopy(bestIdx, 0, neighbours, building * k, found);
+    counts[building] = found;
+    return found;
+  }
+
+  /**
+   * Collects the k nearest remaining buildings to (x, y) into bestIdx, bestDist. Cells at ring r
+   * around the start cell are at least (r - 1) * cellSize + 1 away, so the search stops as soon as
+   * that bound passes the k-th best distance
+   *
+   * @return number of buildings found
+   */
+  private int search(int x, int y, int exclude) {
+    int cx = clamp((int) (((long) x - minX) / cellSize), gridWidth);
+    int cy = clamp((int) (((long) y - minY) / cellSize), gridHeight);
+    int maxRing = Math.max(Math.max(cx, gridWidth - 1 - cx), Math.max(cy, gridHeight - 1 - cy));
+
+    int found = 0;
+    for (int r = 0; r <= maxRing; r++) {
+      if (found == k && (long) (r - 1) * cellSize + 1 > bestDist[k - 1])
+        break;
+      for (int gx = Math.max(0, cx - r); gx <= Math.min(gridWidth - 1, cx + r); gx++) {
+        // Inner columns of the ring only have their top and bottom cells on the ring
+        int step = gx == cx - r || gx == cx + r ? 1 : 2 * r;
+        for (int gy = cy - r; gy <= cy + r; gy += step) {
+          if (gy < 0 || gy >= gridHeight)
+            continue;
+          int c = gx * gridHeight + gy;
+          for (int s = cellStart[c]; s < cellStart[c] + cellCount[c]; s++) {
+            int b = cellItems[s];
+            if (b != exclude)
+              found = offer(b, Math.abs(x - xs[b]) + Math.abs(y - ys[b]), found);
+          }
+        }
+      }
+    }
+    return found;
+  }
+
+  /**
+   * Inserts a building into the sorted k best if it beats the current k-th
+   */
+  private int offer(int building, int dist, int found) {
+    if (found == k && !before(dist, building, bestDist[k - 1], bestIdx[k - 1]))
+      return found;
+    int i = found == k ? k - 1 : found++;
+    while (i > 0 && before(dist, building, bestDist[i - 1], bestIdx[i - 1])) {
+      bestDist[i] = bestDist[i - 1];
+      bestIdx[i] = bestIdx[i - 1];
+      i--;
+    }
+    bestDist[i] = dist;
+    bestIdx[i] = building;
+    return found;
+  }
+
+  private static boolean before(int dist, int building, int otherDist, int otherBuilding) {
+    return dist < otherDist || (dist == otherDist && building < otherBuilding);
+  }
+
+  private int cellOf(int x, int y) {
+    return ((x - minX) / cellSize) * gridHeight + (y - minY) / cellSize;
+  }
+
+  private static int clamp(int value, int bound) {
+    return Math.max(0, Math.min(bound - 1, value));
+  }
+}
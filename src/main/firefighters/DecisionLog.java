@@ -0,0 +1,33 @@
+package main.firefighters;
+
+import main.impls.RoadNetwork;
+
+/**
+ * Receives every dispatch call a {@link FireDispatchImpl} makes, so the decisions can be recorded
+ * without the dispatcher depending on how they are stored
+ */
+public interface DecisionLog {
+  /**
+   * Called once a dispatch call has finished. The arrays are reused by the dispatcher, so copy
+   * anything that needs to outlive the call
+   *
+   * @param solver solver that made the decisions
+   * @param xDimension X dimension of the city
+   * @param yDimension Y dimension of the city
+   * @param fireStationX X coordinate of the FireStation
+   * @param fireStationY Y coordinate of the FireStation
+   * @param roadNetwork road network the call measured distances over, null for taxicab distances
+   * @param numFirefighters number of firefighters
+   * @param firefighterXs X coordinate of each firefighter before the call
+   * @param firefighterYs Y coordinate of each firefighter before the call
+   * @param distancesTraveled distance traveled by each firefighter before the call
+   * @param numFires number of fires
+   * @param fireXs X coordinate of each fire
+   * @param fireYs Y coordinate of each fire
+   * @param numMoves number of moves
+   * @param moves firefighter index and building index of each move, interleaved
+   */
+  void append(Solver solver, int xDimension, int yDimension, int fireStationX, int fireStationY,
+              RoadNetwork roadNetwork, int numFirefighters, int[] firefighterXs, int[] firefighterYs,
+              int[] distancesTraveled, int numFires, int[] fireXs, int[] fireYs, int numMoves, int[] moves);
+}
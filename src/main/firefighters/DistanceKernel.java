@@ -0,0 +1,93 @@
+package main.firefighters;
+
+import main.api.CityNode;
+
+/**
+ * Taxicab distance kernels over buildings stored as structure of arrays (int[] xs, int[] ys)
+ * instead of {@link CityNode} objects, so the inner loops run over contiguous primitives
+ */
+public final class DistanceKernel {
+  public static final int NONE = -1;
+
+  private DistanceKernel() {}
+
+  /**
+   * Copies the coordinates of the buildings into the given arrays
+   *
+   * @param buildings buildings to copy
+   * @param xs destination for the X coordinates
+   * @param ys destination for the Y coordinates
+   */
+  public static void toArrays(CityNode[] buildings, int[] xs, int[] ys) {
+    for (int i = 0; i < buildings.length; i++) {
+      xs[i] = buildings[i].getX();
+      ys[i] = buildings[i].getY();
+    }
+  }
+
+  /**
+   * Computes the distance from (x, y) to every building and finds the closest.
+   * A mask entry of Integer.MAX_VALUE hides a building, a mask entry of 0 keeps it
+   *
+   * @param x X coordinate to measure from
+   * @param y Y coordinate to measure from
+   * @param xs X coordinates of the buildings
+   * @param ys Y coordinates of the buildings
+   * @param mask 0 or Integer.MAX_VALUE per building
+   * @param row destination for the distances
+   * @param length number of buildings
+   * @return index of the first closest building, or {@link #NONE} if every building is masked
+   */
+  public static int distanceRow(int x, int y, int[] xs, int[] ys, int[] mask, int[] row, int length) {
+    int min = Integer.MAX_VALUE;
+    for (int i = 0; i < length; i++) {
+      int d = Math.max(Math.abs(xs[i] - x) + Math.abs(ys[i] - y), mask[i]);
+      row[i] = d;
+      min = Math.min(min, d);
+    }
+    return indexOf(row, min, length);
+  }
+
+  /**
+   * Computes the distance from (x, y) to every building
+   *
+   * @param x X coordinate to measure from
+   * @param y Y coordinate to measure from
+   * @param xs X coordinates of the buildings
+   * @param ys Y coordinates of the buildings
+   * @param row destination for the distances
+   * @param length number of buildings
+   */
+  public static void distanceRow(int x, int y, int[] xs, int[] ys, int[] row, int length) {
+    for (int i = 0; i < length; i++)
+      row[i] = Math.abs(xs[i] - x) + Math.abs(ys[i] - y);
+  }
+
+  /**
+   * Finds the first index holding the smallest value
+   *
+   * @param row values to search
+   * @param length number of values
+   * @return index of the first minimum, or {@link #NONE} if every value is Integer.MAX_VALUE
+   */
+  public static int argmin(int[] row, int length) {
+    int min = Integer.MAX_VALUE;
+    for (int i = 0; i < length; i++)
+      min = Math.min(min, row[i]);
+    return indexOf(row, min, length);
+  }
+
+  /**
+   * The minimum is taken first as a plain reduction, which carries no index from one iteration to
+   * the next, and then located by a scan that stops at its first match
+   */
+  private static int indexOf(int[] row, int min, int length) {
+    if (min == Integer.MAX_VALUE)
+      return NONE;
+    for (int i = 0; i < length; i++) {
+      if (row[i] == min)
+        return i;
+    }
+    return NONE;
+  }
+}
@@ -2,18 +2,166 @@ package main.firefighters;
 
 import main.api.*;
 import main.api.exceptions.NoFireFoundException;
+import main.impls.RoadNetwork;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.function.Consumer;
 
 public class FireDispatchImpl implements FireDispatch {
+  /**
+   * Above this many fires a single firefighter is routed along a space filling curve instead of greedily
+   */
+  public static final int SPACE_FILLING_CURVE_THRESHOLD = 2000;
+  /**
+   * Above this many fires several firefighters are routed block by block instead of greedily
+   */
+  public static final int HIERARCHICAL_THRESHOLD = 10000;
+  /**
+   * Up to this many fires a few firefighters are dispatched optimally by set partitioning
+   */
+  public static final int SET_PARTITION_THRESHOLD = 14;
+  /**
+   * Above this many firefighters small incidents go back to greedy
+   */
+  public static final int SET_PARTITION_MAX_FIREFIGHTERS = 6;
+  /**
+   * From this many firefighter to building pairs each greedy step is reduced in parallel, never on a
+   * single processor where splitting the work only adds overhead
+   */
+  public static final long DEFAULT_PARALLEL_GREEDY_CELLS =
+      Runtime.getRuntime().availableProcessors() > 1 ? 1 << 18 : Long.MAX_VALUE;
+  public static final long DEFAULT_SEARCH_MILLIS = 200;
+  public static final long DEFAULT_SEARCH_ITERATIONS = 50000;
+
   private City city;
-  private List<Firefighter> firefighters;
+  private FirefighterFleet firefighters;
   private int[][] distMatrix;
+  private int[] rowArgmin;
+  private int[] xs;
+  private int[] ys;
+  private int[] mask;
+  private DistanceMetric metric;
+  private RoadNetwork roadNetwork;
+  private Consumer<DispatchedMove> moveListener;
+  private DecisionLog decisionLog;
+  private int[] logXs;
+  private int[] logYs;
+  private int[] logDistances;
+  private int[] logMoves;
+  private int logMoveCount;
+  private long searchMillis = DEFAULT_SEARCH_MILLIS;
+  private long searchIterations = DEFAULT_SEARCH_ITERATIONS;
+  private int searchWorkers = LnsSolver.DEFAULT_WORKERS;
+  private double optimalityGap;
+  private long parallelGreedyCells = DEFAULT_PARALLEL_GREEDY_CELLS;
+  private LoadShedder loadShedder;
 
   public FireDispatchImpl(City city) {
     this.city = city;
-    this.firefighters = new ArrayList<>();
+    this.firefighters = new FirefighterFleet();
+    this.metric = DistanceMetric.TAXICAB;
+  }
+
+  /**
+   * Switches between taxicab distances and obstacle aware distances over a {@link RoadNetwork}.
+   * The fleet measures every later move with the same metric
+   *
+   * @param roadNetwork road network to route over, or null to use taxicab distances
+   */
+  public void setRoadNetwork(RoadNetwork roadNetwork) {
+    this.roadNetwork = roadNetwork;
+    this.metric = roadNetwork == null ? DistanceMetric.TAXICAB : roadNetwork;
+    this.firefighters.setMetric(metric);
+  }
+
+  /**
+   * Limits how long {@link #largeNeighbourhoodDispatch} and {@link #branchAndBoundDispatch} search,
+   * whichever budget runs out first
+   *
+   * @param timeMillis wall clock budget, Long.MAX_VALUE for none
+   * @param iterations iterations shared by all workers, or search nodes for branch and bound,
+   *                   Long.MAX_VALUE for none
+   * @param workers number of search workers, 1 searches on the calling thread
+   */
+  public void setSearchBudget(long timeMillis, long iterations, int workers) {
+    if (timeMillis == Long.MAX_VALUE && iterations == Long.MAX_VALUE)
+      throw new IllegalArgumentException("Search needs a time or iteration budget");
+    if (workers < 1)
+      throw new IllegalArgumentException("Need at least one worker: " + workers);
+    this.searchMillis = timeMillis;
+    this.searchIterations = iterations;
+    this.searchWorkers = workers;
+  }
+
+  /**
+   * Sets the size from which {@link #greedyDispatch} reduces each step in parallel. Both ways pick
+   * exactly the same moves
+   *
+   * @param cells firefighters times burning buildings, Long.MAX_VALUE to always run sequentially
+   */
+  public void setParallelGreedyThreshold(long cells) {
+    this.parallelGreedyCells = cells;
+  }
+
+  /**
+   * Lets {@link #dispatchFirefighters} fall back to cheaper solvers while a {@link LoadShedder} says
+   * latency or queue depth is over target. The shedder can be shared by several dispatchers
+   *
+   * @param loadShedder load shedder to report to and take the {@link ServiceLevel} from, or null to
+   *                    always run at full level
+   */
+  public void setLoadShedder(LoadShedder loadShedder) {
+    this.loadShedder = loadShedder;
+  }
+
+  /**
+   * @return how far the last {@link #branchAndBoundDispatch} plan can be above the optimum, as a
+   * fraction of its distance, 0 if it was proven optimal
+   */
+  public double getOptimalityGap() {
+    return optimalityGap;
+  }
+
+  /**
+   * Registers a callback that is told about each move as soon as it is carried out
+   *
+   * @param moveListener callback for each {@link DispatchedMove}, or null to stop listening
+   */
+  public void setMoveListener(Consumer<DispatchedMove> moveListener) {
+    this.moveListener = moveListener;
+  }
+
+  public Consumer<DispatchedMove> getMoveListener() {
+    return moveListener;
+  }
+
+  /**
+   * Records every dispatch call made by this dispatcher
+   *
+   * @param decisionLog log to append to, such as a binary {@code DispatchLog}, or null to stop logging
+   */
+  public void setDecisionLog(DecisionLog decisionLog) {
+    this.decisionLog = decisionLog;
+  }
+
+  /**
+   * Get a publisher that runs {@link #dispatchFirefighters} once subscribed to and streams each move
+   *
+   * @param burningBuildings list of locations with burning buildings
+   * @return a {@link MovePublisher}
+   */
+  public MovePublisher dispatchAsPublisher(CityNode... burningBuildings) {
+    return new MovePublisher(this, burningBuildings);
+  }
+
+  public RoadNetwork getRoadNetwork() {
+    return roadNetwork;
+  }
+
+  public DistanceMetric getDistanceMetric() {
+    return metric;
   }
 
   /**
@@ -51,6 +199,35 @@ public class FireDispatchImpl implements FireDispatch {
     return permutations;
   }
 
+  /**
+   * Loads the burning buildings into the xs, ys arrays and masks out the ones not on fire
+   *
+   * @param buildings array of buildings
+   */
+  private void loadBuildings(CityNode[] buildings) {
+    this.xs = new int[buildings.length];
+    this.ys = new int[buildings.length];
+    this.mask = new int[buildings.length];
+    DistanceKernel.toArrays(buildings, xs, ys);
+
+    for (int i = 0; i < buildings.length; i++) {
+      if (!this.city.getBuilding(buildings[i]).isBurning())
+        mask[i] = Integer.MAX_VALUE;
+    }
+  }
+
+  /**
+   * Masks out every building at the given location once its fire is out
+   *
+   * @param building location of the extinguished building
+   */
+  private void maskBuilding(CityNode building) {
+    for (int i = 0; i < xs.length; i++) {
+      if (xs[i] == building.getX() && ys[i] == building.getY())
+        mask[i] = Integer.MAX_VALUE;
+    }
+  }
+
   /**
    * Updates distance matrix row for a given firefighter index
    *
@@ -58,31 +235,47 @@ public class FireDispatchImpl implements FireDispatch {
    * @param buildings array of buildings to calculate distances to
    */
   private void updateDistances(int firefighterIdx, CityNode[] buildings) {
-    CityNode firefighterLoc = this.firefighters.get(firefighterIdx).getLocation();
+    int[] row = distMatrix[firefighterIdx];
 
+    if (metric == DistanceMetric.TAXICAB) {
+      rowArgmin[firefighterIdx] = DistanceKernel.distanceRow(firefighters.getX(firefighterIdx),
+          firefighters.getY(firefighterIdx), xs, ys, mask, row, buildings.length);
+      return;
+    }
+
+    CityNode firefighterLoc = this.firefighters.getLocation(firefighterIdx);
     for (int i = 0; i < buildings.length; i++) {
-      CityNode building = buildings[i];
-      if (this.city.getBuilding(building).isBurning())
-        distMatrix[firefighterIdx][i] = CityNode.absDistance(firefighterLoc, building);
+      if (mask[i] == 0)
+        row[i] = metric.distance(firefighterLoc, buildings[i]);
       else
-        distMatrix[firefighterIdx][i] = Integer.MAX_VALUE;
+        row[i] = Integer.MAX_VALUE;
     }
+    rowArgmin[firefighterIdx] = DistanceKernel.argmin(row, buildings.length);
   }
 
   /**
-   * Converts distMatrix to a list of possible moves
+   * Finds every move with the minimum distance in distMatrix, in row major order.
+   * Only rows whose minimum matches the overall minimum are scanned
    *
    * @return List of {@link Move}
    */
-  private List<Move> getPossibleMoves() {
+  private List<Move> getClosestMoves() {
+    int minVal = Integer.MAX_VALUE;
+    for (int i = 0; i < distMatrix.length; i++) {
+      if (rowArgmin[i] != DistanceKernel.NONE)
+        minVal = Math.min(minVal, distMatrix[i][rowArgmin[i]]);
+    }
+
     List<Move> moves = new ArrayList<>();
+    if (minVal == Integer.MAX_VALUE)
+      return moves;
 
     for (int i = 0; i < distMatrix.length; i++) {
-      for (int j = 0; j < distMatrix[0].length; j++) {
-        if (distMatrix[i][j] < Integer.MAX_VALUE) {
-          Move move = new Move(i, j);
-          moves.add(move);
-        }
+      if (rowArgmin[i] == DistanceKernel.NONE || distMatrix[i][rowArgmin[i]] != minVal)
+        continue;
+      for (int j = rowArgmin[i]; j < distMatrix[i].length; j++) {
+        if (distMatrix[i][j] == minVal)
+          moves.add(new Move(i, j));
       }
     }
     return moves;
@@ -114,20 +307,6 @@ public class FireDispatchImpl implements FireDispatch {
     return mins;
   }
 
-  /**
-   * For a list of Moves finds the associated distance
-   *
-   * @param moves
-   * @return List of distances
-   */
-  private List<Integer> moveToDist(List<Move> moves) {
-    List<Integer> distances = new ArrayList<>();
-    for (Move move : moves){
-      distances.add(distMatrix[move.fireFighterIdx][move.buildingIdx]);
-    }
-    return distances;
-  }
-
   /**
    * For a list of Moves finds the associated column sum in distMatrix which corresponds to the
    * distance of all firefighters from a node
@@ -156,57 +335,179 @@ public class FireDispatchImpl implements FireDispatch {
   private List<Integer> moveToDistTraveled(List<Move> moves) {
     List<Integer> distTraveled = new ArrayList<>();
     for (Move move : moves) {
-      distTraveled.add(firefighters.get(move.fireFighterIdx).distanceTraveled());
+      distTraveled.add(firefighters.distanceTraveled(move.fireFighterIdx));
     }
     return distTraveled;
   }
 
   /**
-   * Alternate calcPathCost that takes in indexes to buildings and a list of buildings
+   * Alternate calcPathCost that takes in indexes to buildings and precomputed distances
    *
    * @param path a path as a list of indices of buildings
-   * @param buildings an array of CityNodes
-   * @return
+   * @param stationDist distance from the FireStation to each building
+   * @param pairDist distance between each pair of buildings
+   * @return the path cost, or {@link DistanceMetric#UNREACHABLE} if a leg has no route
    */
-  private int calcPathCost(List<Integer> path, CityNode[] buildings) {
-    CityNode fireStation = this.city.getFireStation().getLocation();
-    int cost = CityNode.absDistance(fireStation, buildings[path.get(0)]);
+  private int calcPathCost(List<Integer> path, int[] stationDist, int[][] pairDist) {
+    long cost = stationDist[path.get(0)];
 
     for (int i = 0; i < path.size()-1; i++)
-      cost += CityNode.absDistance(buildings[path.get(i)], buildings[path.get(i + 1)]);
+      cost += pairDist[path.get(i)][path.get(i + 1)];
+
+    return (int) Math.min(cost, DistanceMetric.UNREACHABLE);
+  }
+
+  /**
+   * Tells the move listener and the decision log, if there are any, about a move that was just carried out
+   */
+  private void emitMove(int firefighterIdx, int buildingIdx, CityNode building) {
+    if (moveListener != null)
+      moveListener.accept(new DispatchedMove(firefighterIdx, buildingIdx,
+          firefighters.asList().get(firefighterIdx), building));
+
+    if (decisionLog != null) {
+      if (2 * logMoveCount + 2 > logMoves.length)
+        logMoves = Arrays.copyOf(logMoves, Math.max(16, 2 * logMoves.length));
+      logMoves[2 * logMoveCount] = firefighterIdx;
+      logMoves[2 * logMoveCount + 1] = buildingIdx;
+      logMoveCount++;
+    }
+  }
 
-    return cost;
+  /**
+   * Remembers the fleet before a dispatch call so the call can be logged
+   */
+  private void beginLog() {
+    if (decisionLog == null)
+      return;
+
+    int n = firefighters.size();
+    if (logXs == null || logXs.length < n) {
+      logXs = new int[n];
+      logYs = new int[n];
+      logDistances = new int[n];
+    }
+    if (logMoves == null)
+      logMoves = new int[16];
+    firefighters.copyTo(logXs, logYs, logDistances);
+    logMoveCount = 0;
+  }
+
+  /**
+   * Appends the finished dispatch call to the decision log
+   */
+  private void endLog(Solver solver, CityNode[] burningBuildings) {
+    if (decisionLog == null)
+      return;
+
+    int[] fireXs = new int[burningBuildings.length];
+    int[] fireYs = new int[burningBuildings.length];
+    DistanceKernel.toArrays(burningBuildings, fireXs, fireYs);
+    CityNode fireStation = city.getFireStation().getLocation();
+    decisionLog.append(solver, city.getXDimension(), city.getYDimension(), fireStation.getX(), fireStation.getY(),
+        roadNetwork, firefighters.size(), logXs, logYs, logDistances, burningBuildings.length, fireXs, fireYs,
+        logMoveCount, logMoves);
   }
 
   @Override
   public void setFirefighters(int numFirefighters) {
     Building fireStation = this.city.getFireStation();
-    this.firefighters.clear();
-    for (int i = 0; i < numFirefighters; i++) {
-      this.firefighters.add(new FirefighterImpl(fireStation.getLocation()));
-    }
+    this.firefighters.reset(numFirefighters, fireStation.getLocation(), metric);
   }
 
   @Override
-  public List<Firefighter> getFirefighters() { return this.firefighters; }
+  public List<Firefighter> getFirefighters() { return this.firefighters.asList(); }
+
+  /**
+   * Get the packed fleet behind {@link #getFirefighters()} for bulk queries
+   *
+   * @return the {@link FirefighterFleet}
+   */
+  public FirefighterFleet getFleet() { return this.firefighters; }
 
   /**
    * If there is more than one firefighter or more than 10 burning buildings,
    * use greedy approach to optimize for time, otherwise can use brute force
-   * which will guarantee optimal solution
+   * which will guarantee optimal solution. A single firefighter with a very large
+   * number of fires is routed along a space filling curve since greedy is O(m^2), and
+   * several firefighters with a city scale number of fires are routed block by block, unless there
+   * is a road network neither of them can see,
+   * and a few firefighters with only a few fires get the exact set partition.
+   * Under a {@link #setLoadShedder load shedder} the choice is capped by its current level
    * @param burningBuildings list of locations with burning buildings
    */
   @Override
   public void dispatchFirefighters(CityNode... burningBuildings) {
-    if (firefighters.size() > 1 || burningBuildings.length > 10) {
-      greedyDispatch(burningBuildings);
-    } else {
-      bruteForce(burningBuildings);
+    Solver solver = defaultSolver(burningBuildings.length);
+    if (loadShedder == null || firefighters.size() == 0) {
+      dispatch(solver, burningBuildings);
+      return;
+    }
+
+    ServiceLevel level = loadShedder.beginDispatch();
+    long start = System.nanoTime();
+    try {
+      dispatch(level.cap(solver), burningBuildings);
+    } finally {
+      loadShedder.endDispatch(System.nanoTime() - start);
     }
   }
 
+  private Solver defaultSolver(int numFires) {
+    int n = firefighters.size();
+    // Neither the curve nor the blocks can route around obstacles
+    if (n == 1 && numFires > SPACE_FILLING_CURVE_THRESHOLD && roadNetwork == null)
+      return Solver.SPACE_FILLING_CURVE;
+    if (n > 1 && numFires > HIERARCHICAL_THRESHOLD && roadNetwork == null)
+      return Solver.HIERARCHICAL;
+    if (n > 1 && n <= SET_PARTITION_MAX_FIREFIGHTERS && numFires <= SET_PARTITION_THRESHOLD)
+      return Solver.SET_PARTITION;
+    if (n > 1 || numFires > 10)
+      return Solver.GREEDY;
+    return Solver.BRUTE_FORCE;
+  }
+
   /**
-   * Finds solution by choosing best option at each step
+   * Dispatches firefighters with a specific solver
+   *
+   * @param solver the {@link Solver} to use
+   * @param burningBuildings list of locations with burning buildings
+   */
+  public void dispatch(Solver solver, CityNode... burningBuildings) {
+    switch (solver) {
+      case GREEDY:
+        greedyDispatch(burningBuildings);
+        break;
+      case BRUTE_FORCE:
+        bruteForce(burningBuildings);
+        break;
+      case SPACE_FILLING_CURVE:
+        spaceFillingCurveDispatch(burningBuildings);
+        break;
+      case SAVINGS:
+        savingsDispatch(burningBuildings);
+        break;
+      case LARGE_NEIGHBOURHOOD:
+        largeNeighbourhoodDispatch(burningBuildings);
+        break;
+      case HIERARCHICAL:
+        hierarchicalDispatch(burningBuildings);
+        break;
+      case BRANCH_AND_BOUND:
+        branchAndBoundDispatch(burningBuildings);
+        break;
+      case SET_PARTITION:
+        setPartitionDispatch(burningBuildings);
+        break;
+      default:
+        throw new IllegalArgumentException("Unsupported solver: " + solver);
+    }
+  }
+
+  /**
+   * Finds solution by choosing best option at each step. From
+   * {@link #setParallelGreedyThreshold} firefighter to building pairs each step is a parallel
+   * reduction that picks the same move
    * n = # of firefighters
    * m = # of burning buildings
    *
@@ -215,47 +516,426 @@ public class FireDispatchImpl implements FireDispatch {
    */
   @Override
   public void greedyDispatch(CityNode[] burningBuildings){
+    beginLog();
+    if (roadNetwork != null)
+      roadNetwork.precompute(burningBuildings);
     this.distMatrix = new int[this.firefighters.size()][burningBuildings.length];
+    this.rowArgmin = new int[this.firefighters.size()];
+    loadBuildings(burningBuildings);
 
     // Initialize distMatrix with distances
     for (int i = 0; i < this.firefighters.size(); i++)
       updateDistances(i, burningBuildings);
 
+    // Large steps go through the parallel reduction, which applies the same constraints
+    MoveReduction reduction = null;
+    if ((long) this.firefighters.size() * burningBuildings.length >= parallelGreedyCells)
+      reduction = new MoveReduction(distMatrix, rowArgmin, burningBuildings.length);
+
     // Get possible moves for firefighters, weight them based on constraints then dispatch them
     for (int i = 0; i < burningBuildings.length; i++) {
-      List<Move> possibleMoves = getPossibleMoves();
-
-      // Constraint 1 - get moves with minimum distance to next building
-      if (possibleMoves.size() > 1) {
-        List<Integer> moveDistances = moveToDist(possibleMoves);
-        possibleMoves = getMins(possibleMoves, moveDistances);
-      }
-
-      //Constraint 2 - get moves with maximum column sum (max distance building from all firefighters)
-      if (possibleMoves.size() > 1) {
-        List<Integer> columnSums = moveToColumnSum(possibleMoves);
-        possibleMoves = getMins(possibleMoves, columnSums);
-      }
+      Move move;
+      if (reduction != null) {
+        long closest = reduction.closest(firefighters);
+        // Remaining fires cannot be reached through the road network
+        if (closest == MoveReduction.NO_MOVE)
+          break;
+        move = new Move((int) (closest >>> 32), (int) closest);
+      } else {
+        // Constraint 1 - get moves with minimum distance to next building
+        List<Move> possibleMoves = getClosestMoves();
+
+        // Remaining fires cannot be reached through the road network
+        if (possibleMoves.isEmpty())
+          break;
+
+        //Constraint 2 - get moves with maximum column sum (max distance building from all firefighters)
+        if (possibleMoves.size() > 1) {
+          List<Integer> columnSums = moveToColumnSum(possibleMoves);
+          possibleMoves = getMins(possibleMoves, columnSums);
+        }
 
-      //Constraint 3 - get moves with Firefighters who have moved the least
-      if (possibleMoves.size() > 1) {
-        List<Integer> distTraveled = moveToDistTraveled(possibleMoves);
-        possibleMoves = getMins(possibleMoves, distTraveled);
+        //Constraint 3 - get moves with Firefighters who have moved the least
+        if (possibleMoves.size() > 1) {
+          List<Integer> distTraveled = moveToDistTraveled(possibleMoves);
+          possibleMoves = getMins(possibleMoves, distTraveled);
+        }
+        move = possibleMoves.get(0);
       }
 
       // Move firefighter and put fire out
+      CityNode building = burningBuildings[move.buildingIdx];
       try {
-        Move move = possibleMoves.get(0);
-        CityNode building = burningBuildings[move.buildingIdx];
         city.getBuilding(building).extinguishFire();
 
-        firefighters.get(move.fireFighterIdx).updateLocation(building);
+        firefighters.moveTo(move.fireFighterIdx, building.getX(), building.getY());
+        maskBuilding(building);
         updateDistances(move.fireFighterIdx, burningBuildings);
-        for (int j = 0; j < this.firefighters.size(); j++) {
-          distMatrix[j][move.buildingIdx] = Integer.MAX_VALUE;
+        emitMove(move.fireFighterIdx, move.buildingIdx, building);
+      } catch (NoFireFoundException e) {
+        // Another dispatcher sharing the city claimed this fire first, so nobody moves
+        maskBuilding(building);
+      }
+
+      if (reduction != null) {
+        reduction.dropBuilding(move.buildingIdx);
+        continue;
+      }
+      for (int j = 0; j < this.firefighters.size(); j++) {
+        distMatrix[j][move.buildingIdx] = Integer.MAX_VALUE;
+        if (rowArgmin[j] == move.buildingIdx)
+          rowArgmin[j] = DistanceKernel.argmin(distMatrix[j], burningBuildings.length);
+      }
+    }
+    endLog(Solver.GREEDY, burningBuildings);
+  }
+
+  /**
+   * Orders the burning buildings along a Hilbert curve, tidies the route with a bounded 2-opt and
+   * cuts it into pieces for the firefighters where starting fresh from the FireStation saves distance.
+   * Each piece goes to the free firefighter closest to its first building. The curve only knows
+   * coordinates, so over a road network this dispatches greedily instead
+   * n = # of firefighters
+   * m = # of burning buildings
+   *
+   * Runtime: O(m log m + m * window + n^2)
+   * @param burningBuildings list of locations to be visited
+   */
+  @Override
+  public void spaceFillingCurveDispatch(CityNode[] burningBuildings) {
+    if (roadNetwork != null) {
+      greedyDispatch(burningBuildings);
+      return;
+    }
+    beginLog();
+    loadBuildings(burningBuildings);
+
+    int[] candidates = burningCandidates();
+
+    // A lone firefighter starts from wherever it is, otherwise the route is split from the FireStation
+    CityNode start = firefighters.size() == 1 ? firefighters.getLocation(0) : this.city.getFireStation().getLocation();
+    int[] tour = HilbertRouter.tour(start.getX(), start.getY(), xs, ys, candidates, candidates.length,
+        this.city.getXDimension(), this.city.getYDimension());
+    HilbertRouter.improve(start.getX(), start.getY(), xs, ys, tour, HilbertRouter.DEFAULT_WINDOW,
+        HilbertRouter.DEFAULT_PASSES);
+    int[] cuts = HilbertRouter.cuts(start.getX(), start.getY(), xs, ys, tour, firefighters.size());
+
+    boolean[] assigned = new boolean[firefighters.size()];
+    for (int c = 0; c < cuts.length; c++) {
+      int end = c + 1 < cuts.length ? cuts[c + 1] : tour.length;
+      int head = tour[cuts[c]];
+
+      int firefighterIdx = -1;
+      int best = Integer.MAX_VALUE;
+      for (int f = 0; f < firefighters.size(); f++) {
+        int d = Math.abs(firefighters.getX(f) - xs[head]) + Math.abs(firefighters.getY(f) - ys[head]);
+        if (!assigned[f] && d < best) {
+          best = d;
+          firefighterIdx = f;
+        }
+      }
+      assigned[firefighterIdx] = true;
+      followRoute(firefighterIdx, tour, cuts[c], end, burningBuildings);
+    }
+    endLog(Solver.SPACE_FILLING_CURVE, burningBuildings);
+  }
+
+  /**
+   * Builds at most one route per firefighter with the Clarke-Wright savings heuristic from the FireStation.
+   * Each route goes to the free firefighter closest to either of its ends, starting from that end,
+   * and is tidied with the same bounded 2-opt as the space filling curve routes. Savings are
+   * measured on coordinates, so over a road network this dispatches greedily instead
+   * n = # of firefighters
+   * m = # of burning buildings
+   * k = neighbours considered per building
+   *
+   * Runtime: O(m * k log m + n^3)
+   * @param burningBuildings list of locations to be visited
+   */
+  @Override
+  public void savingsDispatch(CityNode[] burningBuildings) {
+    if (roadNetwork != null) {
+      greedyDispatch(burningBuildings);
+      return;
+    }
+    beginLog();
+    loadBuildings(burningBuildings);
+
+    int[][] plan = savingsPlan(burningCandidates());
+    for (int f = 0; f < plan.length; f++)
+      followRoute(f, plan[f], 0, plan[f].length, burningBuildings);
+    endLog(Solver.SAVINGS, burningBuildings);
+  }
+
+  /**
+   * Starts from the savings routes and improves them with a portfolio of large neighbourhood search
+   * workers until the search budget runs out. The search only knows coordinates, so over a road
+   * network this dispatches greedily instead
+   * n = # of firefighters
+   * m = # of burning buildings
+   * w = # of workers
+   *
+   * Runtime: the search budget, each iteration is O(n + m)
+   * @param burningBuildings list of locations to be visited
+   * @see #setSearchBudget
+   */
+  @Override
+  public void largeNeighbourhoodDispatch(CityNode[] burningBuildings) {
+    if (roadNetwork != null) {
+      greedyDispatch(burningBuildings);
+      return;
+    }
+    beginLog();
+    loadBuildings(burningBuildings);
+
+    int[] candidates = burningCandidates();
+    int[][] plan = savingsPlan(candidates);
+    int n = firefighters.size();
+    if (n > 0 && candidates.length > 0) {
+      int[] startXs = new int[n];
+      int[] startYs = new int[n];
+      for (int f = 0; f < n; f++) {
+        startXs[f] = firefighters.getX(f);
+        startYs[f] = firefighters.getY(f);
+      }
+      plan = new LnsSolver(startXs, startYs, n, xs, ys, candidates, candidates.length)
+          .withWorkers(searchWorkers)
+          .withBudget(searchMillis, searchIterations)
+          .solve(plan);
+    }
+
+    for (int f = 0; f < plan.length; f++)
+      followRoute(f, plan[f], 0, plan[f].length, burningBuildings);
+    endLog(Solver.LARGE_NEIGHBOURHOOD, burningBuildings);
+  }
+
+  /**
+   * Tiles the city into blocks of about {@link BlockRouter#DEFAULT_BLOCK_FIRES} fires, routes
+   * the block centroids and gives each firefighter a stretch of blocks, then routes inside the blocks in
+   * parallel and smooths the seams between them. Blocks and routes only know coordinates, so over a
+   * road network this dispatches greedily instead
+   * n = # of firefighters
+   * m = # of burning buildings
+   * k = neighbours considered per building
+   *
+   * Runtime: O(m * (k log m + window) + n^3)
+   * @param burningBuildings list of locations to be visited
+   */
+  @Override
+  public void hierarchicalDispatch(CityNode[] burningBuildings) {
+    if (roadNetwork != null) {
+      greedyDispatch(burningBuildings);
+      return;
+    }
+    beginLog();
+    loadBuildings(burningBuildings);
+
+    int[] candidates = burningCandidates();
+    int n = firefighters.size();
+    int[] startXs = new int[n];
+    int[] startYs = new int[n];
+    for (int f = 0; f < n; f++) {
+      startXs[f] = firefighters.getX(f);
+      startYs[f] = firefighters.getY(f);
+    }
+    CityNode fireStation = this.city.getFireStation().getLocation();
+    int[][] plan = BlockRouter.plan(startXs, startYs, n, fireStation.getX(), fireStation.getY(), xs, ys,
+        candidates, candidates.length, BlockRouter.DEFAULT_BLOCK_FIRES, this.city.getXDimension(),
+        this.city.getYDimension());
+
+    for (int f = 0; f < plan.length; f++)
+      followRoute(f, plan[f], 0, plan[f].length, burningBuildings);
+    endLog(Solver.HIERARCHICAL, burningBuildings);
+  }
+
+  /**
+   * Depth first branch and bound over the routes of every firefighter, bounded by minimum spanning
+   * forests and seeded with the greedy plan. Stops at the search budget and records the optimality gap.
+   * Distances come from the active {@link DistanceMetric}
+   * n = # of firefighters
+   * m = # of burning buildings
+   *
+   * Runtime: the search budget, each node is O(m^3)
+   * @param burningBuildings list of locations to be visited
+   * @see #setSearchBudget
+   * @see #getOptimalityGap
+   */
+  @Override
+  public void branchAndBoundDispatch(CityNode[] burningBuildings) {
+    beginLog();
+    if (roadNetwork != null)
+      roadNetwork.precompute(burningBuildings);
+    loadBuildings(burningBuildings);
+
+    int[] candidates = burningCandidates();
+    int n = firefighters.size();
+    int[][] startDist = new int[n][];
+    int m = reachableCandidates(burningBuildings, candidates, startDist);
+    int[][] plan = new int[0][];
+    this.optimalityGap = 0;
+    if (n > 0) {
+      BranchAndBoundSolver solver = new BranchAndBoundSolver(startDist, pairDistances(burningBuildings, candidates, m),
+          candidates, m).withBudget(searchMillis, searchIterations);
+      plan = solver.solve();
+      this.optimalityGap = solver.gap();
+    }
+
+    for (int f = 0; f < plan.length; f++)
+      followRoute(f, plan[f], 0, plan[f].length, burningBuildings);
+    endLog(Solver.BRANCH_AND_BOUND, burningBuildings);
+  }
+
+  /**
+   * Held-Karp open paths over every subset of fires from each distinct firefighter location, then
+   * subset convolution to split the fires optimally between the firefighters. Distances come from the
+   * active {@link DistanceMetric}
+   * n = # of firefighters
+   * m = # of burning buildings, at most {@link SetPartitionSolver#MAX_FIRES}
+   *
+   * Runtime: O(2^m * m^2 + 3^m * log n) when the firefighters start together
+   * @param burningBuildings list of locations to be visited
+   */
+  @Override
+  public void setPartitionDispatch(CityNode[] burningBuildings) {
+    beginLog();
+    if (roadNetwork != null)
+      roadNetwork.precompute(burningBuildings);
+    loadBuildings(burningBuildings);
+
+    int[] candidates = burningCandidates();
+    int[][] startDist = new int[firefighters.size()][];
+    int m = reachableCandidates(burningBuildings, candidates, startDist);
+
+    int[][] plan = SetPartitionSolver.solve(startDist, pairDistances(burningBuildings, candidates, m));
+    for (int f = 0; f < plan.length; f++) {
+      for (int p = 0; p < plan[f].length; p++)
+        plan[f][p] = candidates[plan[f][p]];
+      followRoute(f, plan[f], 0, plan[f].length, burningBuildings);
+    }
+    endLog(Solver.SET_PARTITION, burningBuildings);
+  }
+
+  /**
+   * Like greedy, fires no firefighter can reach through the road network are left burning. Moves the
+   * reachable candidates to the front and measures each firefighter's distance to them
+   *
+   * @param candidates indices of the burning buildings, compacted in place
+   * @param startDist filled with the distance from each firefighter to each reachable candidate
+   * @return number of reachable candidates
+   */
+  private int reachableCandidates(CityNode[] burningBuildings, int[] candidates, int[][] startDist) {
+    for (int f = 0; f < startDist.length; f++)
+      startDist[f] = new int[candidates.length];
+    int m = 0;
+    for (int i = 0; i < candidates.length; i++) {
+      boolean reachable = false;
+      for (int f = 0; f < startDist.length; f++) {
+        startDist[f][m] = metric.distance(firefighters.getLocation(f), burningBuildings[candidates[i]]);
+        reachable |= startDist[f][m] != DistanceMetric.UNREACHABLE;
+      }
+      if (reachable)
+        candidates[m++] = candidates[i];
+    }
+    for (int f = 0; f < startDist.length; f++)
+      startDist[f] = Arrays.copyOf(startDist[f], m);
+    return m;
+  }
+
+  private int[][] pairDistances(CityNode[] burningBuildings, int[] candidates, int m) {
+    int[][] pairDist = new int[m][m];
+    for (int i = 0; i < m; i++) {
+      for (int j = 0; j < m; j++)
+        pairDist[i][j] = metric.distance(burningBuildings[candidates[i]], burningBuildings[candidates[j]]);
+    }
+    return pairDist;
+  }
+
+  /**
+   * Builds savings routes from the FireStation and gives each to the free firefighter closest to
+   * either of its ends, starting from that end, then tidies it with a bounded 2-opt
+   *
+   * @param candidates indices of the burning buildings
+   * @return building indices each firefighter visits, in order
+   */
+  private int[][] savingsPlan(int[] candidates) {
+    int[][] plan = new int[firefighters.size()][];
+    Arrays.fill(plan, new int[0]);
+    if (firefighters.size() == 0)
+      return plan;
+
+    CityNode fireStation = this.city.getFireStation().getLocation();
+    int[][] routes = SavingsRouter.routes(fireStation.getX(), fireStation.getY(), xs, ys, candidates,
+        candidates.length, firefighters.size(), SavingsRouter.DEFAULT_NEIGHBOURS);
+
+    boolean[] assigned = new boolean[firefighters.size()];
+    boolean[] routed = new boolean[routes.length];
+    for (int r = 0; r < routes.length; r++) {
+      int bestRoute = -1;
+      int firefighterIdx = -1;
+      boolean reversed = false;
+      int best = Integer.MAX_VALUE;
+      for (int q = 0; q < routes.length; q++) {
+        if (routed[q])
+          continue;
+        int head = routes[q][0];
+        int tail = routes[q][routes[q].length - 1];
+        for (int f = 0; f < firefighters.size(); f++) {
+          if (assigned[f])
+            continue;
+          int toHead = Math.abs(firefighters.getX(f) - xs[head]) + Math.abs(firefighters.getY(f) - ys[head]);
+          int toTail = Math.abs(firefighters.getX(f) - xs[tail]) + Math.abs(firefighters.getY(f) - ys[tail]);
+          if (toHead < best || toTail < best) {
+            best = Math.min(toHead, toTail);
+            bestRoute = q;
+            firefighterIdx = f;
+            reversed = toTail < toHead;
+          }
         }
+      }
+      routed[bestRoute] = true;
+      assigned[firefighterIdx] = true;
+
+      int[] route = routes[bestRoute];
+      if (reversed)
+        HilbertRouter.reverse(route, 0, route.length - 1);
+      HilbertRouter.improve(firefighters.getX(firefighterIdx), firefighters.getY(firefighterIdx), xs, ys, route,
+          HilbertRouter.DEFAULT_WINDOW, HilbertRouter.DEFAULT_PASSES);
+      plan[firefighterIdx] = route;
+    }
+    return plan;
+  }
+
+  /**
+   * Get the indices of the loaded buildings that are still burning
+   */
+  private int[] burningCandidates() {
+    int[] candidates = new int[mask.length];
+    int count = 0;
+    for (int i = 0; i < mask.length; i++) {
+      if (mask[i] == 0)
+        candidates[count++] = i;
+    }
+    return Arrays.copyOf(candidates, count);
+  }
+
+  /**
+   * Walks a firefighter along part of a route, putting out each fire on the way
+   *
+   * @param firefighterIdx index of the firefighter
+   * @param route building indices in visiting order
+   * @param from first position of the route to visit
+   * @param to position after the last one to visit
+   * @param burningBuildings list of locations the route indexes into
+   */
+  private void followRoute(int firefighterIdx, int[] route, int from, int to, CityNode[] burningBuildings) {
+    for (int p = from; p < to; p++) {
+      CityNode building = burningBuildings[route[p]];
+      try {
+        city.getBuilding(building).extinguishFire();
+        firefighters.moveTo(firefighterIdx, building.getX(), building.getY());
+        emitMove(firefighterIdx, route[p], building);
       } catch (NoFireFoundException e) {
-        e.printStackTrace();
+        // Another dispatcher sharing the city claimed this fire first, skip it
       }
     }
   }
@@ -269,32 +949,71 @@ public class FireDispatchImpl implements FireDispatch {
    */
   @Override
   public void bruteForce(CityNode[] burningBuildings) {
-    // Convert list of buildings to indices to pass to permute function
+    beginLog();
+    if (roadNetwork != null)
+      roadNetwork.precompute(burningBuildings);
+
+    // Distances only depend on the pair of buildings so compute them once, not once per permutation
+    CityNode fireStation = this.city.getFireStation().getLocation();
+    int[] stationDist = new int[burningBuildings.length];
+    int[][] pairDist = new int[burningBuildings.length][burningBuildings.length];
+    if (metric == DistanceMetric.TAXICAB) {
+      int[] bxs = new int[burningBuildings.length];
+      int[] bys = new int[burningBuildings.length];
+      DistanceKernel.toArrays(burningBuildings, bxs, bys);
+      DistanceKernel.distanceRow(fireStation.getX(), fireStation.getY(), bxs, bys, stationDist, bxs.length);
+      for (int i = 0; i < burningBuildings.length; i++)
+        DistanceKernel.distanceRow(bxs[i], bys[i], bxs, bys, pairDist[i], bxs.length);
+    } else {
+      for (int i = 0; i < burningBuildings.length; i++) {
+        stationDist[i] = metric.distance(fireStation, burningBuildings[i]);
+        for (int j = 0; j < burningBuildings.length; j++)
+          pairDist[i][j] = metric.distance(burningBuildings[i], burningBuildings[j]);
+      }
+    }
+
+    // Like the other solvers, fires that cannot be reached through the road network are left burning
+    // rather than making every ordering unreachable
     int[] idxs = new int[burningBuildings.length];
+    int reachable = 0;
     for (int i = 0; i < burningBuildings.length; i++) {
-      idxs[i] = i;
+      if (stationDist[i] != DistanceMetric.UNREACHABLE)
+        idxs[reachable++] = i;
+    }
+    if (reachable == 0) {
+      endLog(Solver.BRUTE_FORCE, burningBuildings);
+      return;
     }
-    List<List<Integer>> permutations = permute(idxs);
+
+    // Convert list of buildings to indices to pass to permute function
+    List<List<Integer>> permutations = permute(Arrays.copyOf(idxs, reachable));
 
     // Calculate which permutation is the minimum cost
     List<Integer> minPath = new ArrayList<>();
     int minCost = Integer.MAX_VALUE;
     for (List<Integer> perm : permutations) {
-      int cost = calcPathCost(perm, burningBuildings);
+      int cost = calcPathCost(perm, stationDist, pairDist);
       if (cost < minCost) {
         minCost = cost;
         minPath = perm;
       }
     }
 
-    Firefighter firefighter = this.firefighters.get(0);
+    // Every ordering crosses an obstacle the fires cannot be reached around
+    if (minCost == DistanceMetric.UNREACHABLE) {
+      endLog(Solver.BRUTE_FORCE, burningBuildings);
+      return;
+    }
+
     for (Integer i : minPath){
       try {
         city.getBuilding(burningBuildings[i]).extinguishFire();
-        firefighter.updateLocation(burningBuildings[i]);
+        firefighters.moveTo(0, burningBuildings[i].getX(), burningBuildings[i].getY());
+        emitMove(0, i, burningBuildings[i]);
       } catch (NoFireFoundException e) {
-        e.printStackTrace();
+        // Another dispatcher sharing the city claimed this fire first, skip it
       }
     }
+    endLog(Solver.BRUTE_FORCE, burningBuildings);
   }
 }
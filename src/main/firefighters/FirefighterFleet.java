@@ -0,0 +1,254 @@
+package main.firefighters;
+
+import main.api.CityNode;
+import main.api.DistanceMetric;
+import main.api.Firefighter;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Stores a fleet of firefighters as packed primitive arrays of positions and distance traveled.
+ * {@link Firefighter} objects are only created as views when asked for, and resetting the
+ * fleet reuses the existing arrays unless it has to grow
+ */
+public class FirefighterFleet {
+  private int[] xs;
+  private int[] ys;
+  private int[] distances;
+  private int size;
+  private long totalDistance;
+  private int maxDistance;
+  private DistanceMetric metric;
+  private final List<Firefighter> view;
+
+  public FirefighterFleet() {
+    this.xs = new int[0];
+    this.ys = new int[0];
+    this.distances = new int[0];
+    this.metric = DistanceMetric.TAXICAB;
+    this.view = new AbstractList<Firefighter>() {
+      @Override
+      public Firefighter get(int index) {
+        checkIndex(index);
+        return new FleetFirefighter(index);
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+    };
+  }
+
+  /**
+   * Places a number of firefighters at the given location with nothing traveled.
+   * Only allocates when the fleet is larger than it has ever been
+   *
+   * @param numFirefighters number of firefighters
+   * @param location starting location, normally the FireStation
+   * @param metric metric used to measure distance traveled
+   */
+  public void reset(int numFirefighters, CityNode location, DistanceMetric metric) {
+    if (numFirefighters < 0)
+      throw new IllegalArgumentException("Number of firefighters cannot be negative: " + numFirefighters);
+
+    if (numFirefighters > xs.length) {
+      xs = new int[numFirefighters];
+      ys = new int[numFirefighters];
+      distances = new int[numFirefighters];
+    }
+    Arrays.fill(xs, 0, numFirefighters, location.getX());
+    Arrays.fill(ys, 0, numFirefighters, location.getY());
+    Arrays.fill(distances, 0, numFirefighters, 0);
+
+    this.size = numFirefighters;
+    this.totalDistance = 0;
+    this.maxDistance = 0;
+    this.metric = metric;
+  }
+
+  /**
+   * Overwrites this fleet with a copy of another fleet's positions, distances and metric
+   *
+   * @param other fleet to copy
+   */
+  public void copyFrom(FirefighterFleet other) {
+    if (other.size > xs.length) {
+      xs = new int[other.size];
+      ys = new int[other.size];
+      distances = new int[other.size];
+    }
+    System.arraycopy(other.xs, 0, xs, 0, other.size);
+    System.arraycopy(other.ys, 0, ys, 0, other.size);
+    System.arraycopy(other.distances, 0, distances, 0, other.size);
+
+    this.size = other.size;
+    this.totalDistance = other.totalDistance;
+    this.maxDistance = other.maxDistance;
+    this.metric = other.metric;
+  }
+
+  /**
+   * Overwrites this fleet with the given positions and distances
+   *
+   * @param numFirefighters number of firefighters
+   * @param xs X coordinate of each firefighter
+   * @param ys Y coordinate of each firefighter
+   * @param distancesTraveled distance traveled by each firefighter
+   * @param metric metric used to measure distance traveled from here on
+   */
+  public void restore(int numFirefighters, int[] xs, int[] ys, int[] distancesTraveled, DistanceMetric metric) {
+    if (numFirefighters > this.xs.length) {
+      this.xs = new int[numFirefighters];
+      this.ys = new int[numFirefighters];
+      this.distances = new int[numFirefighters];
+    }
+    System.arraycopy(xs, 0, this.xs, 0, numFirefighters);
+    System.arraycopy(ys, 0, this.ys, 0, numFirefighters);
+    System.arraycopy(distancesTraveled, 0, this.distances, 0, numFirefighters);
+
+    this.size = numFirefighters;
+    this.totalDistance = 0;
+    this.maxDistance = 0;
+    this.metric = metric;
+    for (int i = 0; i < numFirefighters; i++) {
+      totalDistance += distances[i];
+      maxDistance = Math.max(maxDistance, distances[i]);
+    }
+  }
+
+  /**
+   * Changes how distance traveled is measured for every later move, keeping what was traveled so far
+   *
+   * @param metric metric used to measure distance traveled
+   */
+  public void setMetric(DistanceMetric metric) {
+    this.metric = metric;
+  }
+
+  /**
+   * Copies the positions and distances of the fleet into the given arrays
+   *
+   * @param xs destination for the X coordinates
+   * @param ys destination for the Y coordinates
+   * @param distancesTraveled destination for the distances traveled
+   */
+  public void copyTo(int[] xs, int[] ys, int[] distancesTraveled) {
+    System.arraycopy(this.xs, 0, xs, 0, size);
+    System.arraycopy(this.ys, 0, ys, 0, size);
+    System.arraycopy(this.distances, 0, distancesTraveled, 0, size);
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public int getX(int firefighterIdx) {
+    checkIndex(firefighterIdx);
+    return xs[firefighterIdx];
+  }
+
+  public int getY(int firefighterIdx) {
+    checkIndex(firefighterIdx);
+    return ys[firefighterIdx];
+  }
+
+  public CityNode getLocation(int firefighterIdx) {
+    checkIndex(firefighterIdx);
+    return new CityNode(xs[firefighterIdx], ys[firefighterIdx]);
+  }
+
+  public int distanceTraveled(int firefighterIdx) {
+    checkIndex(firefighterIdx);
+    return distances[firefighterIdx];
+  }
+
+  /**
+   * Moves a firefighter and adds the distance to its total
+   *
+   * @param firefighterIdx index of the firefighter
+   * @param x X coordinate of the new location
+   * @param y Y coordinate of the new location
+   */
+  public void moveTo(int firefighterIdx, int x, int y) {
+    checkIndex(firefighterIdx);
+    int distance;
+    if (metric == DistanceMetric.TAXICAB)
+      distance = Math.abs(xs[firefighterIdx] - x) + Math.abs(ys[firefighterIdx] - y);
+    else
+      distance = metric.distance(new CityNode(xs[firefighterIdx], ys[firefighterIdx]), new CityNode(x, y));
+
+    xs[firefighterIdx] = x;
+    ys[firefighterIdx] = y;
+    distances[firefighterIdx] += distance;
+    totalDistance += distance;
+    maxDistance = Math.max(maxDistance, distances[firefighterIdx]);
+  }
+
+  /**
+   * Get the total distance traveled by the whole fleet. Kept as a running total so this is O(1)
+   *
+   * @return sum of distance traveled over all firefighters
+   */
+  public long totalDistanceTraveled() {
+    return totalDistance;
+  }
+
+  /**
+   * Get the longest distance traveled by a single firefighter. Distances only grow so this is kept
+   * as a running maximum and is O(1)
+   *
+   * @return max distance traveled by any firefighter
+   */
+  public int maxDistanceTraveled() {
+    return maxDistance;
+  }
+
+  /**
+   * Get the fleet as a list of {@link Firefighter} views backed by the arrays
+   *
+   * @return a live, fixed size list of firefighters
+   */
+  public List<Firefighter> asList() {
+    return view;
+  }
+
+  private void checkIndex(int firefighterIdx) {
+    if (firefighterIdx < 0 || firefighterIdx >= size)
+      throw new IndexOutOfBoundsException("Firefighter index " + firefighterIdx + " out of " + size);
+  }
+
+  /**
+   * {@link Firefighter} backed by one slot of the fleet arrays
+   */
+  private class FleetFirefighter implements Firefighter {
+    private final int idx;
+
+    FleetFirefighter(int idx) {
+      this.idx = idx;
+    }
+
+    @Override
+    public CityNode getLocation() {
+      return FirefighterFleet.this.getLocation(idx);
+    }
+
+    @Override
+    public int distanceTraveled() {
+      return FirefighterFleet.this.distanceTraveled(idx);
+    }
+
+    @Override
+    public void updateLocation(CityNode location) {
+      moveTo(idx, location.getX(), location.getY());
+    }
+
+    @Override
+    public String toString() {
+      return "Firefighter{" + "xCoordinate=" + xs[idx] + ", yCoordinate=" + ys[idx] +
+          ", distanceTraveled=" + distances[idx] + '}';
+    }
+  }
+}
@@ -0,0 +1,126 @@
+package main.firefighters;
+
+/**
+ * Held-Karp dynamic program for shortest open paths that start at a fixed origin. One table holds
+ * the best path over every subset of buildings for each building it can end at, which gives both the
+ * shortest path over every building and the best route for each subset that
+ * {@link SetPartitionSolver} splits fires with.
+ *
+ * Distances are capped at {@link #UNREACHABLE}, so a path crossing an unreachable leg costs at least
+ * that much and a path's worth of them cannot overflow
+ *
+ * Runtime: O(2^m * m^2), memory: O(2^m * m)
+ */
+public final class HeldKarp {
+  public static final int MAX_BUILDINGS = 20;
+  public static final int UNREACHABLE = 1 << 25;
+
+  private HeldKarp() {}
+
+  /**
+   * Finds the cost of the shortest open path from the origin through every building
+   *
+   * @param originDist distance from the origin to each building
+   * @param dist distance between each pair of buildings
+   * @param m number of buildings
+   * @return the minimum path cost, 0 if there are no buildings
+   */
+  public static long openPathCost(int[] originDist, int[][] dist, int m) {
+    if (m == 0)
+      return 0;
+    return openPaths(table(originDist, dist, m), m)[(1 << m) - 1];
+  }
+
+  /**
+   * table[S * m + last] = shortest open path from the origin over S, ending at last. Only entries
+   * with last in S are filled. Each entry pulls from the row of S without last, which sits together
+   * in memory
+   *
+   * @param originDist distance from the origin to each building
+   * @param dist distance between each pair of buildings
+   * @param m number of buildings
+   * @return the table, indexed by subset then last building
+   */
+  public static int[] table(int[] originDist, int[][] dist, int m) {
+    if (m > MAX_BUILDINGS)
+      throw new IllegalArgumentException("Held-Karp is limited to " + MAX_BUILDINGS + " buildings: " + m);
+
+    int[][] into = new int[m][m];
+    for (int i = 0; i < m; i++) {
+      for (int j = 0; j < m; j++)
+        into[j][i] = Math.min(dist[i][j], UNREACHABLE);
+    }
+
+    int[] table = new int[(1 << m) * m];
+    for (int s = 1; s < 1 << m; s++) {
+      if ((s & (s - 1)) == 0) {
+        int only = Integer.numberOfTrailingZeros(s);
+        table[s * m + only] = Math.min(originDist[only], UNREACHABLE);
+        continue;
+      }
+      for (int bits = s; bits != 0; bits &= bits - 1) {
+        int last = Integer.numberOfTrailingZeros(bits);
+        int prefix = (s ^ 1 << last) * m;
+        int[] row = into[last];
+        int best = Integer.MAX_VALUE;
+        for (int prev = s ^ 1 << last; prev != 0; prev &= prev - 1) {
+          int q = Integer.numberOfTrailingZeros(prev);
+          int cost = table[prefix + q] + row[q];
+          if (cost < best)
+            best = cost;
+        }
+        table[s * m + last] = best;
+      }
+    }
+    return table;
+  }
+
+  /**
+   * @param table a {@link #table}
+   * @param m number of buildings
+   * @return cost of the shortest open path over each subset, whichever building it ends at
+   */
+  public static int[] openPaths(int[] table, int m) {
+    int[] paths = new int[1 << m];
+    for (int s = 1; s < 1 << m; s++) {
+      int best = Integer.MAX_VALUE;
+      for (int bits = s; bits != 0; bits &= bits - 1)
+        best = Math.min(best, table[s * m + Integer.numberOfTrailingZeros(bits)]);
+      paths[s] = best;
+    }
+    return paths;
+  }
+
+  /**
+   * Walks a {@link #table} back to the order of the shortest open path over a subset
+   *
+   * @param table a {@link #table}
+   * @param dist the distances the table was built from
+   * @param s subset of buildings, not empty
+   * @param m number of buildings
+   * @return buildings of the subset in path order
+   */
+  public static int[] path(int[] table, int[][] dist, int s, int m) {
+    int[] route = new int[Integer.bitCount(s)];
+    int last = -1;
+    for (int i = 0; i < m; i++) {
+      if ((s & 1 << i) != 0 && (last < 0 || table[s * m + i] < table[s * m + last]))
+        last = i;
+    }
+
+    for (int p = route.length - 1; p > 0; p--) {
+      route[p] = last;
+      int prefix = s ^ 1 << last;
+      int target = table[s * m + last];
+      int prev = -1;
+      for (int i = 0; i < m && prev < 0; i++) {
+        if ((prefix & 1 << i) != 0 && table[prefix * m + i] + Math.min(dist[i][last], UNREACHABLE) == target)
+          prev = i;
+      }
+      s = prefix;
+      last = prev;
+    }
+    route[0] = last;
+    return route;
+  }
+}
@@ -0,0 +1,174 @@
+package main.firefighters;
+
+import java.util.Arrays;
+
+/**
+ * Orders buildings along a Hilbert curve over the city grid. Buildings close on the curve are close
+ * in the city, so the curve order is a reasonable route found in O(m log m). A bounded 2-opt pass
+ * can then tidy up the route, and the route can be cut into pieces for several firefighters
+ */
+public final class HilbertRouter {
+  public static final int DEFAULT_WINDOW = 32;
+  public static final int DEFAULT_PASSES = 4;
+  private static final int MAX_ORDER = 16;
+
+  private HilbertRouter() {}
+
+  /**
+   * Get the position of a cell along a Hilbert curve covering a 2^order square
+   *
+   * @param order curve order
+   * @param x X coordinate, less than 2^order
+   * @param y Y coordinate, less than 2^order
+   * @return distance along the curve
+   */
+  public static long hilbertIndex(int order, int x, int y) {
+    long d = 0;
+    for (int s = 1 << (order - 1); s > 0; s >>= 1) {
+      int rx = (x & s) > 0 ? 1 : 0;
+      int ry = (y & s) > 0 ? 1 : 0;
+      d += (long) s * s * ((3 * rx) ^ ry);
+
+      // Rotate the quadrant so the sub curve lines up
+      if (ry == 0) {
+        if (rx == 1) {
+          x = s - 1 - x;
+          y = s - 1 - y;
+        }
+        int t = x;
+        x = y;
+        y = t;
+      }
+    }
+    return d;
+  }
+
+  /**
+   * Orders buildings along the Hilbert curve, then picks the direction that is cheaper from the start
+   *
+   * @param startX X coordinate the route starts from
+   * @param startY Y coordinate the route starts from
+   * @param xs X coordinates of the buildings
+   * @param ys Y coordinates of the buildings
+   * @param candidates indices of the buildings to route
+   * @param count number of candidates
+   * @param xDimension X dimension of the city
+   * @param yDimension Y dimension of the city
+   * @return candidate indices in route order
+   */
+  public static int[] tour(int startX, int startY, int[] xs, int[] ys, int[] candidates, int count,
+                           int xDimension, int yDimension) {
+    int order = 1;
+    while ((1 << order) < Math.max(xDimension, yDimension))
+      order++;
+    // Coarsen very large grids so the curve index and building index fit in one long
+    int shift = Math.max(0, order - MAX_ORDER);
+    order -= shift;
+
+    long[] keys = new long[count];
+    for (int i = 0; i < count; i++) {
+      int b = candidates[i];
+      keys[i] = (hilbertIndex(order, xs[b] >> shift, ys[b] >> shift) << 31) | b;
+    }
+    Arrays.sort(keys);
+
+    int[] tour = new int[count];
+    for (int i = 0; i < count; i++)
+      tour[i] = (int) (keys[i] & Integer.MAX_VALUE);
+
+    if (count > 1 && dist(startX, startY, xs, ys, tour[count - 1]) < dist(startX, startY, xs, ys, tour[0]))
+      reverse(tour, 0, count - 1);
+    return tour;
+  }
+
+  /**
+   * Improves an open route from a fixed start with 2-opt moves that reverse at most window buildings.
+   *
+   * Runtime: O(passes * m * window)
+   * @param startX X coordinate the route starts from
+   * @param startY Y coordinate the route starts from
+   * @param xs X coordinates of the buildings
+   * @param ys Y coordinates of the buildings
+   * @param tour building indices in route order, improved in place
+   * @param window longest segment to reverse
+   * @param passes maximum number of passes over the route
+   * @return distance saved
+   */
+  public static long improve(int startX, int startY, int[] xs, int[] ys, int[] tour, int window, int passes) {
+    int m = tour.length;
+    long saved = 0;
+    for (int pass = 0; pass < passes; pass++) {
+      long passSaved = 0;
+      for (int i = 0; i < m - 1; i++) {
+        int prevX = i == 0 ? startX : xs[tour[i - 1]];
+        int prevY = i == 0 ? startY : ys[tour[i - 1]];
+        int last = Math.min(m - 1, i + window);
+        for (int j = i + 1; j <= last; j++) {
+          int a = tour[i];
+          int b = tour[j];
+          int delta = Math.abs(prevX - xs[b]) + Math.abs(prevY - ys[b]) -
+              Math.abs(prevX - xs[a]) - Math.abs(prevY - ys[a]);
+          if (j < m - 1) {
+            int n = tour[j + 1];
+            delta += dist(xs[a], ys[a], xs, ys, n) - dist(xs[b], ys[b], xs, ys, n);
+          }
+          if (delta < 0) {
+            reverse(tour, i, j);
+            passSaved -= delta;
+          }
+        }
+      }
+      saved += passSaved;
+      if (passSaved == 0)
+        break;
+    }
+    return saved;
+  }
+
+  /**
+   * Splits a route into at most maxSegments pieces. Each extra piece replaces the edge into its first
+   * building with a trip from the start, so the cuts with the largest savings are used
+   *
+   * @param startX X coordinate of the start, normally the FireStation
+   * @param startY Y coordinate of the start
+   * @param xs X coordinates of the buildings
+   * @param ys Y coordinates of the buildings
+   * @param tour building indices in route order
+   * @param maxSegments maximum number of pieces, normally the number of firefighters
+   * @return sorted positions in the tour where each piece begins, always starting with 0
+   */
+  public static int[] cuts(int startX, int startY, int[] xs, int[] ys, int[] tour, int maxSegments) {
+    int m = tour.length;
+    if (m == 0)
+      return new int[0];
+
+    // Pack (saving, position) so the biggest savings sort last
+    long[] savings = new long[m - 1];
+    int positive = 0;
+    for (int p = 1; p < m; p++) {
+      int saving = dist(xs[tour[p - 1]], ys[tour[p - 1]], xs, ys, tour[p]) - dist(startX, startY, xs, ys, tour[p]);
+      if (saving > 0)
+        savings[positive++] = ((long) saving << 32) | p;
+    }
+    Arrays.sort(savings, 0, positive);
+
+    int numCuts = Math.min(positive, maxSegments - 1);
+    int[] cuts = new int[numCuts + 1];
+    for (int c = 0; c < numCuts; c++)
+      cuts[c + 1] = (int) savings[positive - 1 - c];
+    Arrays.sort(cuts);
+    return cuts;
+  }
+
+  private static int dist(int x, int y, int[] xs, int[] ys, int b) {
+    return Math.abs(x - xs[b]) + Math.abs(y - ys[b]);
+  }
+
+  static void reverse(int[] tour, int i, int j) {
+    while (i < j) {
+      int t = tour[i];
+      tour[i++] = tour[j];
+      tour[j--] = t;
+    }
+  }
+}
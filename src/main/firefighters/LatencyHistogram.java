@@ -0,0 +1,98 @@
+package main.firefighters;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log-linear latency histogram in the style of HdrHistogram. Values below 128 get a bucket each, above
+ * that every power of two is split into 64 buckets, so any reported value is within 1.6% of the
+ * recorded one. Recording is a couple of atomic increments and never locks, so many dispatching
+ * threads can share one histogram. Values above about 36 minutes in nanoseconds land in the last
+ * bucket. Reads while others record, or across a {@link #reset()}, are approximate
+ */
+public final class LatencyHistogram {
+  private static final int SUB_BITS = 7;
+  private static final int SUB_COUNT = 1 << SUB_BITS;
+  private static final int HALF_COUNT = SUB_COUNT / 2;
+  private static final int MAX_BIT = 40;
+  private static final int BUCKETS = SUB_COUNT + (MAX_BIT - SUB_BITS + 1) * HALF_COUNT;
+
+  private final AtomicLongArray counts;
+  private final AtomicLong count;
+  private final AtomicLong max;
+
+  public LatencyHistogram() {
+    this.counts = new AtomicLongArray(BUCKETS);
+    this.count = new AtomicLong();
+    this.max = new AtomicLong();
+  }
+
+  /**
+   * @param value latency in nanoseconds, negative values count as 0
+   */
+  public void record(long value) {
+    long v = Math.max(0, value);
+    counts.getAndIncrement(indexOf(v));
+    count.getAndIncrement();
+    if (v > max.get())
+      max.accumulateAndGet(v, Math::max);
+  }
+
+  public long count() {
+    return count.get();
+  }
+
+  public long max() {
+    return max.get();
+  }
+
+  /**
+   * Get the value at or below which a share of the recordings fall
+   *
+   * @param percentile between 0 and 100
+   * @return highest value of the bucket holding the percentile, 0 if nothing was recorded
+   */
+  public long valueAtPercentile(double percentile) {
+    long total = 0;
+    for (int i = 0; i < BUCKETS; i++)
+      total += counts.get(i);
+    if (total == 0)
+      return 0;
+
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts.get(i);
+      if (seen >= rank)
+        return Math.min(highestValue(i), max.get());
+    }
+    return max.get();
+  }
+
+  /**
+   * Clears the histogram. Recordings racing with the reset may be kept or dropped
+   */
+  public void reset() {
+    for (int i = 0; i < BUCKETS; i++)
+      counts.set(i, 0);
+    count.set(0);
+    max.set(0);
+  }
+
+  private static int indexOf(long v) {
+    if (v < SUB_COUNT)
+      return (int) v;
+    int shift = 63 - Long.numberOfLeadingZeros(v) - (SUB_BITS - 1);
+    int index = SUB_COUNT + (shift - 1) * HALF_COUNT + (int) (v >>> shift) - HALF_COUNT;
+    return Math.min(index, BUCKETS - 1);
+  }
+
+  private static long highestValue(int index) {
+    if (index < SUB_COUNT)
+      return index;
+    int k = index - SUB_COUNT;
+    int shift = k / HALF_COUNT + 1;
+    long sub = k % HALF_COUNT + HALF_COUNT;
+    return ((sub + 1) << shift) - 1;
+  }
+}
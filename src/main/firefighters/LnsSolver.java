@@ -0,0 +1,454 @@
+package main.firefighters;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Large neighbourhood search over open routes, one per firefighter. Each iteration destroys part of
+ * the plan by removing random buildings, a spatial cluster of buildings or a stretch of one route,
+ * then repairs it by inserting each removed building where it adds the least distance.
+ *
+ * A portfolio of workers with different seeds, operator mixes and acceptance slack runs on a thread
+ * pool. They share the best plan found so far through an {@link AtomicReference} and restart from it
+ * when they stall. The search stops once either the time or the iteration budget runs out.
+ * A single worker runs on the calling thread and, given only an iteration budget, is deterministic
+ */
+public final class LnsSolver {
+  public static final int DEFAULT_WORKERS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+  public static final int MAX_REMOVED = 30;
+  private static final int MIN_REMOVED = 2;
+  private static final int RESTART_AFTER = 200;
+  private static final double ACCEPT_SLACK = 0.002;
+
+  private static final int RANDOM_REMOVAL = 0;
+  private static final int SPATIAL_REMOVAL = 1;
+  private static final int ROUTE_REMOVAL = 2;
+  private static final int OPERATORS = 3;
+
+  private final int[] startXs;
+  private final int[] startYs;
+  private final int numRoutes;
+  private final int[] candidates;
+  private final int[] xs;
+  private final int[] ys;
+  private final int m;
+
+  private int workers = DEFAULT_WORKERS;
+  private long timeMillis = Long.MAX_VALUE;
+  private long iterations = Long.MAX_VALUE;
+  private long seed;
+  private Executor executor = ForkJoinPool.commonPool();
+  private long iterationsRun;
+
+  /**
+   * @param startXs X coordinate each route starts from, normally the firefighters
+   * @param startYs Y coordinate each route starts from
+   * @param numRoutes number of routes
+   * @param xs X coordinates of the buildings
+   * @param ys Y coordinates of the buildings
+   * @param candidates indices of the buildings to route
+   * @param count number of candidates
+   */
+  public LnsSolver(int[] startXs, int[] startYs, int numRoutes, int[] xs, int[] ys, int[] candidates, int count) {
+    this.startXs = Arrays.copyOf(startXs, numRoutes);
+    this.startYs = Arrays.copyOf(startYs, numRoutes);
+    this.numRoutes = numRoutes;
+    this.candidates = Arrays.copyOf(candidates, count);
+    this.xs = new int[count];
+    this.ys = new int[count];
+    this.m = count;
+    for (int i = 0; i < count; i++) {
+      this.xs[i] = xs[candidates[i]];
+      this.ys[i] = ys[candidates[i]];
+    }
+  }
+
+  /**
+   * @param workers number of workers in the portfolio
+   * @return this solver
+   */
+  public LnsSolver withWorkers(int workers) {
+    if (workers < 1)
+      throw new IllegalArgumentException("Need at least one worker: " + workers);
+    this.workers = workers;
+    return this;
+  }
+
+  /**
+   * @param timeMillis wall clock budget, Long.MAX_VALUE for none
+   * @param iterations iterations shared by all workers, Long.MAX_VALUE for none
+   * @return this solver
+   */
+  public LnsSolver withBudget(long timeMillis, long iterations) {
+    if (timeMillis == Long.MAX_VALUE && iterations == Long.MAX_VALUE)
+      throw new IllegalArgumentException("Search needs a time or iteration budget");
+    this.timeMillis = timeMillis;
+    this.iterations = iterations;
+    return this;
+  }
+
+  /**
+   * @param seed seed of the first worker, the others are derived from it
+   * @return this solver
+   */
+  public LnsSolver withSeed(long seed) {
+    this.seed = seed;
+    return this;
+  }
+
+  /**
+   * @param executor pool to run the workers on when there is more than one
+   * @return this solver
+   */
+  public LnsSolver withExecutor(Executor executor) {
+    this.executor = executor;
+    return this;
+  }
+
+  /**
+   * @return iterations carried out by the last call to {@link #solve}
+   */
+  public long iterationsRun() {
+    return iterationsRun;
+  }
+
+  /**
+   * Improves a plan until the budget runs out
+   *
+   * @param initial building indices of each route in visiting order, covering every candidate once
+   * @return the best plan found, never worse than the initial one
+   */
+  public int[][] solve(int[][] initial) {
+    if (timeMillis == Long.MAX_VALUE && iterations == Long.MAX_VALUE)
+      throw new IllegalStateException("Search needs a time or iteration budget");
+    if (initial.length != numRoutes)
+      throw new IllegalArgumentException("Expected " + numRoutes + " routes: " + initial.length);
+
+    int[] localOf = new int[maxCandidate() + 1];
+    for (int i = 0; i < m; i++)
+      localOf[candidates[i]] = i;
+    int[][] local = new int[numRoutes][];
+    for (int r = 0; r < numRoutes; r++) {
+      local[r] = new int[initial[r].length];
+      for (int p = 0; p < initial[r].length; p++)
+        local[r][p] = localOf[initial[r][p]];
+    }
+
+    AtomicReference<Plan> incumbent = new AtomicReference<>(new Plan(local, cost(local)));
+    AtomicLong counter = new AtomicLong();
+    AtomicLong completed = new AtomicLong();
+    long deadline = timeMillis >= Long.MAX_VALUE / 1_000_000 ? Long.MAX_VALUE : System.nanoTime() + timeMillis * 1_000_000;
+
+    if (m > 0) {
+      if (workers == 1) {
+        new Worker(0, incumbent, counter, completed, deadline).run();
+      } else {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[workers];
+        for (int w = 0; w < workers; w++)
+          futures[w] = CompletableFuture.runAsync(new Worker(w, incumbent, counter, completed, deadline), executor);
+        CompletableFuture.allOf(futures).join();
+      }
+    }
+    iterationsRun = completed.get();
+
+    int[][] best = incumbent.get().routes;
+    int[][] result = new int[numRoutes][];
+    for (int r = 0; r < numRoutes; r++) {
+      result[r] = new int[best[r].length];
+      for (int p = 0; p < best[r].length; p++)
+        result[r][p] = candidates[best[r][p]];
+    }
+    return result;
+  }
+
+  private int maxCandidate() {
+    int max = 0;
+    for (int candidate : candidates)
+      max = Math.max(max, candidate);
+    return max;
+  }
+
+  private long cost(int[][] routes) {
+    long total = 0;
+    for (int r = 0; r < numRoutes; r++)
+      total += routeCost(r, routes[r], routes[r].length);
+    return total;
+  }
+
+  private long routeCost(int r, int[] route, int length) {
+    long cost = 0;
+    int x = startXs[r];
+    int y = startYs[r];
+    for (int p = 0; p < length; p++) {
+      cost += Math.abs(x - xs[route[p]]) + Math.abs(y - ys[route[p]]);
+      x = xs[route[p]];
+      y = ys[route[p]];
+    }
+    return cost;
+  }
+
+  private int dist(int a, int b) {
+    return Math.abs(xs[a] - xs[b]) + Math.abs(ys[a] - ys[b]);
+  }
+
+  /**
+   * Immutable plan shared between workers
+   */
+  private static final class Plan {
+    final int[][] routes;
+    final long cost;
+
+    Plan(int[][] routes, long cost) {
+      this.routes = routes;
+      this.cost = cost;
+    }
+  }
+
+  private final class Worker implements Runnable {
+    private final int id;
+    private final SplittableRandom random;
+    private final AtomicReference<Plan> incumbent;
+    private final AtomicLong counter;
+    private final AtomicLong completed;
+    private final long deadline;
+    private final double slack;
+    private final CandidateLists lists;
+
+    private int[][] routes;
+    private int[] lengths;
+    private long[] routeCosts;
+    private long cost;
+    private int[][] trialRoutes;
+    private int[] trialLengths;
+    private long[] trialCosts;
+
+    private final boolean[] removed;
+    private final int[] removedList;
+    private final int[] near;
+
+    Worker(int id, AtomicReference<Plan> incumbent, AtomicLong counter, AtomicLong completed, long deadline) {
+      this.id = id;
+      this.random = new SplittableRandom(seed + id * 0x9E3779B97F4A7C15L);
+      this.incumbent = incumbent;
+      this.counter = counter;
+      this.completed = completed;
+      this.deadline = deadline;
+      this.slack = ACCEPT_SLACK * (id % 4);
+      this.lists = m > 1 ? new CandidateLists(xs, ys, m, Math.min(MAX_REMOVED, m - 1)) : null;
+
+      this.routes = new int[numRoutes][m];
+      this.lengths = new int[numRoutes];
+      this.routeCosts = new long[numRoutes];
+      this.trialRoutes = new int[numRoutes][m];
+      this.trialLengths = new int[numRoutes];
+      this.trialCosts = new long[numRoutes];
+      this.removed = new boolean[m];
+      this.removedList = new int[MAX_REMOVED];
+      this.near = new int[MAX_REMOVED];
+    }
+
+    @Override
+    public void run() {
+      load(incumbent.get());
+      long best = cost;
+      int stalled = 0;
+      int maxRemoved = Math.min(MAX_REMOVED, m);
+      int minRemoved = Math.min(MIN_REMOVED, maxRemoved);
+      long done = 0;
+
+      // Compared by difference, nanoTime may wrap between here and the deadline
+      while (counter.getAndIncrement() < iterations &&
+          (deadline == Long.MAX_VALUE || System.nanoTime() - deadline < 0)) {
+        for (int r = 0; r < numRoutes; r++) {
+          System.arraycopy(routes[r], 0, trialRoutes[r], 0, lengths[r]);
+          trialLengths[r] = lengths[r];
+          trialCosts[r] = routeCosts[r];
+        }
+
+        int removedCount = destroy(chooseOperator(), minRemoved + random.nextInt(maxRemoved - minRemoved + 1));
+        long trialCost = repair(removedCount);
+
+        if (trialCost < cost || trialCost <= incumbent.get().cost * (1 + slack)) {
+          swap();
+          cost = trialCost;
+          if (cost < best) {
+            best = cost;
+            stalled = 0;
+            publish();
+          }
+        }
+        if (++stalled >= RESTART_AFTER) {
+          load(incumbent.get());
+          stalled = 0;
+        }
+        done++;
+      }
+      completed.addAndGet(done);
+    }
+
+    /**
+     * Worker 0 mixes operators evenly, the others favour one operator each
+     */
+    private int chooseOperator() {
+      if (id == 0 || random.nextBoolean())
+        return random.nextInt(OPERATORS);
+      return (id - 1) % OPERATORS;
+    }
+
+    /**
+     * Removes buildings from the trial plan
+     *
+     * @return number of buildings removed, listed in removedList
+     */
+    private int destroy(int operator, int target) {
+      int count = 0;
+      switch (operator) {
+        case RANDOM_REMOVAL:
+          while (count < target) {
+            int b = random.nextInt(m);
+            if (!removed[b])
+              count = mark(b, count);
+          }
+          break;
+        case SPATIAL_REMOVAL: {
+          int seedBuilding = random.nextInt(m);
+          count = mark(seedBuilding, count);
+          int found = lists == null ? 0 : lists.neighbours(seedBuilding, near);
+          for (int j = 0; j < found && count < target; j++)
+            count = mark(near[j], count);
+          break;
+        }
+        case ROUTE_REMOVAL: {
+          int r = random.nextInt(numRoutes);
+          while (trialLengths[r] == 0)
+            r = (r + 1) % numRoutes;
+          for (int p = random.nextInt(trialLengths[r]); p < trialLengths[r] && count < target; p++)
+            count = mark(trialRoutes[r][p], count);
+          break;
+        }
+        default:
+          throw new IllegalArgumentException("Unknown removal operator: " + operator);
+      }
+
+      for (int r = 0; r < numRoutes; r++) {
+        int[] route = trialRoutes[r];
+        int length = 0;
+        for (int p = 0; p < trialLengths[r]; p++) {
+          if (!removed[route[p]])
+            route[length++] = route[p];
+        }
+        if (length != trialLengths[r]) {
+          trialLengths[r] = length;
+          trialCosts[r] = routeCost(r, route, length);
+        }
+      }
+      return count;
+    }
+
+    private int mark(int building, int count) {
+      removed[building] = true;
+      removedList[count] = building;
+      return count + 1;
+    }
+
+    /**
+     * Inserts the removed buildings, in random order, each where it adds the least distance
+     *
+     * @return cost of the repaired trial plan
+     */
+    private long repair(int removedCount) {
+      for (int i = removedCount - 1; i > 0; i--) {
+        int j = random.nextInt(i + 1);
+        int t = removedList[i];
+        removedList[i] = removedList[j];
+        removedList[j] = t;
+      }
+
+      for (int i = 0; i < removedCount; i++) {
+        int b = removedList[i];
+        int bestRoute = 0;
+        int bestPosition = 0;
+        long bestDelta = Long.MAX_VALUE;
+        for (int r = 0; r < numRoutes; r++) {
+          int[] route = trialRoutes[r];
+          int length = trialLengths[r];
+          int fromStart = Math.abs(startXs[r] - xs[b]) + Math.abs(startYs[r] - ys[b]);
+          for (int p = 0; p <= length; p++) {
+            long delta;
+            if (p == 0) {
+              delta = length == 0 ? fromStart : fromStart + dist(b, route[0]) -
+                  (Math.abs(startXs[r] - xs[route[0]]) + Math.abs(startYs[r] - ys[route[0]]));
+            } else if (p == length) {
+              delta = dist(route[p - 1], b);
+            } else {
+              delta = dist(route[p - 1], b) + dist(b, route[p]) - dist(route[p - 1], route[p]);
+            }
+            if (delta < bestDelta) {
+              bestDelta = delta;
+              bestRoute = r;
+              bestPosition = p;
+            }
+          }
+        }
+
+        int[] route = trialRoutes[bestRoute];
+        System.arraycopy(route, bestPosition, route, bestPosition + 1, trialLengths[bestRoute] - bestPosition);
+        route[bestPosition] = b;
+        trialLengths[bestRoute]++;
+        trialCosts[bestRoute] += bestDelta;
+        removed[b] = false;
+      }
+
+      long total = 0;
+      for (int r = 0; r < numRoutes; r++)
+        total += trialCosts[r];
+      return total;
+    }
+
+    private void swap() {
+      int[][] routesTmp = routes;
+      routes = trialRoutes;
+      trialRoutes = routesTmp;
+      int[] lengthsTmp = lengths;
+      lengths = trialLengths;
+      trialLengths = lengthsTmp;
+      long[] costsTmp = routeCosts;
+      routeCosts = trialCosts;
+      trialCosts = costsTmp;
+    }
+
+    private void load(Plan plan) {
+      for (int r = 0; r < numRoutes; r++) {
+        System.arraycopy(plan.routes[r], 0, routes[r], 0, plan.routes[r].length);
+        lengths[r] = plan.routes[r].length;
+        routeCosts[r] = routeCost(r, routes[r], lengths[r]);
+      }
+      cost = plan.cost;
+    }
+
+    /**
+     * Offers the current plan as the shared incumbent if it is still the best
+     */
+    private void publish() {
+      Plan snapshot = null;
+      for (;;) {
+        Plan current = incumbent.get();
+        if (cost >= current.cost)
+          return;
+        if (snapshot == null) {
+          int[][] copy = new int[numRoutes][];
+          for (int r = 0; r < numRoutes; r++)
+            copy[r] = Arrays.copyOf(routes[r], lengths[r]);
+          snapshot = new Plan(copy, cost);
+        }
+        if (incumbent.compareAndSet(current, snapshot))
+          return;
+      }
+    }
+  }
+}
@@ -0,0 +1,288 @@
+package main.firefighters;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps dispatch latency and queue depth within their targets by lowering the {@link ServiceLevel}
+ * dispatchers run at, one step at a time. Dispatchers record how long each incident took and callers
+ * that queue incidents report them, both without locking.
+ *
+ * Every window, once enough dispatches have been recorded or enough time has passed, the window's p99
+ * and the current depth are checked. A p99 above target or a queue longer than allowed steps down one
+ * level, and the next window is measured at that level before stepping further. Stepping back up
+ * takes several calm windows in a row, with p99 under half the target and the queue under half its
+ * limit, so the level does not flap at the edge
+ */
+public final class LoadShedder {
+  public static final int DEFAULT_WINDOW_SAMPLES = 64;
+  public static final long DEFAULT_WINDOW_MILLIS = 100;
+  public static final int DEFAULT_CALM_WINDOWS = 3;
+  private static final int SWITCH_HISTORY = 64;
+
+  /**
+   * Why the level changed
+   */
+  public enum Reason {
+    LATENCY, QUEUE_DEPTH, RECOVERED
+  }
+
+  private final long p99TargetNanos;
+  private final int maxQueueDepth;
+  private int windowSamples = DEFAULT_WINDOW_SAMPLES;
+  private long windowNanos = DEFAULT_WINDOW_MILLIS * 1_000_000;
+  private int calmWindows = DEFAULT_CALM_WINDOWS;
+
+  private final LatencyHistogram latencies;
+  private final LatencyHistogram window;
+  private final AtomicInteger queued;
+  private final AtomicInteger running;
+  private final AtomicInteger level;
+  private final AtomicLong windowStart;
+  private final AtomicBoolean evaluating;
+  private final LongAdder[] dispatches;
+  private final LongAdder[] switches;
+  private final ArrayDeque<Switch> history;
+  private int calm;
+
+  /**
+   * @param p99TargetNanos dispatch latency 99% of incidents should stay under
+   * @param maxQueueDepth incidents that may be queued or dispatching at once
+   */
+  public LoadShedder(long p99TargetNanos, int maxQueueDepth) {
+    if (p99TargetNanos <= 0)
+      throw new IllegalArgumentException("Latency target must be positive: " + p99TargetNanos);
+    if (maxQueueDepth < 1)
+      throw new IllegalArgumentException("Need to allow at least one queued incident: " + maxQueueDepth);
+
+    this.p99TargetNanos = p99TargetNanos;
+    this.maxQueueDepth = maxQueueDepth;
+    this.latencies = new LatencyHistogram();
+    this.window = new LatencyHistogram();
+    this.queued = new AtomicInteger();
+    this.running = new AtomicInteger();
+    this.level = new AtomicInteger(ServiceLevel.FULL.ordinal());
+    this.windowStart = new AtomicLong(System.nanoTime());
+    this.evaluating = new AtomicBoolean();
+    this.dispatches = newAdders(ServiceLevel.values().length);
+    this.switches = newAdders(Reason.values().length);
+    this.history = new ArrayDeque<>();
+  }
+
+  /**
+   * @param samples dispatches that close a window
+   * @param timeMillis time that closes a window, whatever was recorded in it
+   * @param calmWindows calm windows in a row needed to step back up
+   * @return this load shedder
+   */
+  public LoadShedder withWindow(int samples, long timeMillis, int calmWindows) {
+    if (samples < 1 || timeMillis < 1 || calmWindows < 1)
+      throw new IllegalArgumentException("Window needs positive sizes: " + samples + " samples, " +
+          timeMillis + "ms, " + calmWindows + " calm windows");
+    this.windowSamples = samples;
+    this.windowNanos = timeMillis * 1_000_000;
+    this.calmWindows = calmWindows;
+    return this;
+  }
+
+  public ServiceLevel level() {
+    return ServiceLevel.values()[level.get()];
+  }
+
+  /**
+   * Called by a dispatcher before it starts on an incident
+   *
+   * @return level to dispatch the incident at
+   */
+  public ServiceLevel beginDispatch() {
+    running.incrementAndGet();
+    maybeEvaluate();
+    ServiceLevel current = level();
+    dispatches[current.ordinal()].increment();
+    return current;
+  }
+
+  /**
+   * Called by a dispatcher once it is done with an incident
+   *
+   * @param latencyNanos time spent dispatching it
+   */
+  public void endDispatch(long latencyNanos) {
+    running.decrementAndGet();
+    latencies.record(latencyNanos);
+    window.record(latencyNanos);
+    maybeEvaluate();
+  }
+
+  /**
+   * Called when an incident is queued for a dispatcher
+   */
+  public void enqueued() {
+    queued.incrementAndGet();
+    maybeEvaluate();
+  }
+
+  /**
+   * Called when a queued incident is taken off the queue, whether or not it is dispatched
+   */
+  public void dequeued() {
+    queued.decrementAndGet();
+  }
+
+  /**
+   * @return incidents queued or being dispatched right now
+   */
+  public int queueDepth() {
+    return queued.get() + running.get();
+  }
+
+  /**
+   * Get latency, level and switch counts so far
+   *
+   * @return a {@link Metrics} snapshot
+   */
+  public Metrics metrics() {
+    long[] perLevel = new long[dispatches.length];
+    for (int i = 0; i < perLevel.length; i++)
+      perLevel[i] = dispatches[i].sum();
+    long[] perReason = new long[switches.length];
+    for (int i = 0; i < perReason.length; i++)
+      perReason[i] = switches[i].sum();
+    List<Switch> recent;
+    synchronized (history) {
+      recent = new ArrayList<>(history);
+    }
+    return new Metrics(level(), queueDepth(), latencies.count(), latencies.valueAtPercentile(50),
+        latencies.valueAtPercentile(99), latencies.max(), perLevel, perReason, recent);
+  }
+
+  private void maybeEvaluate() {
+    long now = System.nanoTime();
+    boolean due = window.count() >= windowSamples || now - windowStart.get() >= windowNanos;
+    // Whoever loses the race leaves the decision to the thread already making it
+    if (!due || !evaluating.compareAndSet(false, true))
+      return;
+    try {
+      closeWindow(now);
+    } finally {
+      evaluating.set(false);
+    }
+  }
+
+  private void closeWindow(long now) {
+    long p99 = window.valueAtPercentile(99);
+    int depth = queueDepth();
+    window.reset();
+    windowStart.set(now);
+
+    ServiceLevel current = level();
+    if (p99 > p99TargetNanos) {
+      step(current, current.cheaper(), Reason.LATENCY, p99, depth);
+    } else if (depth > maxQueueDepth) {
+      step(current, current.cheaper(), Reason.QUEUE_DEPTH, p99, depth);
+    } else if (p99 <= p99TargetNanos / 2 && depth <= maxQueueDepth / 2) {
+      if (++calm >= calmWindows)
+        step(current, current.richer(), Reason.RECOVERED, p99, depth);
+    } else {
+      calm = 0;
+    }
+  }
+
+  /**
+   * Moves to a new level, unless already at the end of the ladder
+   */
+  private void step(ServiceLevel current, ServiceLevel next, Reason reason, long p99, int depth) {
+    calm = 0;
+    if (next == current)
+      return;
+    level.set(next.ordinal());
+    switches[reason.ordinal()].increment();
+    synchronized (history) {
+      if (history.size() == SWITCH_HISTORY)
+        history.removeFirst();
+      history.addLast(new Switch(current, next, reason, p99, depth, System.currentTimeMillis()));
+    }
+  }
+
+  private static LongAdder[] newAdders(int count) {
+    LongAdder[] adders = new LongAdder[count];
+    for (int i = 0; i < count; i++)
+      adders[i] = new LongAdder();
+    return adders;
+  }
+
+  /**
+   * One change of level and what caused it
+   */
+  public static class Switch {
+    public final ServiceLevel from;
+    public final ServiceLevel to;
+    public final Reason reason;
+    public final long p99Nanos;
+    public final int queueDepth;
+    public final long timeMillis;
+
+    public Switch(ServiceLevel from, ServiceLevel to, Reason reason, long p99Nanos, int queueDepth,
+                  long timeMillis) {
+      this.from = from;
+      this.to = to;
+      this.reason = reason;
+      this.p99Nanos = p99Nanos;
+      this.queueDepth = queueDepth;
+      this.timeMillis = timeMillis;
+    }
+
+    @Override
+    public String toString() {
+      return "Switch{" + from + " -> " + to + ", reason=" + reason + ", p99Nanos=" + p99Nanos +
+          ", queueDepth=" + queueDepth + ", timeMillis=" + timeMillis + '}';
+    }
+  }
+
+  /**
+   * Snapshot of a load shedder. Dispatch counts are indexed by {@link ServiceLevel#ordinal()}, switch
+   * counts by {@link Reason#ordinal()}, and the most recent switches are kept last
+   */
+  public static class Metrics {
+    public final ServiceLevel level;
+    public final int queueDepth;
+    public final long dispatched;
+    public final long p50Nanos;
+    public final long p99Nanos;
+    public final long maxNanos;
+    public final long[] dispatchesPerLevel;
+    public final long[] switchesPerReason;
+    public final List<Switch> recentSwitches;
+
+    public Metrics(ServiceLevel level, int queueDepth, long dispatched, long p50Nanos, long p99Nanos,
+                   long maxNanos, long[] dispatchesPerLevel, long[] switchesPerReason,
+                   List<Switch> recentSwitches) {
+      this.level = level;
+      this.queueDepth = queueDepth;
+      this.dispatched = dispatched;
+      this.p50Nanos = p50Nanos;
+      this.p99Nanos = p99Nanos;
+      this.maxNanos = maxNanos;
+      this.dispatchesPerLevel = dispatchesPerLevel;
+      this.switchesPerReason = switchesPerReason;
+      this.recentSwitches = recentSwitches;
+    }
+
+    public long switches(Reason reason) {
+      return switchesPerReason[reason.ordinal()];
+    }
+
+    @Override
+    public String toString() {
+      return "Metrics{" + "level=" + level + ", queueDepth=" + queueDepth + ", dispatched=" + dispatched +
+          ", p50Nanos=" + p50Nanos + ", p99Nanos=" + p99Nanos + ", maxNanos=" + maxNanos +
+          ", switchesPerReason=" + Arrays.toString(switchesPerReason) + '}';
+    }
+  }
+}
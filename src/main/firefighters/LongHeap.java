@@ -0,0 +1,71 @@
+package main.firefighters;
+
+import java.util.Arrays;
+
+/**
+ * Binary max heap of primitive longs. Solvers pack a priority into the high bits and an index into
+ * the low bits so entries sort without boxing
+ */
+final class LongHeap {
+  private long[] keys;
+  private int size;
+
+  LongHeap(int capacity) {
+    this.keys = new long[Math.max(1, capacity)];
+  }
+
+  /**
+   * Builds a heap over the first size keys in O(size), taking ownership of the array
+   */
+  LongHeap(long[] keys, int size) {
+    this.keys = keys.length == 0 ? new long[1] : keys;
+    this.size = size;
+    for (int i = size / 2 - 1; i >= 0; i--)
+      siftDown(i);
+  }
+
+  int size() {
+    return size;
+  }
+
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  void add(long key) {
+    if (size == keys.length)
+      keys = Arrays.copyOf(keys, 2 * keys.length);
+    int i = size++;
+    while (i > 0 && keys[(i - 1) / 2] < key) {
+      keys[i] = keys[(i - 1) / 2];
+      i = (i - 1) / 2;
+    }
+    keys[i] = key;
+  }
+
+  long peek() {
+    return keys[0];
+  }
+
+  long poll() {
+    long top = keys[0];
+    keys[0] = keys[--size];
+    siftDown(0);
+    return top;
+  }
+
+  private void siftDown(int i) {
+    long key = keys[i];
+    int half = size / 2;
+    while (i < half) {
+      int child = 2 * i + 1;
+      if (child + 1 < size && keys[child + 1] > keys[child])
+        child++;
+      if (keys[child] <= key)
+        break;
+      keys[i] = keys[child];
+      i = child;
+    }
+    keys[i] = key;
+  }
+}
@@ -0,0 +1,79 @@
+package main.firefighters;
+
+import main.api.CityNode;
+import main.api.DispatchedMove;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Publishes each {@link DispatchedMove} of a dispatch as soon as it is made, so consumers can act on
+ * the first assignment while the rest are still being planned. The dispatch starts when the subscriber
+ * arrives, and planning pauses whenever the subscriber falls a full buffer behind.
+ * Only one subscriber is allowed, and the FireDispatch must not be used elsewhere until the stream completes.
+ * A move listener already set on the FireDispatch is told about every move as well
+ */
+public class MovePublisher implements Flow.Publisher<DispatchedMove> {
+  private final FireDispatchImpl fireDispatch;
+  private final CityNode[] burningBuildings;
+  private final Executor executor;
+  private final int bufferSize;
+  private final AtomicBoolean subscribed;
+
+  public MovePublisher(FireDispatchImpl fireDispatch, CityNode[] burningBuildings) {
+    this(fireDispatch, burningBuildings, ForkJoinPool.commonPool(), Flow.defaultBufferSize());
+  }
+
+  /**
+   * @param fireDispatch dispatcher to run
+   * @param burningBuildings locations of the fires
+   * @param executor runs the dispatch and delivers moves, so it needs at least two threads
+   * @param bufferSize number of moves that can be planned ahead of the subscriber
+   */
+  public MovePublisher(FireDispatchImpl fireDispatch, CityNode[] burningBuildings, Executor executor, int bufferSize) {
+    this.fireDispatch = fireDispatch;
+    this.burningBuildings = burningBuildings;
+    this.executor = executor;
+    this.bufferSize = bufferSize;
+    this.subscribed = new AtomicBoolean();
+  }
+
+  @Override
+  public void subscribe(Flow.Subscriber<? super DispatchedMove> subscriber) {
+    if (!subscribed.compareAndSet(false, true)) {
+      subscriber.onSubscribe(new Flow.Subscription() {
+        @Override
+        public void request(long n) {}
+
+        @Override
+        public void cancel() {}
+      });
+      subscriber.onError(new IllegalStateException("MovePublisher only supports a single subscriber"));
+      return;
+    }
+
+    SubmissionPublisher<DispatchedMove> publisher = new SubmissionPublisher<>(executor, bufferSize);
+    publisher.subscribe(subscriber);
+    executor.execute(() -> {
+      // The caller's own listener keeps seeing moves, and gets its place back before the stream completes
+      Consumer<DispatchedMove> previous = fireDispatch.getMoveListener();
+      fireDispatch.setMoveListener(previous == null ? publisher::submit : previous.andThen(publisher::submit));
+      try {
+        try {
+          fireDispatch.dispatchFirefighters(burningBuildings);
+        } finally {
+          fireDispatch.setMoveListener(previous);
+        }
+        publisher.close();
+      } catch (Throwable e) {
+        publisher.closeExceptionally(e);
+        if (e instanceof Error)
+          throw (Error) e;
+      }
+    });
+  }
+}
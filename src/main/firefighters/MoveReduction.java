@@ -0,0 +1,129 @@
+package main.firefighters;
+
+import java.util.stream.IntStream;
+
+/**
+ * Parallel form of one {@link FireDispatchImpl#greedyDispatch} step over its distance matrix. Moves are
+ * compared on the keys of the sequential constraints, in the same order: distance, then largest column
+ * sum, then least distance traveled by the firefighter, then row major position. That order is total,
+ * so reducing rows in parallel over primitive ranges picks exactly the sequential move however the
+ * work is split.
+ *
+ * Column sums are only computed for columns holding a closest move, once per step
+ */
+final class MoveReduction {
+  static final long NO_MOVE = -1;
+
+  private final int[][] distMatrix;
+  private final int[] rowArgmin;
+  private final int length;
+  private final int[] tiedStep;
+  private final int[] columnKey;
+  private int step;
+
+  /**
+   * @param distMatrix distance of every firefighter to every building, Integer.MAX_VALUE once masked
+   * @param rowArgmin first closest building of each row, kept up to date by {@link #dropBuilding}
+   * @param length number of buildings
+   */
+  MoveReduction(int[][] distMatrix, int[] rowArgmin, int length) {
+    this.distMatrix = distMatrix;
+    this.rowArgmin = rowArgmin;
+    this.length = length;
+    this.tiedStep = new int[length];
+    this.columnKey = new int[length];
+  }
+
+  /**
+   * Finds the move the greedy constraints choose
+   *
+   * @param fleet firefighters, for their distance traveled
+   * @return firefighter index in the high and building index in the low 32 bits, or {@link #NO_MOVE}
+   */
+  long closest(FirefighterFleet fleet) {
+    // One cached value per row, cheaper to scan than to split
+    int minVal = Integer.MAX_VALUE;
+    for (int i = 0; i < distMatrix.length; i++) {
+      if (rowArgmin[i] != DistanceKernel.NONE)
+        minVal = Math.min(minVal, distMatrix[i][rowArgmin[i]]);
+    }
+    if (minVal == Integer.MAX_VALUE)
+      return NO_MOVE;
+
+    // Mark the columns of every closest move. Threads only ever write the same value
+    int current = ++step;
+    int closest = minVal;
+    IntStream.range(0, distMatrix.length).parallel()
+        .filter(i -> tied(i, closest))
+        .forEach(i -> {
+          int[] row = distMatrix[i];
+          for (int j = rowArgmin[i]; j < length; j++) {
+            if (row[j] == closest)
+              tiedStep[j] = current;
+          }
+        });
+
+    // Negated column sums, wrapping the same way as the sequential constraint
+    IntStream.range(0, length).parallel()
+        .filter(j -> tiedStep[j] == current)
+        .forEach(j -> {
+          int sum = 0;
+          for (int[] row : distMatrix)
+            sum += row[j];
+          columnKey[j] = sum * -1;
+        });
+
+    return IntStream.range(0, distMatrix.length).parallel()
+        .filter(i -> tied(i, closest))
+        .mapToLong(i -> bestInRow(i, closest))
+        .reduce(NO_MOVE, (a, b) -> before(a, b, fleet) ? a : b);
+  }
+
+  /**
+   * Masks a building in every row and finds a new closest building for the rows that just lost theirs
+   *
+   * @param buildingIdx building that is no longer a target
+   */
+  void dropBuilding(int buildingIdx) {
+    IntStream.range(0, distMatrix.length).parallel().forEach(i -> {
+      distMatrix[i][buildingIdx] = Integer.MAX_VALUE;
+      if (rowArgmin[i] == buildingIdx)
+        rowArgmin[i] = DistanceKernel.argmin(distMatrix[i], length);
+    });
+  }
+
+  private boolean tied(int i, int minVal) {
+    return rowArgmin[i] != DistanceKernel.NONE && distMatrix[i][rowArgmin[i]] == minVal;
+  }
+
+  /**
+   * Closest move of a row with the smallest column key, the first one on ties
+   */
+  private long bestInRow(int i, int minVal) {
+    int[] row = distMatrix[i];
+    int best = rowArgmin[i];
+    for (int j = best + 1; j < length; j++) {
+      if (row[j] == minVal && columnKey[j] < columnKey[best])
+        best = j;
+    }
+    return (long) i << 32 | best;
+  }
+
+  private boolean before(long a, long b, FirefighterFleet fleet) {
+    if (b == NO_MOVE)
+      return true;
+    if (a == NO_MOVE)
+      return false;
+    int ia = (int) (a >>> 32);
+    int ib = (int) (b >>> 32);
+    int ja = (int) a;
+    int jb = (int) b;
+    if (columnKey[ja] != columnKey[jb])
+      return columnKey[ja] < columnKey[jb];
+    int ta = fleet.distanceTraveled(ia);
+    int tb = fleet.distanceTraveled(ib);
+    if (ta != tb)
+      return ta < tb;
+    return ia != ib ? ia < ib : ja < jb;
+  }
+}
@@ -0,0 +1,194 @@
+package main.firefighters;
+
+import java.util.Arrays;
+
+/**
+ * Clarke-Wright savings construction of open routes from a common start, normally the FireStation.
+ * Every building begins on its own route. Routes are paths that can be walked from either end, and
+ * two routes are joined end to end in order of the classic saving
+ * dist(start, i) + dist(start, j) - dist(i, j), taken from a heap. Joins are forced until there are no
+ * more routes than firefighters, after that a join is only made if it shortens the open routes,
+ * where each route is walked from whichever end is closer to the start.
+ * Routes are tracked with union-find over int[] and linked through int[] adjacency slots.
+ *
+ * Only the k nearest neighbours of each building are considered for joins, from {@link CandidateLists},
+ * so memory and time are O(m * k log m). With k of at least m - 1 every pair is considered
+ */
+public final class SavingsRouter {
+  public static final int DEFAULT_NEIGHBOURS = 16;
+  private static final int NONE = DistanceKernel.NONE;
+
+  private final int[] xs;
+  private final int[] ys;
+  private final int[] startDist;
+  // Two adjacency slots per building, NONE when unused
+  private final int[] links;
+  // For a building at the end of a route, the building at the other end
+  private final int[] otherEnd;
+  private final int[] parent;
+  private int routes;
+
+  private SavingsRouter(int startX, int startY, int[] xs, int[] ys, int count) {
+    this.xs = xs;
+    this.ys = ys;
+    this.startDist = new int[count];
+    this.links = new int[2 * count];
+    this.otherEnd = new int[count];
+    this.parent = new int[count];
+    this.routes = count;
+    DistanceKernel.distanceRow(startX, startY, xs, ys, startDist, count);
+    Arrays.fill(links, NONE);
+    for (int i = 0; i < count; i++) {
+      otherEnd[i] = i;
+      parent[i] = i;
+    }
+  }
+
+  /**
+   * Builds at most maxRoutes open routes covering every candidate
+   *
+   * @param startX X coordinate every route starts from
+   * @param startY Y coordinate every route starts from
+   * @param xs X coordinates of the buildings
+   * @param ys Y coordinates of the buildings
+   * @param candidates indices of the buildings to route
+   * @param count number of candidates
+   * @param maxRoutes maximum number of routes, normally the number of firefighters
+   * @param neighbours joins considered per building
+   * @return candidate indices of each route in visiting order, starting from the end closer to the start
+   */
+  public static int[][] routes(int startX, int startY, int[] xs, int[] ys, int[] candidates, int count,
+                               int maxRoutes, int neighbours) {
+    if (maxRoutes < 1)
+      throw new IllegalArgumentException("Need at least one route: " + maxRoutes);
+
+    int[] localXs = new int[count];
+    int[] localYs = new int[count];
+    for (int i = 0; i < count; i++) {
+      localXs[i] = xs[candidates[i]];
+      localYs[i] = ys[candidates[i]];
+    }
+    SavingsRouter router = new SavingsRouter(startX, startY, localXs, localYs, count);
+
+    int k = Math.min(neighbours, count - 1);
+    if (k > 0) {
+      CandidateLists lists = new CandidateLists(localXs, localYs, count, k);
+      int[] from = new int[count * k];
+      int[] to = new int[from.length];
+      int entries = 0;
+      int[] near = new int[k];
+      for (int i = 0; i < count; i++) {
+        int found = lists.neighbours(i, near);
+        for (int n = 0; n < found; n++) {
+          from[entries] = i;
+          to[entries++] = near[n];
+        }
+      }
+      router.join(from, to, entries, maxRoutes);
+    }
+
+    // The neighbour graph left too many routes apart, join them over every pair of route ends
+    if (router.routes > maxRoutes) {
+      int[] ends = new int[2 * router.routes];
+      int e = 0;
+      for (int i = 0; i < count; i++) {
+        if (router.isEnd(i))
+          ends[e++] = i;
+      }
+      int[] from = new int[e * (e - 1) / 2];
+      int[] to = new int[from.length];
+      int entries = 0;
+      for (int a = 0; a < e; a++) {
+        for (int b = a + 1; b < e; b++) {
+          if (router.find(ends[a]) != router.find(ends[b])) {
+            from[entries] = ends[a];
+            to[entries++] = ends[b];
+          }
+        }
+      }
+      router.join(from, to, entries, maxRoutes);
+    }
+
+    int[][] result = new int[router.routes][];
+    int r = 0;
+    int[] route = new int[count];
+    boolean[] visited = new boolean[count];
+    for (int i = 0; i < count; i++) {
+      if (visited[i] || !router.isEnd(i) || router.startDist[router.otherEnd[i]] < router.startDist[i])
+        continue;
+      int length = 0;
+      for (int b = i, previous = NONE; b != NONE; ) {
+        visited[b] = true;
+        route[length++] = candidates[b];
+        int following = router.links[2 * b] != previous ? router.links[2 * b] : router.links[2 * b + 1];
+        previous = b;
+        b = following;
+      }
+      result[r++] = Arrays.copyOf(route, length);
+    }
+    return result;
+  }
+
+  /**
+   * Takes joins from the heap in order of saving, skipping those that no longer join two route ends
+   */
+  private void join(int[] from, int[] to, int entries, int maxRoutes) {
+    long[] keys = new long[entries];
+    for (int e = 0; e < entries; e++) {
+      int i = from[e];
+      int j = to[e];
+      int saving = startDist[i] + startDist[j] - dist(i, j);
+      keys[e] = ((long) saving << 32) | e;
+    }
+    LongHeap heap = new LongHeap(keys, entries);
+
+    while (!heap.isEmpty() && routes > 1) {
+      int e = (int) heap.poll();
+      int i = from[e];
+      int j = to[e];
+      if (!isEnd(i) || !isEnd(j))
+        continue;
+      int rootI = find(i);
+      int rootJ = find(j);
+      if (rootI == rootJ)
+        continue;
+
+      int farI = otherEnd[i];
+      int farJ = otherEnd[j];
+      if (routes <= maxRoutes) {
+        // Each route is walked from its end closer to the start, so is the joined route
+        int before = Math.min(startDist[i], startDist[farI]) + Math.min(startDist[j], startDist[farJ]);
+        int after = dist(i, j) + Math.min(startDist[farI], startDist[farJ]);
+        if (after >= before)
+          continue;
+      }
+
+      link(i, j);
+      link(j, i);
+      otherEnd[farI] = farJ;
+      otherEnd[farJ] = farI;
+      parent[rootJ] = rootI;
+      routes--;
+    }
+  }
+
+  private boolean isEnd(int i) {
+    return links[2 * i + 1] == NONE;
+  }
+
+  private void link(int i, int j) {
+    links[links[2 * i] == NONE ? 2 * i : 2 * i + 1] = j;
+  }
+
+  private int dist(int i, int j) {
+    return Math.abs(xs[i] - xs[j]) + Math.abs(ys[i] - ys[j]);
+  }
+
+  private int find(int i) {
+    while (parent[i] != i) {
+      parent[i] = parent[parent[i]];
+      i = parent[i];
+    }
+    return i;
+  }
+}
@@ -0,0 +1,64 @@
+package main.firefighters;
+
+/**
+ * How much work {@link FireDispatchImpl#dispatchFirefighters} may spend on an incident, from the full
+ * choice of solvers down to the cheapest. Each level caps the solver that would otherwise be picked and
+ * never swaps in a more expensive one
+ */
+public enum ServiceLevel {
+  /**
+   * Whatever dispatchFirefighters picks, including exact solvers for small incidents
+   */
+  FULL,
+  /**
+   * No exact or search based solvers, greedy instead
+   */
+  GREEDY,
+  /**
+   * Savings routes tidied with a bounded 2-opt, O(m log m) where greedy is O(n * m^2)
+   */
+  LOCAL_SEARCH,
+  /**
+   * A single space filling curve cut between the firefighters
+   */
+  SPACE_FILLING_CURVE;
+
+  /**
+   * Get the solver to run at this level
+   *
+   * @param preferred solver picked when there is no pressure
+   * @return preferred, or a cheaper solver
+   */
+  public Solver cap(Solver preferred) {
+    switch (this) {
+      case FULL:
+        return preferred;
+      case GREEDY:
+        return isSearch(preferred) ? Solver.GREEDY : preferred;
+      case LOCAL_SEARCH:
+        return isSearch(preferred) || preferred == Solver.GREEDY ? Solver.SAVINGS : preferred;
+      default:
+        return Solver.SPACE_FILLING_CURVE;
+    }
+  }
+
+  public ServiceLevel cheaper() {
+    return this == SPACE_FILLING_CURVE ? this : values()[ordinal() + 1];
+  }
+
+  public ServiceLevel richer() {
+    return this == FULL ? this : values()[ordinal() - 1];
+  }
+
+  private static boolean isSearch(Solver solver) {
+    switch (solver) {
+      case BRUTE_FORCE:
+      case SET_PARTITION:
+      case BRANCH_AND_BOUND:
+      case LARGE_NEIGHBOURHOOD:
+        return true;
+      default:
+        return false;
+    }
+  }
+}
@@ -0,0 +1,192 @@
+package main.firefighters;
+
+import java.util.Arrays;
+
+/**
+ * Exact solver for small incidents with several firefighters. {@link HeldKarp} gives the shortest
+ * open path over every subset of fires from each distinct start, then a min-plus subset convolution
+ * splits the fires between the firefighters.
+ *
+ * Firefighters with the same start are interchangeable, so each group of them is solved by doubling
+ * on the number of routes, always putting the lowest fire of a subset on the left so every split is
+ * seen once. Groups are then convolved with each other. Only the full set is needed from the last
+ * convolution, and with a single group the routes besides the one with the first fire never see that
+ * fire. Every table is a primitive array indexed by subset.
+ *
+ * With one start and m fires the cost is O(2^m * m^2 + 3^m * log n)
+ */
+public final class SetPartitionSolver {
+  public static final int MAX_FIRES = 16;
+
+  private SetPartitionSolver() {}
+
+  /**
+   * Finds the plan with the least total distance
+   *
+   * @param startDist distance from each firefighter to each fire, [n][m]
+   * @param pairDist distance between each pair of fires, [m][m]
+   * @return fire indices each firefighter visits, in order
+   */
+  public static int[][] solve(int[][] startDist, int[][] pairDist) {
+    int n = startDist.length;
+    int m = pairDist.length;
+    if (m > MAX_FIRES)
+      throw new IllegalArgumentException("Too many fires for an exact split: " + m);
+
+    int[][] plan = new int[n][];
+    Arrays.fill(plan, new int[0]);
+    if (n == 0 || m == 0)
+      return plan;
+
+    // Group firefighters whose distances to every fire are the same
+    int[] groupOf = new int[n];
+    int[] groupSize = new int[n];
+    int[] groupLeader = new int[n];
+    int groups = 0;
+    for (int f = 0; f < n; f++) {
+      int g = 0;
+      while (g < groups && !Arrays.equals(startDist[groupLeader[g]], startDist[f]))
+        g++;
+      if (g == groups)
+        groupLeader[groups++] = f;
+      groupOf[f] = g;
+      groupSize[g]++;
+    }
+
+    int full = (1 << m) - 1;
+    int[][] pathDp = new int[groups][];
+    Table table = null;
+    for (int g = 0; g < groups; g++) {
+      pathDp[g] = HeldKarp.table(startDist[groupLeader[g]], pairDist, m);
+      Table routes = new Table(g, HeldKarp.openPaths(pathDp[g], m));
+      boolean last = g == groups - 1;
+      // More routes than fires never helps
+      Table group = power(routes, Math.min(groupSize[g], m), full, last && g == 0);
+      table = table == null ? group : convolve(table, group, full, false, last);
+    }
+
+    // Walk the split back down to one subset per route, then order each subset along its path
+    int[] subsets = new int[n];
+    int[] groupRoutes = new int[groups];
+    int[] routeGroup = new int[n];
+    int routes = decompose(table, full, subsets, routeGroup, 0);
+    for (int r = 0; r < routes; r++) {
+      int g = routeGroup[r];
+      int f = nthMember(groupOf, g, groupRoutes[g]++);
+      plan[f] = HeldKarp.path(pathDp[g], pairDist, subsets[r], m);
+    }
+    return plan;
+  }
+
+  /**
+   * Covers the subsets of universe with up to count interchangeable routes. When only the universe
+   * itself is wanted, its lowest fire gets a route of its own and the other routes only ever see
+   * subsets without that fire. Otherwise the number of routes is doubled
+   */
+  private static Table power(Table routes, int count, int universe, boolean onlyUniverse) {
+    if (count == 1)
+      return routes;
+    if (onlyUniverse) {
+      Table others = power(routes, count - 1, universe & (universe - 1), false);
+      return convolve(routes, others, universe, true, true);
+    }
+    Table half = power(routes, count / 2, universe, false);
+    Table doubled = convolve(half, half, universe, true, false);
+    return count % 2 == 0 ? doubled : convolve(doubled, routes, universe, true, false);
+  }
+
+  /**
+   * Min-plus subset convolution over the subsets of universe: cost[S] = min over T in S of
+   * left[T] + right[S \ T]. When both sides are made of interchangeable routes T always holds the
+   * lowest fire of S, which is enough since either side can be empty
+   */
+  private static Table convolve(Table left, Table right, int universe, boolean interchangeable,
+                                boolean onlyUniverse) {
+    int[] leftCost = left.cost;
+    int[] rightCost = right.cost;
+    int[] cost = new int[leftCost.length];
+    // Walks the non empty subsets of universe in increasing order
+    int s = onlyUniverse ? universe : -universe & universe;
+    while (s != 0) {
+      int fixed = interchangeable ? s & -s : 0;
+      int rest = s ^ fixed;
+      int best = leftCost[s] + rightCost[0];
+      for (int sub = (rest - 1) & rest; ; sub = (sub - 1) & rest) {
+        best = Math.min(best, leftCost[sub | fixed] + rightCost[rest ^ sub]);
+        if (sub == 0)
+          break;
+      }
+      cost[s] = best;
+      s = onlyUniverse ? 0 : (s - universe) & universe;
+    }
+    return new Table(left, right, cost, interchangeable);
+  }
+
+  /**
+   * Finds the part of s the left side of a convolution took. Only done along the chosen plan, so the
+   * convolution itself keeps no record of it
+   */
+  private static int split(Table table, int s) {
+    int fixed = table.interchangeable ? s & -s : 0;
+    int rest = s ^ fixed;
+    for (int sub = rest; ; sub = (sub - 1) & rest) {
+      if (table.left.cost[sub | fixed] + table.right.cost[rest ^ sub] == table.cost[s])
+        return sub | fixed;
+      if (sub == 0)
+        throw new IllegalStateException("No split of " + s + " reaches its cost");
+    }
+  }
+
+  /**
+   * Appends the route subsets the table chose for s
+   *
+   * @return number of routes written so far
+   */
+  private static int decompose(Table table, int s, int[] subsets, int[] routeGroup, int routes) {
+    if (s == 0)
+      return routes;
+    if (table.left == null) {
+      subsets[routes] = s;
+      routeGroup[routes] = table.group;
+      return routes + 1;
+    }
+    int t = split(table, s);
+    routes = decompose(table.left, t, subsets, routeGroup, routes);
+    return decompose(table.right, s ^ t, subsets, routeGroup, routes);
+  }
+
+  private static int nthMember(int[] groupOf, int g, int nth) {
+    for (int f = 0; f < groupOf.length; f++) {
+      if (groupOf[f] == g && nth-- == 0)
+        return f;
+    }
+    throw new IllegalStateException("Group " + g + " has more routes than firefighters");
+  }
+
+  /**
+   * Best cost of every subset, either of single routes from one group or of a convolution
+   */
+  private static final class Table {
+    final int group;
+    final int[] cost;
+    final Table left;
+    final Table right;
+    final boolean interchangeable;
+
+    Table(int group, int[] cost) {
+      this.group = group;
+      this.cost = cost;
+      this.left = null;
+      this.right = null;
+      this.interchangeable = false;
+    }
+
+    Table(Table left, Table right, int[] cost, boolean interchangeable) {
+      this.group = -1;
+      this.cost = cost;
+      this.left = left;
+      this.right = right;
+      this.interchangeable = interchangeable;
+    }
+  }
+}
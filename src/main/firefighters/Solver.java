@@ -0,0 +1,60 @@
+package main.firefighters;
+
+/**
+ * Algorithms {@link FireDispatchImpl} can dispatch with. The code is stable and is what gets
+ * written to dispatch logs
+ */
+public enum Solver {
+  GREEDY(0),
+  BRUTE_FORCE(1),
+  SPACE_FILLING_CURVE(2),
+  SAVINGS(3),
+  LARGE_NEIGHBOURHOOD(4),
+  HIERARCHICAL(5),
+  BRANCH_AND_BOUND(6),
+  SET_PARTITION(7);
+
+  public final byte code;
+
+  Solver(int code) {
+    this.code = (byte) code;
+  }
+
+  /**
+   * Find out if this solver can handle an incident of the given size
+   *
+   * @param numFirefighters number of firefighters
+   * @param numFires number of burning buildings
+   * @return true if the solver can be used
+   */
+  public boolean supports(int numFirefighters, int numFires) {
+    switch (this) {
+      case BRUTE_FORCE:
+        return numFirefighters == 1 && numFires >= 1 && numFires <= 10;
+      case LARGE_NEIGHBOURHOOD:
+        // Each iteration is linear in the number of fires, past a few thousand the budget buys too few
+        return numFirefighters >= 1 && numFires <= 2000;
+      case BRANCH_AND_BOUND:
+        return numFirefighters >= 1 && numFires <= BranchAndBoundSolver.MAX_FIRES;
+      case SET_PARTITION:
+        return numFirefighters >= 1 && numFires <= SetPartitionSolver.MAX_FIRES;
+      default:
+        return numFirefighters >= 1;
+    }
+  }
+
+  /**
+   * Get the solver for a code
+   *
+   * @param code code written by {@link #code}
+   * @return the {@link Solver}
+   * @throws IllegalArgumentException if no solver has this code
+   */
+  public static Solver fromCode(byte code) {
+    for (Solver solver : values()) {
+      if (solver.code == code)
+        return solver;
+    }
+    throw new IllegalArgumentException("Unknown solver code: " + code);
+  }
+}
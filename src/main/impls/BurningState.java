@@ -0,0 +1,57 @@
+package main.impls;
+
+import java.util.Arrays;
+
+/**
+ * Bitmap of burning buildings indexed by x * yDimension + y. Forks share the words of the
+ * state they were forked from and only copy them on their first write
+ */
+class BurningState {
+  private long[] words;
+  private boolean owned;
+
+  BurningState(int cells) {
+    this.words = new long[(cells + 63) >>> 6];
+    this.owned = true;
+  }
+
+  private BurningState(long[] words) {
+    this.words = words;
+    this.owned = false;
+  }
+
+  /**
+   * Get a copy on write fork of this state. This state must not be written to while forks of it
+   * are in use
+   *
+   * @return a new {@link BurningState} sharing this state's words
+   */
+  BurningState fork() {
+    return new BurningState(words);
+  }
+
+  boolean get(int idx) {
+    return (words[idx >>> 6] & (1L << idx)) != 0;
+  }
+
+  void set(int idx, boolean burning) {
+    if (get(idx) == burning)
+      return;
+    if (!owned) {
+      words = words.clone();
+      owned = true;
+    }
+    words[idx >>> 6] ^= 1L << idx;
+  }
+
+  int count() {
+    int count = 0;
+    for (long word : words)
+      count += Long.bitCount(word);
+    return count;
+  }
+
+  boolean sameAs(BurningState other) {
+    return words == other.words || Arrays.equals(words, other.words);
+  }
+}
@@ -0,0 +1,128 @@
+package main.impls;
+
+import main.api.Building;
+import main.api.City;
+import main.api.CityNode;
+import main.api.FireDispatch;
+import main.api.exceptions.FireproofBuildingException;
+import main.api.exceptions.NoFireFoundException;
+import main.api.exceptions.OutOfCityBoundsException;
+import main.firefighters.FireDispatchImpl;
+import main.firefighters.FirefighterFleet;
+
+/**
+ * A {@link City} forked from a {@link CitySnapshot}. The layout of the city is shared with the
+ * original, while burning state and firefighters belong to the fork, so dispatch strategies can be
+ * tried out on forks in parallel without touching the original city.
+ * A fork is meant to be used by one thread at a time
+ */
+public class CityFork implements City {
+  private final CitySnapshot snapshot;
+  private final City base;
+  private final BurningState burningState;
+  private final FireDispatchImpl fireDispatch;
+
+  CityFork(CitySnapshot snapshot, City base, BurningState burningState, FirefighterFleet fleet,
+           RoadNetwork roadNetwork) {
+    this.snapshot = snapshot;
+    this.base = base;
+    this.burningState = burningState;
+    this.fireDispatch = new FireDispatchImpl(this);
+    this.fireDispatch.setRoadNetwork(roadNetwork);
+    this.fireDispatch.getFleet().copyFrom(fleet);
+  }
+
+  /**
+   * Get the number of buildings still burning in this fork
+   *
+   * @return number of burning buildings
+   */
+  public int burningCount() {
+    return burningState.count();
+  }
+
+  @Override
+  public Building getFireStation() {
+    return getBuilding(base.getFireStation().getLocation());
+  }
+
+  @Override
+  public FireDispatchImpl getFireDispatch() {
+    return fireDispatch;
+  }
+
+  @Override
+  public int getXDimension() {
+    return base.getXDimension();
+  }
+
+  @Override
+  public int getYDimension() {
+    return base.getYDimension();
+  }
+
+  @Override
+  public Building getBuilding(int xCoordinate, int yCoordinate) throws OutOfCityBoundsException {
+    Building original = base.getBuilding(xCoordinate, yCoordinate);
+    return new ForkBuilding(original, xCoordinate * getYDimension() + yCoordinate);
+  }
+
+  @Override
+  public Building getBuilding(CityNode cityNode) throws OutOfCityBoundsException {
+    return getBuilding(cityNode.getX(), cityNode.getY());
+  }
+
+  CitySnapshot getSnapshot() {
+    return snapshot;
+  }
+
+  BurningState getBurningState() {
+    return burningState;
+  }
+
+  /**
+   * {@link Building} whose burning state lives in the fork
+   */
+  private class ForkBuilding implements Building {
+    private final Building original;
+    private final int idx;
+
+    ForkBuilding(Building original, int idx) {
+      this.original = original;
+      this.idx = idx;
+    }
+
+    @Override
+    public CityNode getLocation() {
+      return original.getLocation();
+    }
+
+    @Override
+    public boolean isBurning() {
+      return burningState.get(idx);
+    }
+
+    @Override
+    public boolean isFireproof() {
+      return original.isFireproof();
+    }
+
+    @Override
+    public void extinguishFire() throws NoFireFoundException {
+      if (burningState.get(idx)) {
+        burningState.set(idx, false);
+      } else {
+        throw new NoFireFoundException();
+      }
+    }
+
+    @Override
+    public void setFire() throws FireproofBuildingException {
+      if (!original.isFireproof()) {
+        burningState.set(idx, true);
+      } else {
+        throw new FireproofBuildingException();
+      }
+    }
+  }
+}
@@ -3,19 +3,26 @@ package main.impls;
 import main.api.Building;
 import main.api.City;
 import main.api.CityNode;
-import main.api.FireDispatch;
 import main.api.exceptions.InvalidDimensionException;
 import main.api.exceptions.OutOfCityBoundsException;
 import main.firefighters.FireDispatchImpl;
 
 public class CityImpl implements City {
-  private final FireStation fireStation;
+  private final BuildingImpl fireStation;
   private final Building[][] buildingGrid;
-  private FireDispatch fireDispatch;
+  private FireDispatchImpl fireDispatch;
 
   public CityImpl(int xDimension, int yDimension, CityNode fireStationLocation) {
+    this(xDimension, yDimension, fireStationLocation, true);
+  }
+
+  /**
+   * @param fireproofStation false to start the firefighters from an ordinary building that can burn,
+   *                         for part of a city that does not hold its FireStation
+   */
+  public CityImpl(int xDimension, int yDimension, CityNode fireStationLocation, boolean fireproofStation) {
     validateCityDimensions(xDimension, yDimension);
-    this.fireStation = new FireStation(fireStationLocation);
+    this.fireStation = fireproofStation ? new FireStation(fireStationLocation) : new BuildingImpl(fireStationLocation);
     this.buildingGrid = initBuildingGrid(xDimension, yDimension);
   }
 
@@ -25,7 +32,7 @@ public class CityImpl implements City {
   }
 
   @Override
-  public FireDispatch getFireDispatch() {
+  public synchronized FireDispatchImpl getFireDispatch() {
     if (fireDispatch == null) {
       fireDispatch = new FireDispatchImpl(this);
     }
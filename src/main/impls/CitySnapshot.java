@@ -0,0 +1,157 @@
+package main.impls;
+
+import main.api.Building;
+import main.api.FireDispatch;
+import main.api.exceptions.FireproofBuildingException;
+import main.api.exceptions.NoFireFoundException;
+import main.firefighters.FireDispatchImpl;
+import main.firefighters.FirefighterFleet;
+
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Point in time copy of a city's burning buildings and its firefighters.
+ * Any number of {@link CityFork}s can be taken from a snapshot. Forks share the snapshot's state until
+ * they write to it, so they are cheap to make and can be run in parallel. The result of one fork can
+ * then be committed back to the city, which only succeeds if the city has not changed since the snapshot
+ */
+public class CitySnapshot {
+  private final CityImpl city;
+  private final BurningState burningState;
+  private final FirefighterFleet fleet;
+  private final RoadNetwork roadNetwork;
+
+  private CitySnapshot(CityImpl city, BurningState burningState, FirefighterFleet fleet, RoadNetwork roadNetwork) {
+    this.city = city;
+    this.burningState = burningState;
+    this.fleet = fleet;
+    this.roadNetwork = roadNetwork;
+  }
+
+  /**
+   * Takes a snapshot of the city's burning buildings and the firefighters of its FireDispatch
+   *
+   * @param city city to snapshot
+   * @return the {@link CitySnapshot}
+   */
+  public static CitySnapshot of(CityImpl city) {
+    synchronized (city) {
+      BurningState burningState = readBurningState(city);
+      FireDispatchImpl fireDispatch = city.getFireDispatch();
+      FirefighterFleet fleet = new FirefighterFleet();
+      fleet.copyFrom(fireDispatch.getFleet());
+      return new CitySnapshot(city, burningState, fleet, fireDispatch.getRoadNetwork());
+    }
+  }
+
+  /**
+   * Get a new copy on write fork of this snapshot
+   *
+   * @return a {@link CityFork} with the snapshot's fires and firefighters
+   */
+  public CityFork fork() {
+    return new CityFork(this, city, burningState.fork(), fleet, roadNetwork);
+  }
+
+  /**
+   * Runs each strategy on its own fork in parallel and returns the best fork. The best fork has the
+   * fewest buildings left burning, then the least total distance traveled, then the lowest index
+   *
+   * @param strategies strategies to run against each fork's FireDispatch
+   * @return the winning {@link CityFork}
+   */
+  public CityFork evaluate(List<Consumer<FireDispatch>> strategies) {
+    if (strategies.isEmpty())
+      throw new IllegalArgumentException("Need at least one strategy to evaluate");
+
+    List<CityFork> forks = IntStream.range(0, strategies.size()).parallel()
+        .mapToObj(i -> {
+          CityFork fork = fork();
+          strategies.get(i).accept(fork.getFireDispatch());
+          return fork;
+        })
+        .collect(Collectors.toList());
+
+    CityFork best = forks.get(0);
+    for (CityFork fork : forks) {
+      if (fork.burningCount() < best.burningCount() || (fork.burningCount() == best.burningCount() &&
+          fork.getFireDispatch().getFleet().totalDistanceTraveled() <
+              best.getFireDispatch().getFleet().totalDistanceTraveled()))
+        best = fork;
+    }
+    return best;
+  }
+
+  /**
+   * Applies a fork's burning buildings and firefighters to the city in one step.
+   * Nothing is applied if the city's burning buildings changed since this snapshot was taken.
+   * Dispatchers do not take the city's lock, so one may still put out a fire while the fork is being
+   * applied. The commit then undoes what it applied, leaves the firefighters alone and fails
+   *
+   * @param fork a fork taken from this snapshot
+   * @return true if the fork was committed, false if the city has moved on
+   */
+  public boolean commit(CityFork fork) {
+    if (fork.getSnapshot() != this)
+      throw new IllegalArgumentException("Fork was not taken from this snapshot");
+
+    synchronized (city) {
+      if (!readBurningState(city).sameAs(burningState))
+        return false;
+
+      BurningState forkState = fork.getBurningState();
+      int yDimension = city.getYDimension();
+      int[] applied = new int[city.getXDimension() * yDimension];
+      int count = 0;
+      for (int idx = 0; idx < applied.length; idx++) {
+        if (forkState.get(idx) == burningState.get(idx))
+          continue;
+        if (!apply(city.getBuilding(idx / yDimension, idx % yDimension), forkState.get(idx))) {
+          for (int k = count - 1; k >= 0; k--) {
+            int undo = applied[k];
+            apply(city.getBuilding(undo / yDimension, undo % yDimension), burningState.get(undo));
+          }
+          return false;
+        }
+        applied[count++] = idx;
+      }
+      city.getFireDispatch().getFleet().copyFrom(fork.getFireDispatch().getFleet());
+      return true;
+    }
+  }
+
+  /**
+   * Sets a building on fire or puts it out
+   *
+   * @return false if the fire to put out is already out
+   */
+  private static boolean apply(Building building, boolean burning) {
+    try {
+      if (burning)
+        building.setFire();
+      else
+        building.extinguishFire();
+      return true;
+    } catch (NoFireFoundException e) {
+      return false;
+    } catch (FireproofBuildingException e) {
+      // Forks cannot set fireproof buildings on fire, and the snapshot saw this one burning
+      throw new IllegalStateException("Fork changed a fireproof building", e);
+    }
+  }
+
+  private static BurningState readBurningState(CityImpl city) {
+    int yDimension = city.getYDimension();
+    BurningState state = new BurningState(city.getXDimension() * yDimension);
+    for (int x = 0; x < city.getXDimension(); x++) {
+      for (int y = 0; y < yDimension; y++) {
+        if (city.getBuilding(x, y).isBurning())
+          state.set(x * yDimension + y, true);
+      }
+    }
+    return state;
+  }
+}
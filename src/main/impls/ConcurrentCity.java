@@ -0,0 +1,192 @@
+package main.impls;
+
+import main.api.Building;
+import main.api.City;
+import main.api.CityNode;
+import main.api.exceptions.FireproofBuildingException;
+import main.api.exceptions.InvalidDimensionException;
+import main.api.exceptions.NoFireFoundException;
+import main.api.exceptions.OutOfCityBoundsException;
+import main.firefighters.FireDispatchImpl;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A {@link City} that can be shared by several dispatchers and ingest threads.
+ * Burning state is a bitmap of longs updated with compare and set, so it is lock free.
+ * Putting out a fire is a claim: when several firefighters go for the same fire exactly one
+ * of them wins and the others get a {@link NoFireFoundException}
+ */
+public class ConcurrentCity implements City {
+  private final int xDimension;
+  private final int yDimension;
+  private final CityNode fireStationLocation;
+  private final AtomicLongArray burning;
+  private volatile FireDispatchImpl fireDispatch;
+
+  public ConcurrentCity(int xDimension, int yDimension, CityNode fireStationLocation) {
+    if (xDimension < 2) {
+      throw new InvalidDimensionException(xDimension);
+    } else if (yDimension < 2) {
+      throw new InvalidDimensionException(yDimension);
+    }
+
+    this.xDimension = xDimension;
+    this.yDimension = yDimension;
+    this.fireStationLocation = fireStationLocation;
+    this.burning = new AtomicLongArray((xDimension * yDimension + 63) >>> 6);
+    validateCoordinate(fireStationLocation.getX(), fireStationLocation.getY());
+  }
+
+  @Override
+  public Building getFireStation() {
+    return getBuilding(fireStationLocation);
+  }
+
+  /**
+   * Get the city's shared FireDispatch, created on first use
+   *
+   * @return the city's {@link FireDispatchImpl}
+   */
+  @Override
+  public FireDispatchImpl getFireDispatch() {
+    FireDispatchImpl dispatch = fireDispatch;
+    if (dispatch == null) {
+      synchronized (this) {
+        dispatch = fireDispatch;
+        if (dispatch == null) {
+          dispatch = new FireDispatchImpl(this);
+          fireDispatch = dispatch;
+        }
+      }
+    }
+    return dispatch;
+  }
+
+  /**
+   * Creates an extra FireDispatch with its own firefighters working the same city.
+   * Each dispatcher should only be used by one thread at a time
+   *
+   * @return a new {@link FireDispatchImpl}
+   */
+  public FireDispatchImpl newFireDispatch() {
+    return new FireDispatchImpl(this);
+  }
+
+  @Override
+  public int getXDimension() {
+    return xDimension;
+  }
+
+  @Override
+  public int getYDimension() {
+    return yDimension;
+  }
+
+  @Override
+  public Building getBuilding(int xCoordinate, int yCoordinate) throws OutOfCityBoundsException {
+    validateCoordinate(xCoordinate, yCoordinate);
+    return new ConcurrentBuilding(new CityNode(xCoordinate, yCoordinate), xCoordinate * yDimension + yCoordinate);
+  }
+
+  @Override
+  public Building getBuilding(CityNode cityNode) throws OutOfCityBoundsException {
+    validateCoordinate(cityNode.getX(), cityNode.getY());
+    return new ConcurrentBuilding(cityNode, cityNode.getX() * yDimension + cityNode.getY());
+  }
+
+  /**
+   * Claims the fire at a location. Only one caller can win the claim for a given fire
+   *
+   * @param cityNode location of the fire
+   * @return true if this caller put the fire out, false if it was not burning
+   */
+  public boolean claimFire(CityNode cityNode) {
+    validateCoordinate(cityNode.getX(), cityNode.getY());
+    return update(cityNode.getX() * yDimension + cityNode.getY(), false);
+  }
+
+  /**
+   * Get the number of buildings currently burning. Not atomic with respect to concurrent updates
+   *
+   * @return number of burning buildings
+   */
+  public int burningCount() {
+    int count = 0;
+    for (int i = 0; i < burning.length(); i++)
+      count += Long.bitCount(burning.get(i));
+    return count;
+  }
+
+  private boolean isBurning(int idx) {
+    return (burning.get(idx >>> 6) & (1L << idx)) != 0;
+  }
+
+  /**
+   * Sets or clears a bit with a CAS loop
+   *
+   * @return true if this call changed the bit
+   */
+  private boolean update(int idx, boolean burn) {
+    int word = idx >>> 6;
+    long bit = 1L << idx;
+    while (true) {
+      long current = burning.get(word);
+      if (((current & bit) != 0) == burn)
+        return false;
+      if (burning.compareAndSet(word, current, current ^ bit))
+        return true;
+    }
+  }
+
+  private boolean isFireStation(CityNode location) {
+    return fireStationLocation.equals(location);
+  }
+
+  private void validateCoordinate(int xCoordinate, int yCoordinate) {
+    if (xCoordinate < 0 || yCoordinate < 0 || xCoordinate >= xDimension || yCoordinate >= yDimension) {
+      throw new OutOfCityBoundsException();
+    }
+  }
+
+  /**
+   * {@link Building} view over one bit of the burning bitmap
+   */
+  private class ConcurrentBuilding implements Building {
+    private final CityNode location;
+    private final int idx;
+
+    ConcurrentBuilding(CityNode location, int idx) {
+      this.location = location;
+      this.idx = idx;
+    }
+
+    @Override
+    public CityNode getLocation() {
+      return location;
+    }
+
+    @Override
+    public boolean isBurning() {
+      return ConcurrentCity.this.isBurning(idx);
+    }
+
+    @Override
+    public boolean isFireproof() {
+      return isFireStation(location);
+    }
+
+    @Override
+    public void extinguishFire() throws NoFireFoundException {
+      if (!update(idx, false))
+        throw new NoFireFoundException();
+    }
+
+    @Override
+    public void setFire() throws FireproofBuildingException {
+      if (isFireproof())
+        throw new FireproofBuildingException();
+      update(idx, true);
+    }
+  }
+}
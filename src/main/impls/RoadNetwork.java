@@ -0,0 +1,201 @@
+package main.impls;
+
+import main.api.City;
+import main.api.CityNode;
+import main.api.DistanceMetric;
+import main.api.exceptions.OutOfCityBoundsException;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Obstacle aware {@link DistanceMetric} over the city grid.
+ * Fireproof buildings (other than the FireStation) and blocked streets cannot be crossed.
+ * Distances are read from BFS distance fields, one int[] per source location, which are
+ * kept in a bounded LRU cache so each query after the first is O(1)
+ */
+public class RoadNetwork implements DistanceMetric {
+  public static final int DEFAULT_CACHE_SIZE = 64;
+
+  private final City city;
+  private final int xDimension;
+  private final int yDimension;
+  private final boolean[] blocked;
+  private final Map<Integer, int[]> fields;
+  private int[] queue;
+  private long version;
+
+  public RoadNetwork(City city) {
+    this(city, DEFAULT_CACHE_SIZE);
+  }
+
+  public RoadNetwork(City city, int maxCachedFields) {
+    if (maxCachedFields < 1)
+      throw new IllegalArgumentException("Cache must hold at least one distance field");
+
+    this.city = city;
+    this.xDimension = city.getXDimension();
+    this.yDimension = city.getYDimension();
+    this.blocked = new boolean[xDimension * yDimension];
+    this.fields = new LinkedHashMap<Integer, int[]>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Integer, int[]> eldest) {
+        return size() > maxCachedFields;
+      }
+    };
+
+    CityNode fireStation = city.getFireStation().getLocation();
+    for (int x = 0; x < xDimension; x++) {
+      for (int y = 0; y < yDimension; y++) {
+        if (city.getBuilding(x, y).isFireproof() && !(fireStation.getX() == x && fireStation.getY() == y))
+          blocked[index(x, y)] = true;
+      }
+    }
+  }
+
+  /**
+   * Marks a street as blocked or open. Cached distance fields are dropped since they may be stale
+   *
+   * @param location location of the street
+   * @param isBlocked true to block the street, false to open it
+   */
+  public synchronized void setBlocked(CityNode location, boolean isBlocked) {
+    int idx = index(location);
+    if (blocked[idx] != isBlocked) {
+      blocked[idx] = isBlocked;
+      fields.clear();
+      version++;
+    }
+  }
+
+  /**
+   * Get a count of the changes made to the blocked cells, so a caller holding on to
+   * {@link #blockedCells()} can tell when it is out of date
+   *
+   * @return number of streets blocked or opened since the network was built
+   */
+  public synchronized long version() {
+    return version;
+  }
+
+  public synchronized boolean isBlocked(CityNode location) {
+    return blocked[index(location)];
+  }
+
+  /**
+   * Get every cell that cannot be crossed, blocked streets and fireproof buildings alike
+   *
+   * @return cell indices x * yDimension + y, in increasing order
+   */
+  public synchronized int[] blockedCells() {
+    int count = 0;
+    for (boolean isBlocked : blocked) {
+      if (isBlocked)
+        count++;
+    }
+    int[] cells = new int[count];
+    count = 0;
+    for (int idx = 0; idx < blocked.length; idx++) {
+      if (blocked[idx])
+        cells[count++] = idx;
+    }
+    return cells;
+  }
+
+  /**
+   * Computes distance fields ahead of time for the FireStation and the given locations
+   * so the solver does not stall on a BFS in the middle of a dispatch
+   *
+   * @param locations locations that will be used as sources
+   */
+  public synchronized void precompute(CityNode... locations) {
+    field(city.getFireStation().getLocation());
+    for (CityNode location : locations)
+      field(location);
+  }
+
+  @Override
+  public synchronized int distance(CityNode from, CityNode to) {
+    // The grid is undirected so a cached field for either end will do
+    int[] toField = fields.get(index(to));
+    if (toField != null)
+      return toField[index(from)];
+    return field(from)[index(to)];
+  }
+
+  /**
+   * Get the distance field for a source, running a BFS if it is not cached
+   *
+   * @param source location the distances are measured from
+   * @return array of distances indexed by x * yDimension + y
+   */
+  public synchronized int[] field(CityNode source) {
+    int sourceIdx = index(source);
+    int[] field = fields.get(sourceIdx);
+    if (field == null) {
+      field = bfs(sourceIdx);
+      fields.put(sourceIdx, field);
+    }
+    return field;
+  }
+
+  public synchronized int cachedFields() {
+    return fields.size();
+  }
+
+  /**
+   * Breadth first search over the four connected grid. A blocked source gets a field of its own
+   * but cannot be left, just as it cannot be entered, so distances are the same from either end
+   *
+   * Runtime: O(x * y)
+   */
+  private int[] bfs(int sourceIdx) {
+    int[] dist = new int[blocked.length];
+    Arrays.fill(dist, UNREACHABLE);
+    if (queue == null)
+      queue = new int[blocked.length];
+
+    int head = 0;
+    int tail = 0;
+    dist[sourceIdx] = 0;
+    if (blocked[sourceIdx])
+      return dist;
+    queue[tail++] = sourceIdx;
+
+    while (head < tail) {
+      int cur = queue[head++];
+      int x = cur / yDimension;
+      int y = cur % yDimension;
+      int next = dist[cur] + 1;
+
+      if (x > 0)
+        tail = visit(dist, cur - yDimension, next, tail);
+      if (x < xDimension - 1)
+        tail = visit(dist, cur + yDimension, next, tail);
+      if (y > 0)
+        tail = visit(dist, cur - 1, next, tail);
+      if (y < yDimension - 1)
+        tail = visit(dist, cur + 1, next, tail);
+    }
+    return dist;
+  }
+
+  private int visit(int[] dist, int idx, int d, int tail) {
+    if (!blocked[idx] && dist[idx] == UNREACHABLE) {
+      dist[idx] = d;
+      queue[tail++] = idx;
+    }
+    return tail;
+  }
+
+  private int index(CityNode location) {
+    return index(location.getX(), location.getY());
+  }
+
+  private int index(int x, int y) {
+    if (x < 0 || y < 0 || x >= xDimension || y >= yDimension)
+      throw new OutOfCityBoundsException();
+    return x * yDimension + y;
+  }
+}
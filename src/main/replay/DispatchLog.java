@@ -0,0 +1,188 @@
+package main.replay;
+
+import main.firefighters.DecisionLog;
+import main.firefighters.Solver;
+import main.impls.RoadNetwork;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Append only binary log of dispatch decisions, written through a buffered {@link FileChannel}.
+ *
+ * File layout (big endian):
+ *   header: int MAGIC, short VERSION
+ *   record: int bodyLength, byte kind, then a network or a dispatch
+ *   network: int networkId, int b, b * (int blockedCell)
+ *   dispatch: byte solver, int xDimension, int yDimension, int fireStationX, int fireStationY, int networkId,
+ *             int n, n * (int x, int y, int distanceTraveled),
+ *             int m, m * (int x, int y),
+ *             int k, k * (int firefighterIdx, int buildingIdx)
+ *
+ * A road network is written once, when a dispatch first runs over it or after its blocked cells change,
+ * and later dispatches refer to it by id. networkId is -1 for taxicab distances. Blocked cells are indexed
+ * x * yDimension + y. Ids restart each time the log is opened, so a network record replaces any earlier
+ * network with the same id.
+ *
+ * Version 2 records have no kind and carry int b, b * (int blockedCell) in place of networkId, b is -1 for
+ * taxicab distances. Version 1 records have no blocked cells and are all taxicab
+ */
+public class DispatchLog implements DecisionLog, AutoCloseable {
+  public static final int MAGIC = 0x46444C47;
+  public static final short VERSION = 3;
+  public static final int HEADER_BYTES = 6;
+  public static final int DEFAULT_BUFFER_BYTES = 1 << 16;
+  public static final byte NETWORK = 0;
+  public static final byte DISPATCH = 1;
+  public static final int TAXICAB = -1;
+
+  private final FileChannel channel;
+  private final ByteBuffer buffer;
+  // Id and version last written for each road network, weak so the log does not keep old cities alive
+  private final Map<RoadNetwork, long[]> networks = new WeakHashMap<>();
+  private int nextNetworkId;
+
+  public DispatchLog(Path path) throws IOException {
+    this(path, DEFAULT_BUFFER_BYTES);
+  }
+
+  /**
+   * @param path file to append to, created if missing
+   * @param bufferBytes size of the write buffer
+   * @throws IOException if the file cannot be opened or is a log of another version
+   */
+  public DispatchLog(Path path, int bufferBytes) throws IOException {
+    this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+    this.buffer = ByteBuffer.allocateDirect(bufferBytes);
+    if (channel.size() == 0) {
+      buffer.putInt(MAGIC);
+      buffer.putShort(VERSION);
+      return;
+    }
+
+    ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+    while (header.hasRemaining() && channel.read(header) >= 0) {}
+    header.flip();
+    if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC || header.getShort() != VERSION) {
+      channel.close();
+      throw new IOException("Cannot append to " + path + ", it is not a version " + VERSION + " dispatch log");
+    }
+    channel.position(channel.size());
+  }
+
+  /**
+   * Appends one dispatch call to the log, preceded by its road network if the log has not seen the network
+   * as it is now. The record only reaches the file once the buffer fills up or the log is flushed
+   */
+  @Override
+  public synchronized void append(Solver solver, int xDimension, int yDimension, int fireStationX, int fireStationY,
+                                  RoadNetwork roadNetwork, int numFirefighters, int[] firefighterXs,
+                                  int[] firefighterYs, int[] distancesTraveled, int numFires, int[] fireXs,
+                                  int[] fireYs, int numMoves, int[] moves) {
+    int networkId = roadNetwork == null ? TAXICAB : network(roadNetwork);
+    int bodyLength = 1 + 1 + 4 * 4 + 4 + 4 + 12 * numFirefighters + 4 + 8 * numFires + 4 + 8 * numMoves;
+    ByteBuffer out = reserve(4 + bodyLength);
+
+    out.putInt(bodyLength);
+    out.put(DISPATCH);
+    out.put(solver.code);
+    out.putInt(xDimension);
+    out.putInt(yDimension);
+    out.putInt(fireStationX);
+    out.putInt(fireStationY);
+    out.putInt(networkId);
+
+    out.putInt(numFirefighters);
+    for (int i = 0; i < numFirefighters; i++) {
+      out.putInt(firefighterXs[i]);
+      out.putInt(firefighterYs[i]);
+      out.putInt(distancesTraveled[i]);
+    }
+
+    out.putInt(numFires);
+    for (int i = 0; i < numFires; i++) {
+      out.putInt(fireXs[i]);
+      out.putInt(fireYs[i]);
+    }
+
+    out.putInt(numMoves);
+    for (int i = 0; i < 2 * numMoves; i++)
+      out.putInt(moves[i]);
+
+    if (out != buffer)
+      write(out);
+  }
+
+  /**
+   * Get the id of a road network, writing a network record first if the network is new to the log or has
+   * changed since it was last written. Only then are its blocked cells gathered
+   */
+  private int network(RoadNetwork roadNetwork) {
+    // Read before the cells, so a change made while they are gathered gets the network written again
+    long version = roadNetwork.version();
+    long[] written = networks.get(roadNetwork);
+    if (written != null && written[1] == version)
+      return (int) written[0];
+
+    int networkId = nextNetworkId++;
+    networks.put(roadNetwork, new long[]{networkId, version});
+    int[] blockedCells = roadNetwork.blockedCells();
+    int bodyLength = 1 + 4 + 4 + 4 * blockedCells.length;
+    ByteBuffer out = reserve(4 + bodyLength);
+
+    out.putInt(bodyLength);
+    out.put(NETWORK);
+    out.putInt(networkId);
+    out.putInt(blockedCells.length);
+    for (int cell : blockedCells)
+      out.putInt(cell);
+
+    if (out != buffer)
+      write(out);
+    return networkId;
+  }
+
+  /**
+   * Writes anything buffered to the file
+   */
+  public synchronized void flush() {
+    write(buffer);
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    flush();
+    channel.close();
+  }
+
+  /**
+   * Get a buffer with room for a record, flushing first if needed. Records bigger than the
+   * buffer get a one off buffer of their own
+   */
+  private ByteBuffer reserve(int bytes) {
+    if (buffer.remaining() >= bytes)
+      return buffer;
+    write(buffer);
+    if (buffer.remaining() >= bytes)
+      return buffer;
+    return ByteBuffer.allocate(bytes);
+  }
+
+  private void write(ByteBuffer out) {
+    out.flip();
+    try {
+      while (out.hasRemaining())
+        channel.write(out);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    out.clear();
+  }
+}
@@ -0,0 +1,268 @@
+package main.replay;
+
+import main.api.CityNode;
+import main.api.DispatchedMove;
+import main.api.DistanceMetric;
+import main.api.Pyromaniac;
+import main.api.exceptions.FireproofBuildingException;
+import main.firefighters.FireDispatchImpl;
+import main.firefighters.Solver;
+import main.impls.CityImpl;
+import main.impls.RoadNetwork;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads a {@link DispatchLog} through a memory mapped file. Records are decoded into one reused
+ * {@link DispatchRecord}, so reading and verifying taxicab records does not allocate per record.
+ * Records dispatched over a road network are verified over a rebuilt one, built once per network
+ * in the log and shared by every record that refers to it. Logs must be smaller than 2GB
+ */
+public class DispatchLogReader implements AutoCloseable {
+  private final FileChannel channel;
+  private final MappedByteBuffer buffer;
+  private final DispatchRecord record;
+  private final short version;
+  // Blocked cells of each network record seen so far, and the networks rebuilt from them
+  private final Map<Integer, int[]> blockedCells;
+  private final Map<Integer, RoadNetwork> roadNetworks;
+  private boolean[] visited;
+  private int[] xs;
+  private int[] ys;
+
+  public DispatchLogReader(Path path) throws IOException {
+    this.channel = FileChannel.open(path, StandardOpenOption.READ);
+    if (channel.size() > Integer.MAX_VALUE)
+      throw new IOException("Dispatch log is too large to map: " + channel.size());
+
+    this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    this.record = new DispatchRecord();
+    this.visited = new boolean[0];
+    this.xs = new int[0];
+    this.ys = new int[0];
+    this.blockedCells = new HashMap<>();
+    this.roadNetworks = new HashMap<>();
+
+    if (buffer.remaining() < DispatchLog.HEADER_BYTES || buffer.getInt() != DispatchLog.MAGIC)
+      throw new IOException("Not a dispatch log: " + path);
+    this.version = buffer.getShort();
+    if (version < 1 || version > DispatchLog.VERSION)
+      throw new IOException("Unsupported dispatch log version: " + version);
+  }
+
+  /**
+   * Decodes the next record
+   *
+   * @return the shared {@link DispatchRecord}, or null at the end of the log
+   * @throws IOException if the last record is truncated
+   */
+  public DispatchRecord next() throws IOException {
+    while (true) {
+      if (!buffer.hasRemaining())
+        return null;
+      if (buffer.remaining() < 4 || buffer.getInt() > buffer.remaining())
+        throw new IOException("Truncated dispatch log record at " + buffer.position());
+      if (version < 3)
+        break;
+
+      byte kind = buffer.get();
+      if (kind == DispatchLog.DISPATCH)
+        break;
+      if (kind != DispatchLog.NETWORK)
+        throw new IOException("Unknown dispatch log record kind " + kind + " at " + buffer.position());
+      readNetwork();
+    }
+
+    record.solver = Solver.fromCode(buffer.get());
+    record.xDimension = buffer.getInt();
+    record.yDimension = buffer.getInt();
+    record.fireStationX = buffer.getInt();
+    record.fireStationY = buffer.getInt();
+
+    if (version >= 3) {
+      readNetworkId();
+    } else {
+      record.networkId = DispatchLog.TAXICAB;
+      record.ensureBlocked(version == 1 ? -1 : buffer.getInt());
+      for (int i = 0; i < record.numBlocked; i++)
+        record.blockedCells[i] = buffer.getInt();
+    }
+
+    record.ensureFirefighters(buffer.getInt());
+    for (int i = 0; i < record.numFirefighters; i++) {
+      record.firefighterXs[i] = buffer.getInt();
+      record.firefighterYs[i] = buffer.getInt();
+      record.distancesTraveled[i] = buffer.getInt();
+    }
+
+    record.ensureFires(buffer.getInt());
+    for (int i = 0; i < record.numFires; i++) {
+      record.fireXs[i] = buffer.getInt();
+      record.fireYs[i] = buffer.getInt();
+    }
+
+    record.ensureMoves(buffer.getInt());
+    for (int i = 0; i < record.numMoves; i++) {
+      record.moveFirefighters[i] = buffer.getInt();
+      record.moveBuildings[i] = buffer.getInt();
+    }
+    return record;
+  }
+
+  /**
+   * Decodes a network record. A later record with the same id replaces it
+   */
+  private void readNetwork() {
+    int networkId = buffer.getInt();
+    int[] cells = new int[buffer.getInt()];
+    for (int i = 0; i < cells.length; i++)
+      cells[i] = buffer.getInt();
+    blockedCells.put(networkId, cells);
+    roadNetworks.remove(networkId);
+  }
+
+  /**
+   * Points the record at the blocked cells of the network its id refers to
+   */
+  private void readNetworkId() throws IOException {
+    int networkId = buffer.getInt();
+    record.networkId = networkId;
+    if (networkId == DispatchLog.TAXICAB) {
+      record.roadNetwork = false;
+      record.numBlocked = 0;
+      return;
+    }
+
+    int[] cells = blockedCells.get(networkId);
+    if (cells == null)
+      throw new IOException("Dispatch log record at " + buffer.position() + " refers to unknown network " + networkId);
+    record.roadNetwork = true;
+    record.numBlocked = cells.length;
+    record.blockedCells = cells;
+  }
+
+  /**
+   * Checks that a record's moves are consistent: indices are in range, no fire is visited twice and
+   * every fire can be reached. Replays the moves against the starting fleet positions, measuring
+   * distance with the metric the record was dispatched with
+   *
+   * @param record record to check
+   * @return total distance added by the moves
+   * @throws IllegalStateException if the moves are inconsistent
+   */
+  public long verify(DispatchRecord record) {
+    if (visited.length < record.numFires)
+      visited = new boolean[record.numFires];
+    Arrays.fill(visited, 0, record.numFires, false);
+
+    if (xs.length < record.numFirefighters) {
+      xs = new int[record.numFirefighters];
+      ys = new int[record.numFirefighters];
+    }
+    System.arraycopy(record.firefighterXs, 0, xs, 0, record.numFirefighters);
+    System.arraycopy(record.firefighterYs, 0, ys, 0, record.numFirefighters);
+    // Version 2 records carry their own blocked cells and no network id
+    RoadNetwork roadNetwork = null;
+    if (record.roadNetwork && record.networkId == DispatchLog.TAXICAB)
+      roadNetwork = roadNetwork(blankCity(record), record);
+    else if (record.roadNetwork)
+      roadNetwork = roadNetworks.computeIfAbsent(record.networkId, id -> roadNetwork(blankCity(record), record));
+    long distance = 0;
+    for (int i = 0; i < record.numMoves; i++) {
+      int firefighterIdx = record.moveFirefighters[i];
+      int buildingIdx = record.moveBuildings[i];
+      if (firefighterIdx < 0 || firefighterIdx >= record.numFirefighters)
+        throw new IllegalStateException("Move " + i + " uses unknown firefighter " + firefighterIdx);
+      if (buildingIdx < 0 || buildingIdx >= record.numFires)
+        throw new IllegalStateException("Move " + i + " goes to unknown building " + buildingIdx);
+      if (visited[buildingIdx])
+        throw new IllegalStateException("Move " + i + " revisits building " + buildingIdx);
+      visited[buildingIdx] = true;
+
+      int x = record.fireXs[buildingIdx];
+      int y = record.fireYs[buildingIdx];
+      if (roadNetwork == null) {
+        distance += Math.abs(xs[firefighterIdx] - x) + Math.abs(ys[firefighterIdx] - y);
+      } else {
+        int d = roadNetwork.distance(new CityNode(xs[firefighterIdx], ys[firefighterIdx]), new CityNode(x, y));
+        if (d == DistanceMetric.UNREACHABLE)
+          throw new IllegalStateException("Move " + i + " goes to unreachable building " + buildingIdx);
+        distance += d;
+      }
+      xs[firefighterIdx] = x;
+      ys[firefighterIdx] = y;
+    }
+    return distance;
+  }
+
+  /**
+   * Rebuilds the city and fleet of a record, runs the same solver again and compares the moves
+   *
+   * @param record record to re-run
+   * @return true if the solver made exactly the same moves
+   * @throws FireproofBuildingException if the record sets fire to the FireStation
+   */
+  public static boolean rerun(DispatchRecord record) throws FireproofBuildingException {
+    CityImpl city = blankCity(record);
+    CityNode[] fires = new CityNode[record.numFires];
+    for (int i = 0; i < record.numFires; i++)
+      fires[i] = new CityNode(record.fireXs[i], record.fireYs[i]);
+    Pyromaniac.setFires(city, fires);
+
+    FireDispatchImpl fireDispatch = city.getFireDispatch();
+    if (record.roadNetwork)
+      fireDispatch.setRoadNetwork(roadNetwork(city, record));
+    fireDispatch.getFleet().restore(record.numFirefighters, record.firefighterXs, record.firefighterYs,
+        record.distancesTraveled, fireDispatch.getDistanceMetric());
+
+    int[] moves = new int[2 * record.numMoves];
+    int[] count = new int[1];
+    boolean[] extra = new boolean[1];
+    fireDispatch.setMoveListener((DispatchedMove move) -> {
+      if (count[0] == record.numMoves) {
+        extra[0] = true;
+        return;
+      }
+      moves[2 * count[0]] = move.fireFighterIdx;
+      moves[2 * count[0] + 1] = move.buildingIdx;
+      count[0]++;
+    });
+    fireDispatch.dispatch(record.solver, fires);
+
+    if (extra[0] || count[0] != record.numMoves)
+      return false;
+    for (int i = 0; i < record.numMoves; i++) {
+      if (moves[2 * i] != record.moveFirefighters[i] || moves[2 * i + 1] != record.moveBuildings[i])
+        return false;
+    }
+    return true;
+  }
+
+  private static CityImpl blankCity(DispatchRecord record) {
+    return new CityImpl(record.xDimension, record.yDimension, new CityNode(record.fireStationX, record.fireStationY));
+  }
+
+  /**
+   * Rebuilds the road network of a record over a city with no fires
+   */
+  private static RoadNetwork roadNetwork(CityImpl city, DispatchRecord record) {
+    RoadNetwork roadNetwork = new RoadNetwork(city);
+    for (int i = 0; i < record.numBlocked; i++) {
+      int cell = record.blockedCells[i];
+      roadNetwork.setBlocked(new CityNode(cell / record.yDimension, cell % record.yDimension), true);
+    }
+    return roadNetwork;
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+}
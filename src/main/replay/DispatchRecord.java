@@ -0,0 +1,78 @@
+package main.replay;
+
+import main.firefighters.Solver;
+
+import java.util.Arrays;
+
+/**
+ * One dispatch call from a dispatch log: the city and its road network, the fleet before the call,
+ * the fires and the moves that were made. The reader reuses one record and its arrays for every entry, so
+ * copy anything that needs to outlive the next read
+ */
+public class DispatchRecord {
+  public Solver solver;
+  public int xDimension;
+  public int yDimension;
+  public int fireStationX;
+  public int fireStationY;
+
+  // False for taxicab distances, otherwise blockedCells holds the cells the road network cannot cross.
+  // Records of one network share its blockedCells, so do not write to them
+  public boolean roadNetwork;
+  public int networkId;
+  public int numBlocked;
+  public int[] blockedCells = new int[0];
+
+  public int numFirefighters;
+  public int[] firefighterXs = new int[0];
+  public int[] firefighterYs = new int[0];
+  public int[] distancesTraveled = new int[0];
+
+  public int numFires;
+  public int[] fireXs = new int[0];
+  public int[] fireYs = new int[0];
+
+  public int numMoves;
+  public int[] moveFirefighters = new int[0];
+  public int[] moveBuildings = new int[0];
+
+  void ensureBlocked(int n) {
+    roadNetwork = n >= 0;
+    numBlocked = Math.max(0, n);
+    if (blockedCells.length < numBlocked)
+      blockedCells = new int[numBlocked];
+  }
+
+  void ensureFirefighters(int n) {
+    numFirefighters = n;
+    if (firefighterXs.length < n) {
+      firefighterXs = new int[n];
+      firefighterYs = new int[n];
+      distancesTraveled = new int[n];
+    }
+  }
+
+  void ensureFires(int n) {
+    numFires = n;
+    if (fireXs.length < n) {
+      fireXs = new int[n];
+      fireYs = new int[n];
+    }
+  }
+
+  void ensureMoves(int n) {
+    numMoves = n;
+    if (moveFirefighters.length < n) {
+      moveFirefighters = new int[n];
+      moveBuildings = new int[n];
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "DispatchRecord{" + "solver=" + solver + ", city=" + xDimension + "x" + yDimension +
+        (roadNetwork ? ", network=" + networkId + ", blocked=" + numBlocked : "") +
+        ", firefighters=" + numFirefighters + ", fires=" + numFires + ", moves=" +
+        Arrays.toString(Arrays.copyOf(moveBuildings, numMoves)) + '}';
+  }
+}
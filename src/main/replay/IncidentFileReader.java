@@ -0,0 +1,162 @@
+package main.replay;
+
+import main.api.City;
+import main.api.CityNode;
+import main.api.FireDispatch;
+import main.api.Pyromaniac;
+import main.api.exceptions.FireproofBuildingException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Streams batches of fires out of an incident file written by {@link IncidentFileWriter}.
+ * The file is read through one bounded direct buffer that is refilled as batches are consumed,
+ * so memory use does not depend on the size of the file
+ */
+public class IncidentFileReader implements AutoCloseable {
+  public static final int DEFAULT_BUFFER_BYTES = 1 << 16;
+
+  private final FileChannel channel;
+  private final ByteBuffer buffer;
+  private final int coordinateBytes;
+  private final int xDimension;
+  private final int yDimension;
+  private boolean endOfFile;
+
+  public IncidentFileReader(Path path) throws IOException {
+    this(path, DEFAULT_BUFFER_BYTES);
+  }
+
+  public IncidentFileReader(Path path, int bufferBytes) throws IOException {
+    if (bufferBytes < IncidentFileWriter.HEADER_BYTES)
+      throw new IllegalArgumentException("Buffer too small for the header: " + bufferBytes);
+
+    this.channel = FileChannel.open(path, StandardOpenOption.READ);
+    this.buffer = ByteBuffer.allocateDirect(bufferBytes);
+    buffer.flip();
+
+    if (!ensure(IncidentFileWriter.HEADER_BYTES) || buffer.getInt() != IncidentFileWriter.MAGIC)
+      throw new IOException("Not an incident file: " + path);
+    short version = buffer.getShort();
+    if (version != IncidentFileWriter.VERSION)
+      throw new IOException("Unsupported incident file version: " + version);
+    this.coordinateBytes = buffer.get();
+    this.xDimension = buffer.getInt();
+    this.yDimension = buffer.getInt();
+  }
+
+  public int getXDimension() {
+    return xDimension;
+  }
+
+  public int getYDimension() {
+    return yDimension;
+  }
+
+  /**
+   * Reads the next batch into the given arrays without allocating
+   *
+   * @param xs destination for the X coordinates, must fit the batch
+   * @param ys destination for the Y coordinates, must fit the batch
+   * @return number of fires in the batch, or -1 at the end of the file
+   * @throws IOException if the file is truncated or a batch does not fit
+   */
+  public int nextBatch(int[] xs, int[] ys) throws IOException {
+    int count = nextCount();
+    if (count < 0)
+      return count;
+    if (count > xs.length || count > ys.length)
+      throw new IOException("Batch of " + count + " fires does not fit arrays of " + Math.min(xs.length, ys.length));
+
+    for (int i = 0; i < count; i++) {
+      xs[i] = readCoordinate();
+      ys[i] = readCoordinate();
+    }
+    return count;
+  }
+
+  /**
+   * Reads the next batch as locations
+   *
+   * @return the fires of the next batch, or null at the end of the file
+   * @throws IOException if the file is truncated
+   */
+  public CityNode[] nextBatch() throws IOException {
+    int count = nextCount();
+    if (count < 0)
+      return null;
+
+    CityNode[] batch = new CityNode[count];
+    for (int i = 0; i < count; i++) {
+      int x = readCoordinate();
+      batch[i] = new CityNode(x, readCoordinate());
+    }
+    return batch;
+  }
+
+  /**
+   * Sets and dispatches every batch in the file against a city, one batch at a time
+   *
+   * @param city city to set the fires in
+   * @return number of fires replayed
+   * @throws IOException if the file cannot be read
+   * @throws FireproofBuildingException if a batch sets fire to a fireproof building
+   */
+  public long replay(City city) throws IOException, FireproofBuildingException {
+    FireDispatch fireDispatch = city.getFireDispatch();
+    long fires = 0;
+    CityNode[] batch;
+    while ((batch = nextBatch()) != null) {
+      Pyromaniac.setFires(city, batch);
+      fireDispatch.dispatchFirefighters(batch);
+      fires += batch.length;
+    }
+    return fires;
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  private int nextCount() throws IOException {
+    if (!ensure(4)) {
+      if (buffer.hasRemaining())
+        throw new IOException("Truncated incident file");
+      return -1;
+    }
+    int count = buffer.getInt();
+    if (count < 0)
+      throw new IOException("Corrupt batch size: " + count);
+    return count;
+  }
+
+  private int readCoordinate() throws IOException {
+    if (!ensure(coordinateBytes))
+      throw new IOException("Truncated incident file");
+    if (coordinateBytes == 2)
+      return Short.toUnsignedInt(buffer.getShort());
+    return buffer.getInt();
+  }
+
+  /**
+   * Makes sure the buffer holds at least the given number of bytes, refilling it from the file
+   *
+   * @return false if the file ends first
+   */
+  private boolean ensure(int bytes) throws IOException {
+    while (buffer.remaining() < bytes) {
+      if (endOfFile)
+        return false;
+      buffer.compact();
+      if (channel.read(buffer) < 0)
+        endOfFile = true;
+      buffer.flip();
+    }
+    return true;
+  }
+}
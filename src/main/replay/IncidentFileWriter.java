@@ -0,0 +1,92 @@
+package main.replay;
+
+import main.api.CityNode;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes batches of fires to an incident file for {@link IncidentFileReader}.
+ *
+ * File layout (big endian):
+ *   header: int MAGIC, short VERSION, byte coordinateBytes, int xDimension, int yDimension
+ *   batch:  int count, count * (x, y)
+ * Coordinates take 2 bytes each (unsigned) when both dimensions fit, otherwise 4
+ */
+public class IncidentFileWriter implements AutoCloseable {
+  public static final int MAGIC = 0x46494E43;
+  public static final short VERSION = 1;
+  public static final int HEADER_BYTES = 15;
+  public static final int DEFAULT_BUFFER_BYTES = 1 << 16;
+
+  private final FileChannel channel;
+  private final ByteBuffer buffer;
+  private final int coordinateBytes;
+  private final int xDimension;
+  private final int yDimension;
+
+  public IncidentFileWriter(Path path, int xDimension, int yDimension) throws IOException {
+    this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING);
+    this.buffer = ByteBuffer.allocateDirect(DEFAULT_BUFFER_BYTES);
+    this.coordinateBytes = Math.max(xDimension, yDimension) <= 0xFFFF ? 2 : 4;
+    this.xDimension = xDimension;
+    this.yDimension = yDimension;
+
+    buffer.putInt(MAGIC);
+    buffer.putShort(VERSION);
+    buffer.put((byte) coordinateBytes);
+    buffer.putInt(xDimension);
+    buffer.putInt(yDimension);
+  }
+
+  /**
+   * Appends one batch of fires. Every fire is checked before anything is written, so a rejected
+   * batch leaves the file as it was
+   *
+   * @param burningBuildings locations of the fires
+   * @throws IOException if the file cannot be written
+   * @throws IllegalArgumentException if a fire is outside the city
+   */
+  public void writeBatch(CityNode... burningBuildings) throws IOException {
+    for (CityNode building : burningBuildings) {
+      if (building.getX() < 0 || building.getY() < 0 || building.getX() >= xDimension ||
+          building.getY() >= yDimension)
+        throw new IllegalArgumentException("Fire outside the city: " + building);
+    }
+
+    ensure(4);
+    buffer.putInt(burningBuildings.length);
+    for (CityNode building : burningBuildings) {
+      ensure(2 * coordinateBytes);
+      if (coordinateBytes == 2) {
+        buffer.putShort((short) building.getX());
+        buffer.putShort((short) building.getY());
+      } else {
+        buffer.putInt(building.getX());
+        buffer.putInt(building.getY());
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    flush();
+    channel.close();
+  }
+
+  private void ensure(int bytes) throws IOException {
+    if (buffer.remaining() < bytes)
+      flush();
+  }
+
+  private void flush() throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining())
+      channel.write(buffer);
+    buffer.clear();
+  }
+}
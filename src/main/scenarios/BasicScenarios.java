@@ -2,8 +2,12 @@ package main.scenarios;
 
 import main.api.*;
 import main.api.exceptions.FireproofBuildingException;
+import main.firefighters.FireDispatchImpl;
+import main.firefighters.FirefighterFleet;
 import main.firefighters.FirefighterImpl;
+import main.firefighters.Solver;
 import main.impls.CityImpl;
+import main.impls.RoadNetwork;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -174,5 +178,97 @@ public class BasicScenarios {
     }
     System.out.println(totalDistanceTraveled);
   }
-}
 
+  @Test
+  public void roadNetworkDetour() throws FireproofBuildingException {
+    City basicCity = new CityImpl(3, 3, new CityNode(0, 0));
+    FireDispatchImpl fireDispatch = (FireDispatchImpl) basicCity.getFireDispatch();
+
+    // Wall off the direct route so the firefighter has to go around
+    RoadNetwork roadNetwork = new RoadNetwork(basicCity);
+    roadNetwork.setBlocked(new CityNode(1, 0), true);
+    roadNetwork.setBlocked(new CityNode(1, 1), true);
+    fireDispatch.setRoadNetwork(roadNetwork);
+
+    CityNode fireNode = new CityNode(2, 0);
+    Pyromaniac.setFire(basicCity, fireNode);
+
+    fireDispatch.setFirefighters(1);
+    fireDispatch.dispatchFirefighters(fireNode);
+
+    Firefighter firefighter = fireDispatch.getFirefighters().get(0);
+    Assert.assertEquals(6, firefighter.distanceTraveled());
+    Assert.assertFalse(basicCity.getBuilding(fireNode).isBurning());
+
+    // Firefighters hired before the road network is set are charged the detour too
+    City laterCity = new CityImpl(3, 3, new CityNode(0, 0));
+    FireDispatchImpl laterDispatch = (FireDispatchImpl) laterCity.getFireDispatch();
+    RoadNetwork laterNetwork = new RoadNetwork(laterCity);
+    laterNetwork.setBlocked(new CityNode(1, 0), true);
+    laterNetwork.setBlocked(new CityNode(1, 1), true);
+    laterDispatch.setFirefighters(1);
+    laterDispatch.setRoadNetwork(laterNetwork);
+    Pyromaniac.setFire(laterCity, fireNode);
+    laterDispatch.dispatchFirefighters(fireNode);
+    Assert.assertEquals(6, laterDispatch.getFirefighters().get(0).distanceTraveled());
+
+    // A blocked street is as unreachable from a cached field of its own as it is from a cold cache
+    CityNode street = new CityNode(1, 1);
+    RoadNetwork cold = new RoadNetwork(basicCity);
+    cold.setBlocked(street, true);
+    Assert.assertEquals(DistanceMetric.UNREACHABLE, cold.distance(new CityNode(2, 2), street));
+    cold.precompute(street);
+    Assert.assertEquals(DistanceMetric.UNREACHABLE, cold.distance(new CityNode(2, 2), street));
+    Assert.assertEquals(0, cold.distance(street, street));
+  }
+
+  /**
+   * A fire walled in by blocked streets is left burning whichever solver is asked for, and no
+   * firefighter is charged for a leg that cannot be driven
+   * @throws FireproofBuildingException
+   */
+  @Test
+  public void roadNetworkWalledFire() throws FireproofBuildingException {
+    CityNode walled = new CityNode(8, 8);
+    CityNode[] fireNodes = {walled, new CityNode(2, 3), new CityNode(5, 5), new CityNode(1, 7)};
+    CityNode[] walls = {new CityNode(7, 8), new CityNode(9, 8), new CityNode(8, 7), new CityNode(8, 9)};
+    Solver[] solvers = {Solver.SPACE_FILLING_CURVE, Solver.SAVINGS, Solver.LARGE_NEIGHBOURHOOD,
+        Solver.HIERARCHICAL, Solver.BRANCH_AND_BOUND, Solver.BRUTE_FORCE, Solver.GREEDY, Solver.SET_PARTITION};
+    for (Solver solver : solvers) {
+      CityImpl basicCity = new CityImpl(10, 10, new CityNode(0, 0));
+      FireDispatchImpl fireDispatch = basicCity.getFireDispatch();
+      RoadNetwork roadNetwork = new RoadNetwork(basicCity);
+      for (CityNode wall : walls)
+        roadNetwork.setBlocked(wall, true);
+      fireDispatch.setRoadNetwork(roadNetwork);
+      Pyromaniac.setFires(basicCity, fireNodes);
+      fireDispatch.setFirefighters(2);
+      fireDispatch.dispatch(solver, fireNodes);
+
+      Assert.assertTrue(solver + " put out a walled in fire", basicCity.getBuilding(walled).isBurning());
+      for (int i = 1; i < fireNodes.length; i++)
+        Assert.assertFalse(solver + " left a fire burning", basicCity.getBuilding(fireNodes[i]).isBurning());
+      Assert.assertTrue(solver + " charged an unreachable leg", fireDispatch.getFleet().totalDistanceTraveled() < 100);
+    }
+  }
+
+  @Test
+  public void fleetTotals() {
+    FirefighterFleet fleet = new FirefighterFleet();
+    fleet.reset(3, new CityNode(0, 0), DistanceMetric.TAXICAB);
+    fleet.moveTo(0, 2, 3);
+    fleet.moveTo(1, 1, 0);
+    fleet.asList().get(0).updateLocation(new CityNode(0, 5));
+
+    Assert.assertEquals(10, fleet.totalDistanceTraveled());
+    Assert.assertEquals(9, fleet.maxDistanceTraveled());
+    Assert.assertEquals(new CityNode(0, 5), fleet.asList().get(0).getLocation());
+
+    // Resetting to a smaller fleet clears everything
+    fleet.reset(2, new CityNode(1, 1), DistanceMetric.TAXICAB);
+    Assert.assertEquals(2, fleet.asList().size());
+    Assert.assertEquals(0, fleet.totalDistanceTraveled());
+    Assert.assertEquals(0, fleet.asList().get(1).distanceTraveled());
+    Assert.assertEquals(new CityNode(1, 1), fleet.asList().get(1).getLocation());
+  }
+}
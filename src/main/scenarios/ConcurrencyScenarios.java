@@ -0,0 +1,577 @@
+package main.scenarios;
+
+import main.api.*;
+import main.api.exceptions.FireproofBuildingException;
+import main.firefighters.FireDispatchImpl;
+import main.firefighters.LatencyHistogram;
+import main.firefighters.LoadShedder;
+import main.firefighters.ServiceLevel;
+import main.impls.CityImpl;
+import main.impls.ConcurrentCity;
+import main.shard.ShardCoordinator;
+import main.simulation.DispatchService;
+import main.simulation.WorkloadGenerator;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+public class ConcurrencyScenarios {
+  /**
+   * Many threads race to put out the same fires. Every fire must be claimed exactly once
+   * @throws Exception
+   */
+  @Test
+  public void concurrentClaimsAreExclusive() throws Exception {
+    final int CITY_BOUND = 64;
+    final int NUM_THREADS = 8;
+
+    ConcurrentCity city = new ConcurrentCity(CITY_BOUND, CITY_BOUND, new CityNode(0, 0));
+    List<CityNode> fireNodes = new ArrayList<>();
+    for (int x = 0; x < CITY_BOUND; x++) {
+      for (int y = 0; y < CITY_BOUND; y++) {
+        if (x != 0 || y != 0)
+          fireNodes.add(new CityNode(x, y));
+      }
+    }
+    Pyromaniac.setFires(city, fireNodes.toArray(new CityNode[0]));
+    Assert.assertEquals(fireNodes.size(), city.burningCount());
+
+    AtomicInteger claims = new AtomicInteger();
+    CountDownLatch start = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int t = 0; t < NUM_THREADS; t++) {
+      futures.add(executor.submit(() -> {
+        start.await();
+        for (CityNode fireNode : fireNodes) {
+          if (city.claimFire(fireNode))
+            claims.incrementAndGet();
+        }
+        return null;
+      }));
+    }
+    start.countDown();
+    for (Future<?> future : futures)
+      future.get();
+    executor.shutdown();
+
+    Assert.assertEquals(fireNodes.size(), claims.get());
+    Assert.assertEquals(0, city.burningCount());
+  }
+
+  /**
+   * Several dispatchers with their own firefighters work the same fires at once.
+   * All fires go out and no fire is visited by more than one firefighter
+   * @throws Exception
+   */
+  @Test
+  public void multipleDispatchersShareCity() throws Exception {
+    final int CITY_BOUND = 50;
+    final int NUM_DISPATCHERS = 4;
+    final int NUM_BURNING_BUILDINGS = 300;
+
+    Random rand = new Random(1);
+    CityNode fireStation = new CityNode(25, 25);
+    ConcurrentCity city = new ConcurrentCity(CITY_BOUND, CITY_BOUND, fireStation);
+    Set<CityNode> fireNodeSet = new HashSet<>();
+    while (fireNodeSet.size() < NUM_BURNING_BUILDINGS) {
+      CityNode fireNode = new CityNode(rand.nextInt(CITY_BOUND), rand.nextInt(CITY_BOUND));
+      if (!fireStation.equals(fireNode))
+        fireNodeSet.add(fireNode);
+    }
+    CityNode[] fireNodes = fireNodeSet.toArray(new CityNode[0]);
+    Pyromaniac.setFires(city, fireNodes);
+
+    ExecutorService executor = Executors.newFixedThreadPool(NUM_DISPATCHERS);
+    List<Future<FireDispatchImpl>> futures = new ArrayList<>();
+    for (int i = 0; i < NUM_DISPATCHERS; i++) {
+      futures.add(executor.submit(() -> {
+        FireDispatchImpl fireDispatch = city.newFireDispatch();
+        fireDispatch.setFirefighters(2);
+        fireDispatch.dispatchFirefighters(fireNodes);
+        return fireDispatch;
+      }));
+    }
+
+    Set<CityNode> visited = new HashSet<>();
+    for (Future<FireDispatchImpl> future : futures) {
+      for (Firefighter firefighter : future.get().getFirefighters())
+        Assert.assertTrue(firefighter.distanceTraveled() == 0 || visited.add(firefighter.getLocation()));
+    }
+    executor.shutdown();
+
+    Assert.assertEquals(0, city.burningCount());
+  }
+
+  @Test(expected = FireproofBuildingException.class)
+  public void concurrentFireStationIsFireproof() throws FireproofBuildingException {
+    ConcurrentCity city = new ConcurrentCity(4, 4, new CityNode(1, 1));
+    Pyromaniac.setFire(city, new CityNode(1, 1));
+  }
+
+  /**
+   * Many cities with several incidents each go through the dispatch service at once.
+   * Every incident completes, in order per city, and all fires are out
+   * @throws Exception
+   */
+  @Test
+  public void dispatchServiceManyCities() throws Exception {
+    final int CITY_BOUND = 10;
+    final int NUM_CITIES = 200;
+    final int NUM_INCIDENTS = 5;
+    final int FIRES_PER_INCIDENT = 6;
+
+    Random rand = new Random(1);
+    List<City> cities = new ArrayList<>();
+    List<CompletableFuture<DispatchService.IncidentResult>> futures = new ArrayList<>();
+    List<List<Integer>> completionOrder = new ArrayList<>();
+    try (DispatchService service = new DispatchService(64)) {
+      int[] cityIds = new int[NUM_CITIES];
+      for (int i = 0; i < NUM_CITIES; i++) {
+        completionOrder.add(Collections.synchronizedList(new ArrayList<>()));
+        City city = new CityImpl(CITY_BOUND, CITY_BOUND, new CityNode(0, 0));
+        city.getFireDispatch().setFirefighters(1 + i % 3);
+        cities.add(city);
+        cityIds[i] = service.addCity(city);
+      }
+
+      for (int incident = 0; incident < NUM_INCIDENTS; incident++) {
+        for (int i = 0; i < NUM_CITIES; i++) {
+          Set<CityNode> fireNodeSet = new HashSet<>();
+          while (fireNodeSet.size() < FIRES_PER_INCIDENT)
+            fireNodeSet.add(new CityNode(1 + rand.nextInt(CITY_BOUND - 1), rand.nextInt(CITY_BOUND)));
+          List<Integer> order = completionOrder.get(i);
+          int incidentIdx = incident;
+          futures.add(service.submit(cityIds[i], fireNodeSet.toArray(new CityNode[0]))
+              .whenComplete((result, e) -> order.add(incidentIdx)));
+        }
+      }
+
+      int[] cityDistance = new int[NUM_CITIES];
+      for (CompletableFuture<DispatchService.IncidentResult> future : futures) {
+        DispatchService.IncidentResult result = future.get();
+        cityDistance[result.cityId] += result.distanceTraveled;
+      }
+      // Each incident reports only its own distance
+      for (int i = 0; i < NUM_CITIES; i++) {
+        int total = 0;
+        for (Firefighter firefighter : cities.get(i).getFireDispatch().getFirefighters())
+          total += firefighter.distanceTraveled();
+        Assert.assertEquals(total, cityDistance[i]);
+      }
+      for (List<Integer> order : completionOrder)
+        Assert.assertEquals(Arrays.asList(0, 1, 2, 3, 4), order);
+
+      DispatchService.Stats stats = service.stats();
+      Assert.assertEquals(NUM_CITIES * NUM_INCIDENTS, stats.completed);
+      Assert.assertEquals(0, stats.failed);
+    }
+
+    // Once closed, submissions are refused and do not hold on to their only in flight permit
+    DispatchService closed = new DispatchService(1);
+    int cityId = closed.addCity(new CityImpl(CITY_BOUND, CITY_BOUND, new CityNode(0, 0)));
+    closed.close();
+    ExecutorService submitter = Executors.newSingleThreadExecutor();
+    try {
+      for (int i = 0; i < 2; i++) {
+        Future<?> attempt = submitter.submit(() -> closed.submit(cityId, new CityNode(1, 1)));
+        try {
+          attempt.get(10, TimeUnit.SECONDS);
+          Assert.fail("Closed service took an incident");
+        } catch (ExecutionException e) {
+          Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+      }
+    } finally {
+      submitter.shutdownNow();
+    }
+
+    for (City city : cities) {
+      for (int x = 0; x < CITY_BOUND; x++) {
+        for (int y = 0; y < CITY_BOUND; y++)
+          Assert.assertFalse(city.getBuilding(x, y).isBurning());
+      }
+    }
+  }
+
+  /**
+   * An Error in one incident fails its future and still reaches the thread, while the city's later
+   * incidents run as usual
+   * @throws Exception
+   */
+  @Test
+  public void dispatchServiceSurvivesErrors() throws Exception {
+    final int CITY_BOUND = 10;
+
+    CityImpl city = new CityImpl(CITY_BOUND, CITY_BOUND, new CityNode(0, 0));
+    city.getFireDispatch().setFirefighters(1);
+    AtomicInteger moves = new AtomicInteger();
+    city.getFireDispatch().setMoveListener(move -> {
+      if (moves.getAndIncrement() == 0)
+        throw new AssertionError("First move fails");
+    });
+
+    List<CompletableFuture<DispatchService.IncidentResult>> futures = new ArrayList<>();
+    try (DispatchService service = new DispatchService(4)) {
+      int cityId = service.addCity(city);
+      for (int i = 1; i <= 3; i++)
+        futures.add(service.submit(cityId, new CityNode(i, i)));
+
+      try {
+        futures.get(0).get(10, TimeUnit.SECONDS);
+        Assert.fail("Incident with an Error completed");
+      } catch (ExecutionException e) {
+        Assert.assertTrue(e.getCause() instanceof AssertionError);
+      }
+      for (int i = 1; i < futures.size(); i++)
+        Assert.assertEquals(1, futures.get(i).get(10, TimeUnit.SECONDS).fires);
+
+      DispatchService.Stats stats = service.stats();
+      Assert.assertEquals(2, stats.completed);
+      Assert.assertEquals(1, stats.failed);
+    }
+  }
+
+  /**
+   * Moves stream out one at a time as the subscriber asks for them, and the stream
+   * matches what the dispatch actually did
+   * @throws Exception
+   */
+  @Test
+  public void moveStreamWithBackpressure() throws Exception {
+    CityNode fireStation = new CityNode(1, 2);
+    City basicCity = new CityImpl(6, 7, fireStation);
+    FireDispatchImpl fireDispatch = (FireDispatchImpl) basicCity.getFireDispatch();
+
+    CityNode[] fireNodes = {
+        new CityNode(0, 0),
+        new CityNode(2, 1),
+        new CityNode(4, 2),
+        new CityNode(0, 4),
+        new CityNode(1, 6),
+        new CityNode(4, 5)};
+    Pyromaniac.setFires(basicCity, fireNodes);
+    fireDispatch.setFirefighters(3);
+
+    // A listener set beforehand sees the same moves and is back in place once the stream completes
+    List<DispatchedMove> heard = Collections.synchronizedList(new ArrayList<>());
+    Consumer<DispatchedMove> listener = heard::add;
+    fireDispatch.setMoveListener(listener);
+
+    List<DispatchedMove> moves = Collections.synchronizedList(new ArrayList<>());
+    CompletableFuture<Void> done = new CompletableFuture<>();
+    fireDispatch.dispatchAsPublisher(fireNodes).subscribe(new Flow.Subscriber<DispatchedMove>() {
+      private Flow.Subscription subscription;
+
+      @Override
+      public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        subscription.request(1);
+      }
+
+      @Override
+      public void onNext(DispatchedMove move) {
+        moves.add(move);
+        subscription.request(1);
+      }
+
+      @Override
+      public void onError(Throwable throwable) {
+        done.completeExceptionally(throwable);
+      }
+
+      @Override
+      public void onComplete() {
+        done.complete(null);
+      }
+    });
+    done.get(10, TimeUnit.SECONDS);
+
+    Assert.assertEquals(fireNodes.length, moves.size());
+    Assert.assertEquals(moves, heard);
+    Assert.assertSame(listener, fireDispatch.getMoveListener());
+    Set<CityNode> visited = new HashSet<>();
+    for (DispatchedMove move : moves) {
+      Assert.assertEquals(fireNodes[move.buildingIdx], move.building);
+      Assert.assertTrue(visited.add(move.building));
+      Assert.assertFalse(basicCity.getBuilding(move.building).isBurning());
+    }
+  }
+
+  /**
+   * A portfolio of search workers sharing one incumbent never does worse than the savings routes
+   * it starts from and still puts every fire out
+   * @throws FireproofBuildingException
+   */
+  @Test
+  public void largeNeighbourhoodPortfolio() throws FireproofBuildingException {
+    final int CITY_BOUND = 150;
+    final int NUM_FIREFIGHTERS = 6;
+    final int NUM_BURNING_BUILDINGS = 300;
+
+    CityNode fireStation = new CityNode(75, 75);
+    CityNode[] fireNodes = new WorkloadGenerator(CITY_BOUND, CITY_BOUND, fireStation, 11)
+        .generate(WorkloadGenerator.Distribution.CLUSTERED, NUM_BURNING_BUILDINGS);
+
+    long[] totals = new long[2];
+    for (int i = 0; i < 2; i++) {
+      CityImpl basicCity = new CityImpl(CITY_BOUND, CITY_BOUND, fireStation);
+      FireDispatchImpl fireDispatch = basicCity.getFireDispatch();
+      Pyromaniac.setFires(basicCity, fireNodes);
+      fireDispatch.setFirefighters(NUM_FIREFIGHTERS);
+      fireDispatch.setSearchBudget(150, Long.MAX_VALUE, 4);
+
+      if (i == 0)
+        fireDispatch.savingsDispatch(fireNodes);
+      else
+        fireDispatch.largeNeighbourhoodDispatch(fireNodes);
+      totals[i] = fireDispatch.getFleet().totalDistanceTraveled();
+
+      for (CityNode fireNode : fireNodes)
+        Assert.assertFalse(basicCity.getBuilding(fireNode).isBurning());
+    }
+    Assert.assertTrue(totals[1] <= totals[0]);
+
+    // Without firefighters there is nothing to search and every fire keeps burning
+    CityImpl emptyCity = new CityImpl(CITY_BOUND, CITY_BOUND, fireStation);
+    Pyromaniac.setFires(emptyCity, fireNodes);
+    emptyCity.getFireDispatch().setFirefighters(0);
+    emptyCity.getFireDispatch().largeNeighbourhoodDispatch(fireNodes);
+    Assert.assertTrue(emptyCity.getBuilding(fireNodes[0]).isBurning());
+  }
+
+  /**
+   * Shard processes on loopback put out every fire of every incident, only the city's FireStation
+   * is fireproof, and a shard buried in fires borrows firefighters from its idle neighbour
+   * @throws Exception
+   */
+  @Test
+  public void shardedDispatch() throws Exception {
+    final int CITY_BOUND = 200;
+    final int NUM_INCIDENTS = 40;
+    final int FIRES_PER_INCIDENT = 50;
+    CityNode fireStation = new CityNode(0, 0);
+
+    try (ShardCoordinator coordinator = ShardCoordinator.launch(CITY_BOUND, CITY_BOUND, fireStation, 2, 1, 4)) {
+      Assert.assertEquals(2, coordinator.shardCount());
+
+      WorkloadGenerator generator = new WorkloadGenerator(CITY_BOUND, CITY_BOUND, fireStation, 5);
+      List<CompletableFuture<ShardCoordinator.Result>> results = new ArrayList<>();
+      for (int i = 0; i < NUM_INCIDENTS; i++)
+        results.add(coordinator.submit(generator.generate(WorkloadGenerator.Distribution.UNIFORM, FIRES_PER_INCIDENT)));
+      for (CompletableFuture<ShardCoordinator.Result> result : results) {
+        ShardCoordinator.Result r = result.get(30, TimeUnit.SECONDS);
+        Assert.assertEquals(FIRES_PER_INCIDENT, r.extinguished);
+        Assert.assertEquals(0, r.rejected);
+        Assert.assertTrue(r.distanceTraveled > 0);
+      }
+      Assert.assertEquals(0, coordinator.borrows());
+
+      // Every fire lands in shard 0 while shard 1 is idle
+      CityNode[] skewed = new WorkloadGenerator(CITY_BOUND / 2, CITY_BOUND, fireStation, 6)
+          .generate(WorkloadGenerator.Distribution.UNIFORM, 200);
+      ShardCoordinator.Result r = coordinator.submit(skewed).get(30, TimeUnit.SECONDS);
+      Assert.assertEquals(skewed.length, r.extinguished);
+      Assert.assertEquals(1, r.shards);
+      Assert.assertEquals(1, coordinator.borrows());
+      // Two firefighters there and back between the FireStation and the centre of shard 1
+      Assert.assertEquals(2 * 2 * (150 + 100), coordinator.transferDistance());
+    }
+
+    // Region centres burn like any other building, the city's FireStation does not
+    try (ShardCoordinator coordinator = ShardCoordinator.inProcess(CITY_BOUND, CITY_BOUND, fireStation, 2, 1, 4)) {
+      ShardCoordinator.Result r = coordinator.submit(new CityNode(50, 100), new CityNode(150, 100),
+          new CityNode(10, 10)).get(30, TimeUnit.SECONDS);
+      Assert.assertEquals(3, r.extinguished);
+      Assert.assertEquals(0, r.rejected);
+
+      r = coordinator.submit(fireStation, new CityNode(150, 100)).get(30, TimeUnit.SECONDS);
+      Assert.assertEquals(1, r.extinguished);
+      Assert.assertEquals(1, r.rejected);
+    }
+  }
+
+  /**
+   * A city that does not divide evenly is split into regions of at least 2 cells that cover it
+   * exactly, and a split that would leave a thinner region is refused
+   * @throws Exception
+   */
+  @Test
+  public void shardedDispatchUnevenSplit() throws Exception {
+    CityNode fireStation = new CityNode(0, 0);
+    try (ShardCoordinator coordinator = ShardCoordinator.inProcess(7, 5, fireStation, 3, 2, 1)) {
+      Assert.assertEquals(6, coordinator.shardCount());
+
+      List<CityNode> fireNodes = new ArrayList<>();
+      for (int x = 0; x < 7; x++) {
+        for (int y = 0; y < 5; y++) {
+          if (x != 0 || y != 0)
+            fireNodes.add(new CityNode(x, y));
+        }
+      }
+      ShardCoordinator.Result r = coordinator.submit(fireNodes.toArray(new CityNode[0])).get(30, TimeUnit.SECONDS);
+      Assert.assertEquals(fireNodes.size(), r.extinguished);
+      Assert.assertEquals(6, r.shards);
+    }
+
+    try {
+      ShardCoordinator.inProcess(5, 5, fireStation, 4, 1, 1).close();
+      Assert.fail("Split a 5 wide city into 4 regions");
+    } catch (IllegalArgumentException e) {
+      // Expected, a region would be a single cell wide
+    }
+  }
+
+  /**
+   * Greedy steps reduced in parallel on a busy pool pick exactly the moves of the sequential steps,
+   * including on a dense grid where most moves tie on distance
+   * @throws Exception
+   */
+  @Test
+  public void parallelGreedyMatchesSequential() throws Exception {
+    final int CITY_BOUND = 60;
+    final int NUM_FIREFIGHTERS = 24;
+
+    CityNode fireStation = new CityNode(30, 30);
+    List<CityNode[]> incidents = new ArrayList<>();
+    incidents.add(new WorkloadGenerator(CITY_BOUND, CITY_BOUND, fireStation, 3)
+        .generate(WorkloadGenerator.Distribution.HOTSPOT, 900));
+    List<CityNode> grid = new ArrayList<>();
+    for (int x = 11; x < 50; x += 2) {
+      for (int y = 11; y < 50; y += 2)
+        grid.add(new CityNode(x, y));
+    }
+    incidents.add(grid.toArray(new CityNode[0]));
+
+    ForkJoinPool pool = new ForkJoinPool(8);
+    try {
+      for (CityNode[] fireNodes : incidents) {
+        List<List<Integer>> moves = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+          CityImpl basicCity = new CityImpl(CITY_BOUND, CITY_BOUND, fireStation);
+          FireDispatchImpl fireDispatch = basicCity.getFireDispatch();
+          Pyromaniac.setFires(basicCity, fireNodes);
+          fireDispatch.setFirefighters(NUM_FIREFIGHTERS);
+          fireDispatch.setParallelGreedyThreshold(i == 0 ? Long.MAX_VALUE : 0);
+
+          List<Integer> order = new ArrayList<>();
+          fireDispatch.setMoveListener(move -> {
+            order.add(move.fireFighterIdx);
+            order.add(move.buildingIdx);
+          });
+          pool.submit(() -> fireDispatch.greedyDispatch(fireNodes)).get();
+          moves.add(order);
+
+          for (CityNode fireNode : fireNodes)
+            Assert.assertFalse(basicCity.getBuilding(fireNode).isBurning());
+        }
+        Assert.assertEquals(2 * fireNodes.length, moves.get(0).size());
+        Assert.assertEquals(moves.get(0), moves.get(1));
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * Latency over target steps the level down one window at a time, calm windows bring it back up
+   * and a long queue steps it down again. Under a target no dispatch can meet, a surge through the
+   * dispatch service ends up on the cheapest solver and still puts out every fire
+   * @throws Exception
+   */
+  @Test
+  public void loadSheddingStepsDownAndBack() throws Exception {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int v = 1; v <= 100000; v++)
+      histogram.record(v);
+    Assert.assertEquals(50000, histogram.valueAtPercentile(50), 50000 * 0.02);
+    Assert.assertEquals(99000, histogram.valueAtPercentile(99), 99000 * 0.02);
+    Assert.assertEquals(100000, histogram.valueAtPercentile(100));
+
+    LoadShedder shedder = new LoadShedder(1_000_000, 16).withWindow(8, 60_000, 2);
+    for (int i = 0; i < 8; i++) {
+      shedder.beginDispatch();
+      shedder.endDispatch(5_000_000);
+    }
+    Assert.assertEquals(ServiceLevel.GREEDY, shedder.level());
+    for (int i = 0; i < 16; i++) {
+      shedder.beginDispatch();
+      shedder.endDispatch(1000);
+    }
+    Assert.assertEquals(ServiceLevel.FULL, shedder.level());
+    for (int i = 0; i < 20; i++)
+      shedder.enqueued();
+    for (int i = 0; i < 8; i++) {
+      shedder.beginDispatch();
+      shedder.endDispatch(1000);
+    }
+    Assert.assertEquals(ServiceLevel.GREEDY, shedder.level());
+
+    LoadShedder.Metrics metrics = shedder.metrics();
+    Assert.assertEquals(32, metrics.dispatched);
+    Assert.assertEquals(20, metrics.queueDepth);
+    List<LoadShedder.Reason> reasons = new ArrayList<>();
+    for (LoadShedder.Switch change : metrics.recentSwitches)
+      reasons.add(change.reason);
+    Assert.assertEquals(Arrays.asList(LoadShedder.Reason.LATENCY, LoadShedder.Reason.RECOVERED,
+        LoadShedder.Reason.QUEUE_DEPTH), reasons);
+
+    final int CITY_BOUND = 12;
+    final int NUM_CITIES = 20;
+    final int NUM_INCIDENTS = 10;
+    LoadShedder surge = new LoadShedder(1, 1000).withWindow(8, 60_000, 2);
+    List<City> cities = new ArrayList<>();
+    List<CompletableFuture<DispatchService.IncidentResult>> futures = new ArrayList<>();
+    Random rand = new Random(7);
+    try (DispatchService service = new DispatchService(32, surge)) {
+      int[] cityIds = new int[NUM_CITIES];
+      for (int i = 0; i < NUM_CITIES; i++) {
+        CityImpl city = new CityImpl(CITY_BOUND, CITY_BOUND, new CityNode(0, 0));
+        city.getFireDispatch().setFirefighters(3);
+        city.getFireDispatch().setLoadShedder(surge);
+        cities.add(city);
+        cityIds[i] = service.addCity(city);
+      }
+      for (int incident = 0; incident < NUM_INCIDENTS; incident++) {
+        for (int i = 0; i < NUM_CITIES; i++) {
+          Set<CityNode> fireNodeSet = new HashSet<>();
+          while (fireNodeSet.size() < 8)
+            fireNodeSet.add(new CityNode(1 + rand.nextInt(CITY_BOUND - 1), rand.nextInt(CITY_BOUND)));
+          futures.add(service.submit(cityIds[i], fireNodeSet.toArray(new CityNode[0])));
+        }
+      }
+      for (CompletableFuture<DispatchService.IncidentResult> future : futures)
+        future.get();
+      Assert.assertEquals(NUM_CITIES * NUM_INCIDENTS, service.stats().completed);
+    }
+
+    metrics = surge.metrics();
+    Assert.assertEquals(ServiceLevel.SPACE_FILLING_CURVE, metrics.level);
+    Assert.assertEquals(3, metrics.switches(LoadShedder.Reason.LATENCY));
+    Assert.assertEquals(0, metrics.queueDepth);
+    Assert.assertTrue(metrics.dispatchesPerLevel[ServiceLevel.SPACE_FILLING_CURVE.ordinal()] > 0);
+
+    // Incidents a closed service refuses are taken off the queue depth again
+    DispatchService closed = new DispatchService(1, surge);
+    int cityId = closed.addCity(cities.get(0));
+    closed.close();
+    for (int i = 0; i < 2; i++) {
+      try {
+        closed.submit(cityId, new CityNode(1, 1));
+        Assert.fail("Closed service took an incident");
+      } catch (RejectedExecutionException e) {
+        Assert.assertEquals(0, surge.queueDepth());
+      }
+    }
+    for (City city : cities) {
+      for (int x = 0; x < CITY_BOUND; x++) {
+        for (int y = 0; y < CITY_BOUND; y++)
+          Assert.assertFalse(city.getBuilding(x, y).isBurning());
+      }
+    }
+  }
+}
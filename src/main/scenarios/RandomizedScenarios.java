@@ -2,11 +2,28 @@ package main.scenarios;
 
 import main.api.*;
 import main.api.exceptions.FireproofBuildingException;
+import main.firefighters.CandidateLists;
+import main.firefighters.FireDispatchImpl;
+import main.impls.CityFork;
 import main.impls.CityImpl;
+import main.impls.RoadNetwork;
+import main.impls.CitySnapshot;
+import main.replay.DispatchLog;
+import main.replay.DispatchLogReader;
+import main.replay.DispatchRecord;
+import main.replay.IncidentFileReader;
+import main.replay.IncidentFileWriter;
+import main.impls.ConcurrentCity;
+import main.simulation.FireSpreadEngine;
+import main.simulation.LoadHarness;
+import main.simulation.WorkloadGenerator;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.function.Consumer;
 
 import static org.junit.Assert.fail;
 
@@ -203,4 +220,739 @@ public class RandomizedScenarios {
             System.out.println("pathLength: " + totalDistanceTraveled);
         }
     }
+
+    /**
+     * Fire spread must give the same result for the same seed however many stripes are used,
+     * and must never spread into the FireStation
+     * @throws FireproofBuildingException
+     */
+    @Test
+    public void fireSpreadDeterministic() throws FireproofBuildingException {
+        final int CITY_BOUND = 40;
+        final int NUM_TICKS = 15;
+
+        CityNode fireStation = new CityNode(20, 21);
+        City singleStripeCity = new CityImpl(CITY_BOUND, CITY_BOUND, fireStation);
+        City multiStripeCity = new CityImpl(CITY_BOUND, CITY_BOUND, fireStation);
+        Pyromaniac.setFire(singleStripeCity, new CityNode(20, 20));
+        Pyromaniac.setFire(multiStripeCity, new CityNode(20, 20));
+
+        FireSpreadEngine singleStripe = new FireSpreadEngine(singleStripeCity, 0.4, 7, 1);
+        FireSpreadEngine multiStripe = new FireSpreadEngine(multiStripeCity, 0.4, 7, 8);
+        for (int i = 0; i < NUM_TICKS; i++) {
+            Assert.assertEquals(singleStripe.tick(), multiStripe.tick());
+        }
+
+        Assert.assertTrue(singleStripe.burningLocations().length > 1);
+        Assert.assertFalse(multiStripeCity.getFireStation().isBurning());
+        for (int x = 0; x < CITY_BOUND; x++) {
+            for (int y = 0; y < CITY_BOUND; y++) {
+                Assert.assertEquals(singleStripeCity.getBuilding(x, y).isBurning(),
+                        multiStripeCity.getBuilding(x, y).isBurning());
+            }
+        }
+    }
+
+    /**
+     * Dispatch between ticks keeps up with a slowly spreading fire when it can respond to every
+     * building, while a response capped at one building per tick falls behind and the fire grows
+     * @throws FireproofBuildingException
+     */
+    @Test
+    public void fireSpreadInterleavedDispatch() throws FireproofBuildingException {
+        final int CITY_BOUND = 30;
+        final int NUM_TICKS = 20;
+
+        City basicCity = new CityImpl(CITY_BOUND, CITY_BOUND, new CityNode(0, 0));
+        FireDispatch fireDispatch = basicCity.getFireDispatch();
+        fireDispatch.setFirefighters(4);
+        Pyromaniac.setFires(basicCity, new CityNode[]{new CityNode(15, 15), new CityNode(5, 25)});
+
+        FireSpreadEngine engine = new FireSpreadEngine(basicCity, 0.2, 3);
+        List<FireSpreadEngine.TickReport> reports = engine.runInterleaved(fireDispatch, NUM_TICKS, Integer.MAX_VALUE);
+
+        Assert.assertEquals(NUM_TICKS, reports.size());
+        for (int x = 0; x < CITY_BOUND; x++) {
+            for (int y = 0; y < CITY_BOUND; y++) {
+                Assert.assertFalse(basicCity.getBuilding(x, y).isBurning());
+            }
+        }
+
+        City cappedCity = new CityImpl(CITY_BOUND, CITY_BOUND, new CityNode(0, 0));
+        FireDispatch cappedDispatch = cappedCity.getFireDispatch();
+        cappedDispatch.setFirefighters(4);
+        Pyromaniac.setFires(cappedCity, new CityNode[]{new CityNode(15, 15), new CityNode(5, 25)});
+
+        FireSpreadEngine cappedEngine = new FireSpreadEngine(cappedCity, 0.2, 3);
+        reports = cappedEngine.runInterleaved(cappedDispatch, NUM_TICKS, 1);
+
+        for (FireSpreadEngine.TickReport report : reports) {
+            Assert.assertTrue(report.dispatched <= 1);
+        }
+        Assert.assertTrue(reports.get(NUM_TICKS - 1).burning > 2 * reports.get(0).burning);
+        Assert.assertTrue(cappedEngine.burningLocations().length > 0);
+    }
+
+    /**
+     * Compares greedyDispatch and bruteForce on forks of the same snapshot in parallel,
+     * then commits the shorter plan back to the city
+     * @throws FireproofBuildingException
+     */
+    @Test
+    public void snapshotAlgoComparison() throws FireproofBuildingException {
+        final int CITY_BOUND = 10;
+        final int NUM_BURNING_BUILDINGS = 8;
+        final int NUM_TRIALS = 10;
+
+        Random rand = new Random(1);
+        for (int i = 0; i < NUM_TRIALS; i++) {
+            CityNode fireStation = new CityNode(4, 4);
+            CityImpl basicCity = new CityImpl(CITY_BOUND, CITY_BOUND, fireStation);
+
+            Set<CityNode> fireNodeSet = new HashSet<>();
+            while (fireNodeSet.size() < NUM_BURNING_BUILDINGS) {
+                CityNode fireNode = new CityNode(rand.nextInt(CITY_BOUND), rand.nextInt(CITY_BOUND));
+                if (!fireStation.equals(fireNode)) {
+                    fireNodeSet.add(fireNode);
+                }
+            }
+            CityNode[] fireNodes = fireNodeSet.toArray(new CityNode[0]);
+            Pyromaniac.setFires(basicCity, fireNodes);
+            basicCity.getFireDispatch().setFirefighters(1);
+
+            CitySnapshot snapshot = CitySnapshot.of(basicCity);
+            List<Consumer<FireDispatch>> strategies = Arrays.asList(
+                    fireDispatch -> fireDispatch.greedyDispatch(fireNodes),
+                    fireDispatch -> fireDispatch.bruteForce(fireNodes));
+            CityFork best = snapshot.evaluate(strategies);
+
+            // Forks must not leak into the city until committed
+            for (CityNode fireNode : fireNodes) {
+                Assert.assertTrue(basicCity.getBuilding(fireNode).isBurning());
+            }
+
+            CityFork bruteForce = snapshot.fork();
+            bruteForce.getFireDispatch().bruteForce(fireNodes);
+            Assert.assertEquals(bruteForce.getFireDispatch().getFleet().totalDistanceTraveled(),
+                    best.getFireDispatch().getFleet().totalDistanceTraveled());
+
+            Assert.assertTrue(snapshot.commit(best));
+            for (CityNode fireNode : fireNodes) {
+                Assert.assertFalse(basicCity.getBuilding(fireNode).isBurning());
+            }
+            Assert.assertEquals(best.getFireDispatch().getFleet().totalDistanceTraveled(),
+                    basicCity.getFireDispatch().getFleet().totalDistanceTraveled());
+
+            // The city has changed so a second fork from the old snapshot is rejected
+            Assert.assertFalse(snapshot.commit(bruteForce));
+        }
+    }
+
+    /**
+     * Logs randomized dispatches, with and without a road network, then reads the log back and checks
+     * every decision replays to the same distance and re-runs to the same moves
+     * @throws Exception
+     */
+    @Test
+    public void dispatchLogReplay() throws Exception {
+        final int CITY_BOUND = 10;
+        final int MAX_NUM_BURNING_BUILDINGS = 20;
+        final int NUM_TRIALS = 20;
+        final int MAX_FIREFIGHTERS = 8;
+        final int NUM_BLOCKED_STREETS = 12;
+
+        Path logFile = Files.createTempFile("dispatch", ".log");
+        Random rand = new Random(1);
+        long[] loggedDistances = new long[NUM_TRIALS];
+        try (DispatchLog log = new DispatchLog(logFile)) {
+            for (int i = 0; i < NUM_TRIALS; i++) {
+                CityNode fireStation = new CityNode(rand.nextInt(CITY_BOUND), rand.nextInt(CITY_BOUND));
+                CityImpl basicCity = new CityImpl(CITY_BOUND, CITY_BOUND, fireStation);
+                FireDispatchImpl fireDispatch = basicCity.getFireDispatch();
+                fireDispatch.setDecisionLog(log);
+
+                Set<CityNode> fireNodeSet = new HashSet<>();
+                int numBuildings = 1 + rand.nextInt(MAX_NUM_BURNING_BUILDINGS);
+                while (fireNodeSet.size() < numBuildings) {
+                    CityNode fireNode = new CityNode(rand.nextInt(CITY_BOUND), rand.nextInt(CITY_BOUND));
+                    if (!fireStation.equals(fireNode)) {
+                        fireNodeSet.add(fireNode);
+                    }
+                }
+                CityNode[] fireNodes = fireNodeSet.toArray(new CityNode[0]);
+                Pyromaniac.setFires(basicCity, fireNodes);
+
+                // Every other trial routes around a few blocked streets, some of which may wall in a fire
+                if (i % 2 == 1) {
+                    RoadNetwork roadNetwork = new RoadNetwork(basicCity);
+                    for (int b = 0; b < NUM_BLOCKED_STREETS; b++) {
+                        CityNode street = new CityNode(rand.nextInt(CITY_BOUND), rand.nextInt(CITY_BOUND));
+                        if (!fireStation.equals(street) && !fireNodeSet.contains(street)) {
+                            roadNetwork.setBlocked(street, true);
+                        }
+                    }
+                    fireDispatch.setRoadNetwork(roadNetwork);
+                }
+                fireDispatch.setFirefighters(rand.nextInt(MAX_FIREFIGHTERS - 1) + 1);
+                fireDispatch.dispatchFirefighters(fireNodes);
+                loggedDistances[i] = fireDispatch.getFleet().totalDistanceTraveled();
+            }
+        }
+
+        try (DispatchLogReader reader = new DispatchLogReader(logFile)) {
+            DispatchRecord record;
+            int count = 0;
+            while ((record = reader.next()) != null) {
+                Assert.assertEquals(count % 2 == 1, record.roadNetwork);
+                Assert.assertTrue(record.numMoves <= record.numFires);
+                Assert.assertEquals(loggedDistances[count], reader.verify(record));
+                Assert.assertTrue(DispatchLogReader.rerun(record));
+                count++;
+            }
+            Assert.assertEquals(NUM_TRIALS, count);
+        } finally {
+            Files.delete(logFile);
+        }
+    }
+
+    /**
+     * Logs several dispatches over one road network, blocking another street part way through, and checks
+     * the records share a network until it changes and still replay to the logged distances
+     * @throws Exception
+     */
+    @Test
+    public void dispatchLogSharesRoadNetwork() throws Exception {
+        final int CITY_BOUND = 10;
+        final int NUM_TRIALS = 6;
+        final int NUM_FIRES = 8;
+
+        Path logFile = Files.createTempFile("dispatch", ".log");
+        Random rand = new Random(2);
+        CityNode fireStation = new CityNode(0, 0);
+        CityImpl basicCity = new CityImpl(CITY_BOUND, CITY_BOUND, fireStation);
+        FireDispatchImpl fireDispatch = basicCity.getFireDispatch();
+        RoadNetwork roadNetwork = new RoadNetwork(basicCity);
+        roadNetwork.setBlocked(new CityNode(5, 5), true);
+        fireDispatch.setRoadNetwork(roadNetwork);
+        fireDispatch.setFirefighters(2);
+
+        long[] loggedDistances = new long[NUM_TRIALS];
+        try (DispatchLog log = new DispatchLog(logFile)) {
+            fireDispatch.setDecisionLog(log);
+            for (int i = 0; i < NUM_TRIALS; i++) {
+                if (i == NUM_TRIALS / 2) {
+                    roadNetwork.setBlocked(new CityNode(5, 6), true);
+                }
+                Set<CityNode> fireNodeSet = new HashSet<>();
+                while (fireNodeSet.size() < NUM_FIRES) {
+                    CityNode fireNode = new CityNode(rand.nextInt(CITY_BOUND), rand.nextInt(CITY_BOUND));
+                    if (!fireStation.equals(fireNode) && !roadNetwork.isBlocked(fireNode)) {
+                        fireNodeSet.add(fireNode);
+                    }
+                }
+                CityNode[] fireNodes = fireNodeSet.toArray(new CityNode[0]);
+                Pyromaniac.setFires(basicCity, fireNodes);
+                long before = fireDispatch.getFleet().totalDistanceTraveled();
+                fireDispatch.dispatchFirefighters(fireNodes);
+                loggedDistances[i] = fireDispatch.getFleet().totalDistanceTraveled() - before;
+            }
+        }
+
+        try (DispatchLogReader reader = new DispatchLogReader(logFile)) {
+            DispatchRecord record;
+            int count = 0;
+            while ((record = reader.next()) != null) {
+                Assert.assertTrue(record.roadNetwork);
+                Assert.assertEquals(count < NUM_TRIALS / 2 ? 0 : 1, record.networkId);
+                Assert.assertEquals(count < NUM_TRIALS / 2 ? 1 : 2, record.numBlocked);
+                Assert.assertEquals(loggedDistances[count], reader.verify(record));
+                Assert.assertTrue(DispatchLogReader.rerun(record));
+                count++;
+            }
+            Assert.assertEquals(NUM_TRIALS, count);
+        } finally {
+            Files.delete(logFile);
+        }
+    }
+
+    /**
+     * Writes randomized incidents to a file and streams them back through a small buffer,
+     * then replays them against a city
+     * @throws Exception
+     */
+    @Test
+    public void incidentFileStreaming() throws Exception {
+        final int CITY_BOUND = 10;
+        final int MAX_NUM_BURNING_BUILDINGS = 20;
+        final int NUM_BATCHES = 50;
+
+        Path incidentFile = Files.createTempFile("incidents", ".bin");
+        Random rand = new Random(1);
+        CityNode fireStation = new CityNode(0, 0);
+        List<CityNode[]> batches = new ArrayList<>();
+        try (IncidentFileWriter writer = new IncidentFileWriter(incidentFile, CITY_BOUND, CITY_BOUND)) {
+            for (int i = 0; i < NUM_BATCHES; i++) {
+                Set<CityNode> fireNodeSet = new HashSet<>();
+                int numBuildings = rand.nextInt(MAX_NUM_BURNING_BUILDINGS);
+                while (fireNodeSet.size() < numBuildings) {
+                    CityNode fireNode = new CityNode(rand.nextInt(CITY_BOUND), rand.nextInt(CITY_BOUND));
+                    if (!fireStation.equals(fireNode)) {
+                        fireNodeSet.add(fireNode);
+                    }
+                }
+                CityNode[] fireNodes = fireNodeSet.toArray(new CityNode[0]);
+                writer.writeBatch(fireNodes);
+                batches.add(fireNodes);
+
+                // A batch with a fire outside the city is rejected without leaving part of it in the file
+                if (i == NUM_BATCHES / 2) {
+                    try {
+                        writer.writeBatch(new CityNode(1, 1), new CityNode(CITY_BOUND, 0));
+                        fail("Expected IllegalArgumentException");
+                    } catch (IllegalArgumentException e) {
+                        // Expected
+                    }
+                }
+            }
+        }
+
+        try {
+            // A buffer smaller than most batches forces refills in the middle of a batch
+            try (IncidentFileReader reader = new IncidentFileReader(incidentFile, 32)) {
+                Assert.assertEquals(CITY_BOUND, reader.getXDimension());
+                int[] xs = new int[MAX_NUM_BURNING_BUILDINGS];
+                int[] ys = new int[MAX_NUM_BURNING_BUILDINGS];
+                for (CityNode[] expected : batches) {
+                    int count = reader.nextBatch(xs, ys);
+                    Assert.assertEquals(expected.length, count);
+                    for (int i = 0; i < count; i++) {
+                        Assert.assertEquals(expected[i], new CityNode(xs[i], ys[i]));
+                    }
+                }
+                Assert.assertEquals(-1, reader.nextBatch(xs, ys));
+            }
+
+            City basicCity = new CityImpl(CITY_BOUND, CITY_BOUND, fireStation);
+            basicCity.getFireDispatch().setFirefighters(3);
+            try (IncidentFileReader reader = new IncidentFileReader(incidentFile)) {
+                long expectedFires = 0;
+                for (CityNode[] batch : batches) {
+                    expectedFires += batch.length;
+                }
+                Assert.assertEquals(expectedFires, reader.replay(basicCity));
+            }
+            for (int x = 0; x < CITY_BOUND; x++) {
+                for (int y = 0; y < CITY_BOUND; y++) {
+                    Assert.assertFalse(basicCity.getBuilding(x, y).isBurning());
+                }
+            }
+        } finally {
+            Files.delete(incidentFile);
+        }
+    }
+
+    /**
+     * Every distribution must give distinct, in bounds fires that avoid the FireStation,
+     * and the same seed must give the same fires
+     */
+    @Test
+    public void workloadGeneratorDistinct() {
+        final int CITY_BOUND = 10000;
+        final int NUM_BURNING_BUILDINGS = 100000;
+
+        CityNode fireStation = new CityNode(5000, 5000);
+        for (WorkloadGenerator.Distribution distribution : WorkloadGenerator.Distribution.values()) {
+            int[] xs = new int[NUM_BURNING_BUILDINGS];
+            int[] ys = new int[NUM_BURNING_BUILDINGS];
+            new WorkloadGenerator(CITY_BOUND, CITY_BOUND, fireStation, 1)
+                    .generate(distribution, NUM_BURNING_BUILDINGS, xs, ys);
+
+            Set<Long> seen = new HashSet<>();
+            for (int i = 0; i < NUM_BURNING_BUILDINGS; i++) {
+                Assert.assertTrue(xs[i] >= 0 && xs[i] < CITY_BOUND && ys[i] >= 0 && ys[i] < CITY_BOUND);
+                Assert.assertFalse(xs[i] == fireStation.getX() && ys[i] == fireStation.getY());
+                Assert.assertTrue(seen.add((long) xs[i] * CITY_BOUND + ys[i]));
+            }
+
+            int[] xsAgain = new int[NUM_BURNING_BUILDINGS];
+            int[] ysAgain = new int[NUM_BURNING_BUILDINGS];
+            new WorkloadGenerator(CITY_BOUND, CITY_BOUND, fireStation, 1)
+                    .generate(distribution, NUM_BURNING_BUILDINGS, xsAgain, ysAgain);
+            Assert.assertArrayEquals(xs, xsAgain);
+            Assert.assertArrayEquals(ys, ysAgain);
+        }
+
+        // A sample of every free cell still works
+        CityNode[] everyCell = new WorkloadGenerator(4, 4, new CityNode(0, 0), 1)
+                .generate(WorkloadGenerator.Distribution.CLUSTERED, 15);
+        Assert.assertEquals(15, new HashSet<>(Arrays.asList(everyCell)).size());
+    }
+
+    /**
+     * Runs the load harness against a large bitmap backed city
+     * @throws FireproofBuildingException
+     */
+    @Test
+    public void loadHarnessLargeCity() throws FireproofBuildingException {
+        City city = new ConcurrentCity(10000, 10000, new CityNode(5000, 5000));
+        city.getFireDispatch().setFirefighters(8);
+
+        LoadHarness harness = new LoadHarness(city, 1);
+        LoadHarness.Report report = harness.run(WorkloadGenerator.Distribution.HOTSPOT, 20, 50);
+
+        Assert.assertEquals(1000, report.fires);
+        Assert.assertTrue(report.p50Nanos <= report.p99Nanos && report.p99Nanos <= report.maxNanos);
+        Assert.assertTrue(report.distanceTraveled > 0);
+        System.out.println(report);
+    }
+
+    /**
+     * A single firefighter sweeping a large number of fires along the space filling curve
+     * should stay within 2% of greedy in distance
+     * @throws FireproofBuildingException
+     */
+    @Test
+    public void spaceFillingCurveSweep() throws FireproofBuildingException {
+        final int CITY_BOUND = 1000;
+        final int NUM_BURNING_BUILDINGS = 5000;
+
+        CityNode fireStation = new CityNode(500, 500);
+        CityNode[] fireNodes = new WorkloadGenerator(CITY_BOUND, CITY_BOUND, fireStation, 1)
+                .generate(WorkloadGenerator.Distribution.UNIFORM, NUM_BURNING_BUILDINGS);
+
+        long[] distances = new long[2];
+        long[] times = new long[2];
+        for (int i = 0; i < 2; i++) {
+            CityImpl basicCity = new CityImpl(CITY_BOUND, CITY_BOUND, fireStation);
+            FireDispatchImpl fireDispatch = basicCity.getFireDispatch();
+            Pyromaniac.setFires(basicCity, fireNodes);
+            fireDispatch.setFirefighters(1);
+
+            long startTime = System.nanoTime();
+            if (i == 0) {
+                fireDispatch.greedyDispatch(fireNodes);
+            } else {
+                fireDispatch.dispatchFirefighters(fireNodes);
+            }
+            times[i] = System.nanoTime() - startTime;
+            distances[i] = fireDispatch.getFleet().totalDistanceTraveled();
+
+            for (CityNode fireNode : fireNodes) {
+                Assert.assertFalse(basicCity.getBuilding(fireNode).isBurning());
+            }
+        }
+        System.out.println("greedy(pathLength: " + distances[0] + " time: " + times[0]);
+        System.out.println("spaceFillingCurve(pathLength: " + distances[1] + " time: " + times[1]);
+        Assert.assertTrue(distances[1] <= distances[0] * 1.02);
+    }
+
+    /**
+     * Several firefighters split the curve route and still put every fire out
+     * @throws FireproofBuildingException
+     */
+    @Test
+    public void spaceFillingCurveSplit() throws FireproofBuildingException {
+        final int CITY_BOUND = 200;
+
+        CityNode fireStation = new CityNode(100, 100);
+        CityImpl basicCity = new CityImpl(CITY_BOUND, CITY_BOUND, fireStation);
+        CityNode[] fireNodes = new WorkloadGenerator(CITY_BOUND, CITY_BOUND, fireStation, 2)
+                .generate(WorkloadGenerator.Distribution.CLUSTERED, 400);
+        Pyromaniac.setFires(basicCity, fireNodes);
+
+        FireDispatchImpl fireDispatch = basicCity.getFireDispatch();
+        fireDispatch.setFirefighters(6);
+        fireDispatch.spaceFillingCurveDispatch(fireNodes);
+
+        int busy = 0;
+        for (Firefighter firefighter : fireDispatch.getFirefighters()) {
+            if (firefighter.distanceTraveled() > 0)
+                busy++;
+        }
+        Assert.assertTrue(busy > 1);
+        for (CityNode fireNode : fireNodes) {
+            Assert.assertFalse(basicCity.getBuilding(fireNode).isBurning());
+        }
+    }
+
+    /**
+     * Compares total distance of the savings routes against greedy with several firefighters
+     * @throws FireproofBuildingException
+     */
+    @Test
+    public void savingsVsGreedy() throws FireproofBuildingException {
+        final int CITY_BOUND = 200;
+        final int NUM_FIREFIGHTERS = 8;
+        final int NUM_BURNING_BUILDINGS = 600;
+
+        CityNode fireStation = new CityNode(100, 100);
+        long[] totals = new long[2];
+        for (WorkloadGenerator.Distribution distribution : WorkloadGenerator.Distribution.values()) {
+            CityNode[] fireNodes = new WorkloadGenerator(CITY_BOUND, CITY_BOUND, fireStation, 7)
+                    .generate(distribution, NUM_BURNING_BUILDINGS);
+
+            for (int i = 0; i < 2; i++) {
+                CityImpl basicCity = new CityImpl(CITY_BOUND, CITY_BOUND, fireStation);
+                FireDispatchImpl fireDispatch = basicCity.getFireDispatch();
+                Pyromaniac.setFires(basicCity, fireNodes);
+                fireDispatch.setFirefighters(NUM_FIREFIGHTERS);
+
+                if (i == 0) {
+                    fireDispatch.greedyDispatch(fireNodes);
+                } else {
+                    fireDispatch.savingsDispatch(fireNodes);
+                }
+                totals[i] += fireDispatch.getFleet().totalDistanceTraveled();
+
+                for (CityNode fireNode : fireNodes) {
+                    Assert.assertFalse(basicCity.getBuilding(fireNode).isBurning());
+                }
+            }
+        }
+        System.out.println("greedy(pathLength: " + totals[0] + ") savings(pathLength: " + totals[1] + ")");
+        Assert.assertTrue(totals[1] <= totals[0]);
+    }
+
+    /**
+     * City scale incident on a large grid: the block by block routes beat the space filling curve
+     * and put every fire out
+     * @throws FireproofBuildingException
+     */
+    @Test
+    public void hierarchicalCityScale() throws FireproofBuildingException {
+        final int CITY_BOUND = 3000;
+        final int NUM_FIREFIGHTERS = 16;
+        final int NUM_BURNING_BUILDINGS = 40000;
+
+        CityNode fireStation = new CityNode(1500, 1500);
+        CityNode[] fireNodes = new WorkloadGenerator(CITY_BOUND, CITY_BOUND, fireStation, 13)
+                .generate(WorkloadGenerator.Distribution.CLUSTERED, NUM_BURNING_BUILDINGS);
+
+        long[] distances = new long[2];
+        for (int i = 0; i < 2; i++) {
+            City city = new ConcurrentCity(CITY_BOUND, CITY_BOUND, fireStation);
+            FireDispatch fireDispatch = city.getFireDispatch();
+            Pyromaniac.setFires(city, fireNodes);
+            fireDispatch.setFirefighters(NUM_FIREFIGHTERS);
+
+            long startTime = System.nanoTime();
+            if (i == 0) {
+                fireDispatch.spaceFillingCurveDispatch(fireNodes);
+            } else {
+                fireDispatch.dispatchFirefighters(fireNodes);
+            }
+            System.out.println((i == 0 ? "spaceFillingCurve" : "hierarchical") + "(time: " + (System.nanoTime() - startTime));
+            for (Firefighter firefighter : fireDispatch.getFirefighters())
+                distances[i] += firefighter.distanceTraveled();
+
+            for (CityNode fireNode : fireNodes) {
+                Assert.assertFalse(city.getBuilding(fireNode).isBurning());
+            }
+        }
+        Assert.assertTrue(distances[1] < distances[0]);
+    }
+
+    /**
+     * Candidate lists match a brute force k nearest search, before and after removing buildings
+     */
+    @Test
+    public void candidateListsMatchBruteForce() {
+        final int CITY_BOUND = 40;
+        final int NUM_BUILDINGS = 800;
+        final int K = 8;
+
+        CityNode fireStation = new CityNode(0, 0);
+        for (WorkloadGenerator.Distribution distribution : WorkloadGenerator.Distribution.values()) {
+            int[] xs = new int[NUM_BUILDINGS];
+            int[] ys = new int[NUM_BUILDINGS];
+            new WorkloadGenerator(CITY_BOUND, CITY_BOUND, fireStation, 3).generate(distribution, NUM_BUILDINGS, xs, ys);
+
+            CandidateLists candidates = new CandidateLists(xs, ys, NUM_BUILDINGS, K);
+            boolean[] removed = new boolean[NUM_BUILDINGS];
+            Random random = new Random(5);
+            int[] out = new int[K];
+
+            for (int round = 0; round < 3; round++) {
+                for (int b = 0; b < NUM_BUILDINGS; b++) {
+                    int[] expected = nearestByBruteForce(xs, ys, removed, xs[b], ys[b], b, K);
+                    int found = candidates.neighbours(b, out);
+                    Assert.assertTrue(found >= Math.min((K + 1) / 2, expected.length));
+                    for (int j = 0; j < found; j++)
+                        Assert.assertEquals(expected[j], out[j]);
+                }
+
+                int x = random.nextInt(CITY_BOUND);
+                int y = random.nextInt(CITY_BOUND);
+                int[] nearest = nearestByBruteForce(xs, ys, removed, x, y, -1, 1);
+                Assert.assertEquals(nearest.length == 0 ? CandidateLists.NONE : nearest[0], candidates.nearest(x, y));
+
+                // Put out most of the remaining fires
+                for (int b = 0; b < NUM_BUILDINGS; b++) {
+                    if (!removed[b] && random.nextInt(10) < 7) {
+                        removed[b] = true;
+                        candidates.remove(b);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Branch and bound matches brute force for one firefighter, matches an exhaustive split of the fires
+     * between two firefighters and reports a gap when its budget runs out
+     * @throws FireproofBuildingException
+     */
+    @Test
+    public void branchAndBoundProvesOptimum() throws FireproofBuildingException {
+        final int CITY_BOUND = 30;
+        CityNode fireStation = new CityNode(15, 15);
+
+        for (int seed = 0; seed < 6; seed++) {
+            int numFirefighters = 1 + seed % 2;
+            CityNode[] fireNodes = new WorkloadGenerator(CITY_BOUND, CITY_BOUND, fireStation, seed)
+                    .generate(WorkloadGenerator.Distribution.values()[seed % 3], 8);
+
+            long[] distances = new long[2];
+            for (int i = 0; i < 3 - numFirefighters; i++) {
+                CityImpl basicCity = new CityImpl(CITY_BOUND, CITY_BOUND, fireStation);
+                FireDispatchImpl fireDispatch = basicCity.getFireDispatch();
+                Pyromaniac.setFires(basicCity, fireNodes);
+                fireDispatch.setFirefighters(numFirefighters);
+                fireDispatch.setSearchBudget(10000, Long.MAX_VALUE, 1);
+
+                if (i == 0) {
+                    fireDispatch.branchAndBoundDispatch(fireNodes);
+                    Assert.assertEquals(0, fireDispatch.getOptimalityGap(), 0);
+                } else {
+                    fireDispatch.bruteForce(fireNodes);
+                }
+                distances[i] = fireDispatch.getFleet().totalDistanceTraveled();
+
+                for (CityNode fireNode : fireNodes) {
+                    Assert.assertFalse(basicCity.getBuilding(fireNode).isBurning());
+                }
+            }
+            if (numFirefighters == 2)
+                distances[1] = twoFirefighterOptimum(fireStation, fireNodes);
+            Assert.assertEquals(distances[1], distances[0]);
+        }
+
+        // Out of budget, the plan is no worse than greedy and the gap says how far off it may be
+        CityNode[] fireNodes = new WorkloadGenerator(100, 100, new CityNode(50, 50), 9)
+                .generate(WorkloadGenerator.Distribution.UNIFORM, 24);
+        long[] distances = new long[2];
+        for (int i = 0; i < 2; i++) {
+            CityImpl basicCity = new CityImpl(100, 100, new CityNode(50, 50));
+            FireDispatchImpl fireDispatch = basicCity.getFireDispatch();
+            Pyromaniac.setFires(basicCity, fireNodes);
+            fireDispatch.setFirefighters(4);
+            fireDispatch.setSearchBudget(Long.MAX_VALUE, 50, 1);
+
+            if (i == 0) {
+                fireDispatch.greedyDispatch(fireNodes);
+            } else {
+                fireDispatch.branchAndBoundDispatch(fireNodes);
+                Assert.assertTrue(fireDispatch.getOptimalityGap() > 0 && fireDispatch.getOptimalityGap() < 1);
+            }
+            distances[i] = fireDispatch.getFleet().totalDistanceTraveled();
+        }
+        System.out.println("greedy(pathLength: " + distances[0] + ") branchAndBound(pathLength: " + distances[1] + ")");
+        Assert.assertTrue(distances[1] <= distances[0]);
+    }
+
+    /**
+     * The set partition plans match a proven branch and bound optimum, including when the firefighters
+     * no longer start together, and small incidents dispatched normally use them
+     * @throws FireproofBuildingException
+     */
+    @Test
+    public void setPartitionIsOptimal() throws FireproofBuildingException {
+        final int CITY_BOUND = 40;
+        CityNode fireStation = new CityNode(20, 20);
+
+        for (int seed = 0; seed < 10; seed++) {
+            int numFirefighters = 2 + seed % 5;
+            int numScattering = seed % 2 == 0 ? 0 : numFirefighters;
+            CityNode[] nodes = new WorkloadGenerator(CITY_BOUND, CITY_BOUND, fireStation, 50 + seed)
+                    .generate(WorkloadGenerator.Distribution.values()[seed % 3], numScattering + 8 + numFirefighters);
+            CityNode[] firstFires = Arrays.copyOfRange(nodes, 0, numScattering);
+            CityNode[] fireNodes = Arrays.copyOfRange(nodes, firstFires.length, nodes.length);
+
+            long[] distances = new long[2];
+            for (int i = 0; i < 2; i++) {
+                CityImpl basicCity = new CityImpl(CITY_BOUND, CITY_BOUND, fireStation);
+                FireDispatchImpl fireDispatch = basicCity.getFireDispatch();
+                fireDispatch.setFirefighters(numFirefighters);
+                fireDispatch.setSearchBudget(10000, Long.MAX_VALUE, 1);
+
+                // Scatter the firefighters with an earlier incident
+                Pyromaniac.setFires(basicCity, firstFires);
+                fireDispatch.greedyDispatch(firstFires);
+                long before = fireDispatch.getFleet().totalDistanceTraveled();
+
+                Pyromaniac.setFires(basicCity, fireNodes);
+                if (i == 0) {
+                    fireDispatch.dispatchFirefighters(fireNodes);
+                } else {
+                    // A finite budget too large to hold in nanoseconds is as good as none
+                    fireDispatch.setSearchBudget(Long.MAX_VALUE / 2, Long.MAX_VALUE, 1);
+                    fireDispatch.branchAndBoundDispatch(fireNodes);
+                    Assert.assertEquals(0, fireDispatch.getOptimalityGap(), 0);
+                }
+                distances[i] = fireDispatch.getFleet().totalDistanceTraveled() - before;
+
+                for (CityNode fireNode : fireNodes) {
+                    Assert.assertFalse(basicCity.getBuilding(fireNode).isBurning());
+                }
+            }
+            Assert.assertEquals(distances[1], distances[0]);
+        }
+    }
+
+    /**
+     * Held-Karp open paths from the FireStation over every subset, then the best split into two
+     */
+    private static long twoFirefighterOptimum(CityNode fireStation, CityNode[] fireNodes) {
+        int m = fireNodes.length;
+        long[][] path = new long[1 << m][m];
+        for (long[] row : path)
+            Arrays.fill(row, Long.MAX_VALUE);
+        for (int i = 0; i < m; i++)
+            path[1 << i][i] = CityNode.absDistance(fireStation, fireNodes[i]);
+        for (int mask = 1; mask < 1 << m; mask++) {
+            for (int last = 0; last < m; last++) {
+                if (path[mask][last] == Long.MAX_VALUE)
+                    continue;
+                for (int next = 0; next < m; next++) {
+                    if ((mask & 1 << next) == 0)
+                        path[mask | 1 << next][next] = Math.min(path[mask | 1 << next][next],
+                                path[mask][last] + CityNode.absDistance(fireNodes[last], fireNodes[next]));
+                }
+            }
+        }
+
+        long best = Long.MAX_VALUE;
+        for (int mask = 0; mask < 1 << m; mask++) {
+            long cost = 0;
+            for (int part : new int[]{mask, ~mask & ((1 << m) - 1)}) {
+                long shortest = part == 0 ? 0 : Long.MAX_VALUE;
+                for (int last = 0; last < m; last++)
+                    shortest = Math.min(shortest, path[part][last]);
+                cost += shortest;
+            }
+            best = Math.min(best, cost);
+        }
+        return best;
+    }
+
+    private static int[] nearestByBruteForce(int[] xs, int[] ys, boolean[] removed, int x, int y, int exclude, int k) {
+        return java.util.stream.IntStream.range(0, xs.length)
+                .filter(b -> b != exclude && !removed[b])
+                .boxed()
+                .sorted(Comparator.<Integer>comparingInt(b -> Math.abs(x - xs[b]) + Math.abs(y - ys[b]))
+                        .thenComparingInt(b -> b))
+                .limit(k)
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
 }
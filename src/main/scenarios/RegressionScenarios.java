@@ -0,0 +1,333 @@
+package main.scenarios;
+
+import main.api.*;
+import main.api.exceptions.FireproofBuildingException;
+import main.firefighters.DistanceKernel;
+import main.firefighters.FireDispatchImpl;
+import main.firefighters.HeldKarp;
+import main.firefighters.Solver;
+import main.impls.CityImpl;
+import main.simulation.WorkloadGenerator;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Runs a fixed seeded corpus through every solver and compares distance and runtime against
+ * the recorded baseline in regression_baseline.csv. Instances small enough for Held-Karp are also
+ * checked against the exact optimum.
+ *
+ * Distances are worked out in parallel, then each instance is timed on its own so instances do not
+ * compete for cores. A solver whose runtimes on one size of instance are more than half again their
+ * baselines fails.
+ *
+ * Entries missing from the baseline fail the run. Run with -Dregression.update=true to record every
+ * entry after adding a solver or an intended change, and with -Dregression.baseline=path to use a
+ * different baseline file. By default the baseline is found next to this class on the classpath, or
+ * under src/main/scenarios in the working directory or one of its parents
+ */
+public class RegressionScenarios {
+  private static final String BASELINE_NAME = "regression_baseline.csv";
+  private static final String BASELINE_SOURCE_DIR = "src/main/scenarios";
+  private static final double DISTANCE_TOLERANCE = 0.01;
+  // Slower than the baseline by more than this fraction of it fails, so a doubling never passes
+  private static final double RUNTIME_TOLERANCE = 0.5;
+  private static final int SAMPLE_ROUNDS = 3;
+  private static final int RUNTIME_RETRIES = 5;
+  private static final long MIN_SAMPLE_NANOS = 5_000_000;
+  private static final int MAX_BATCH = 1 << 16;
+  // Single worker with an iteration budget so the search solvers are repeatable
+  private static final long SEARCH_ITERATIONS = 2000;
+
+  /**
+   * One seeded incident in the corpus
+   */
+  private static class Instance {
+    final String name;
+    final int cityBound;
+    final int numFirefighters;
+    final int numFires;
+    final long seed;
+
+    Instance(String name, int cityBound, int numFirefighters, int numFires, long seed) {
+      this.name = name;
+      this.cityBound = cityBound;
+      this.numFirefighters = numFirefighters;
+      this.numFires = numFires;
+      this.seed = seed;
+    }
+
+    /**
+     * @return size class of the instance, the name up to its number
+     */
+    String size() {
+      return name.substring(0, name.lastIndexOf('-'));
+    }
+  }
+
+  /**
+   * Measured result of one solver on one instance
+   */
+  private static class Result {
+    final Instance instance;
+    final Solver solver;
+    final String key;
+    final long distance;
+    final long optimum;
+    CityNode[] fireNodes;
+    int batch = 1;
+    long runtimeNanos = Long.MAX_VALUE;
+
+    Result(Instance instance, Solver solver, long distance, long optimum) {
+      this.instance = instance;
+      this.solver = solver;
+      this.key = instance.name + "/" + solver;
+      this.distance = distance;
+      this.optimum = optimum;
+    }
+  }
+
+  @Test
+  public void solverRegression() throws IOException {
+    boolean update = Boolean.getBoolean("regression.update");
+    Path baselineFile = baselineFile();
+    if (!update && !Files.exists(baselineFile))
+      Assert.fail("No regression baseline at " + baselineFile.toAbsolutePath() +
+          ", run with -Dregression.update=true to record one");
+    Map<String, long[]> baseline = readBaseline(baselineFile);
+
+    List<Result> results = corpus().parallelStream()
+        .flatMap(instance -> Arrays.stream(Solver.values())
+            .filter(solver -> solver.supports(instance.numFirefighters, instance.numFires))
+            .map(solver -> run(instance, solver)))
+        .collect(Collectors.toList());
+    time(results);
+
+    List<String> failures = new ArrayList<>();
+    boolean changed = false;
+    for (Result result : results) {
+      if (result.optimum >= 0 && result.distance < result.optimum)
+        failures.add(result.key + " beat the exact optimum " + result.optimum + ": " + result.distance);
+      if (result.key.endsWith("/" + Solver.BRUTE_FORCE) && result.distance != result.optimum)
+        failures.add(result.key + " is exact but found " + result.distance + " instead of " + result.optimum);
+
+      long[] recorded = baseline.get(result.key);
+      if (update) {
+        baseline.put(result.key, new long[]{result.distance, result.runtimeNanos});
+        changed = true;
+        continue;
+      }
+      if (recorded == null) {
+        failures.add(result.key + " has no baseline, run with -Dregression.update=true to record it");
+        continue;
+      }
+      if (result.distance > recorded[0] * (1 + DISTANCE_TOLERANCE))
+        failures.add(result.key + " distance " + result.distance + " is worse than baseline " + recorded[0]);
+    }
+    if (!update)
+      checkRuntimes(results, baseline, failures);
+
+    if (changed)
+      writeBaseline(baselineFile, baseline);
+    Assert.assertTrue(String.join("\n", failures), failures.isEmpty());
+  }
+
+  /**
+   * Compares each solver's runtimes on each size of instance with their baselines. A single timing
+   * can be off by a factor of two from one JVM to the next, so the check is on the geometric mean of
+   * runtime over baseline across the group, which holds within a few percent. A group over tolerance
+   * is timed again before it fails, a real regression stays slow
+   */
+  private static void checkRuntimes(List<Result> results, Map<String, long[]> baseline, List<String> failures) {
+    Map<String, List<Result>> groups = new TreeMap<>();
+    for (Result result : results) {
+      if (baseline.containsKey(result.key))
+        groups.computeIfAbsent(result.instance.size() + "/" + result.solver, g -> new ArrayList<>()).add(result);
+    }
+
+    for (Map.Entry<String, List<Result>> group : groups.entrySet()) {
+      double ratio = runtimeRatio(group.getValue(), baseline);
+      for (int retry = 0; retry < RUNTIME_RETRIES && ratio > 1 + RUNTIME_TOLERANCE; retry++) {
+        for (Result result : group.getValue())
+          result.runtimeNanos = Math.min(result.runtimeNanos, sample(result, true) / result.batch);
+        ratio = runtimeRatio(group.getValue(), baseline);
+      }
+      if (ratio > 1 + RUNTIME_TOLERANCE)
+        failures.add(String.format("%s runtime is %.2fx its baseline over %d instances", group.getKey(), ratio,
+            group.getValue().size()));
+    }
+  }
+
+  private static double runtimeRatio(List<Result> group, Map<String, long[]> baseline) {
+    double logSum = 0;
+    for (Result result : group)
+      logSum += Math.log((double) Math.max(1, result.runtimeNanos) / Math.max(1, baseline.get(result.key)[1]));
+    return Math.exp(logSum / group.size());
+  }
+
+  /**
+   * Fixed corpus: Held-Karp sized single firefighter incidents, then progressively larger
+   * multi firefighter incidents across every fire distribution
+   */
+  private static List<Instance> corpus() {
+    List<Instance> corpus = new ArrayList<>();
+    for (int seed = 0; seed < 8; seed++)
+      corpus.add(new Instance("exact-" + seed, 10, 1, 4 + seed % 7, seed));
+    for (int seed = 0; seed < 6; seed++)
+      corpus.add(new Instance("small-" + seed, 20, 1 + seed % 4, 8 + 2 * seed, 100 + seed));
+    for (int seed = 0; seed < 4; seed++)
+      corpus.add(new Instance("medium-" + seed, 100, 4 + seed, 100 + 50 * seed, 200 + seed));
+    corpus.add(new Instance("large-0", 500, 16, 500, 300));
+    corpus.add(new Instance("sweep-0", 1000, 1, 5000, 400));
+    corpus.add(new Instance("city-0", 1000, 8, 12000, 501));
+    return corpus;
+  }
+
+  private static Result run(Instance instance, Solver solver) {
+    CityNode fireStation = fireStation(instance);
+    CityNode[] fireNodes = fires(instance);
+    CityImpl city = city(instance, fireNodes);
+    city.getFireDispatch().dispatch(solver, fireNodes);
+    for (CityNode fireNode : fireNodes)
+      Assert.assertFalse(instance.name + "/" + solver + " left a fire burning", city.getBuilding(fireNode).isBurning());
+
+    long optimum = -1;
+    if (instance.numFirefighters == 1 && instance.numFires <= 12)
+      optimum = exactOptimum(fireStation, fireNodes);
+    return new Result(instance, solver, city.getFireDispatch().getFleet().totalDistanceTraveled(), optimum);
+  }
+
+  /**
+   * Times every result with nothing else running. A first round over the corpus warms every solver up
+   * and finds how many dispatches in a row it takes for a sample to last {@link #MIN_SAMPLE_NANOS}.
+   * Each later round takes one sample of every result, so the samples of a result are spread over the
+   * whole run rather than bunched into one slow stretch of it, and the best per dispatch average wins
+   */
+  private static void time(List<Result> results) {
+    for (Result result : results) {
+      result.fireNodes = fires(result.instance);
+      while (sample(result, false) < MIN_SAMPLE_NANOS && result.batch < MAX_BATCH)
+        result.batch *= 2;
+    }
+    for (int round = 0; round < SAMPLE_ROUNDS; round++) {
+      for (Result result : results)
+        result.runtimeNanos = Math.min(result.runtimeNanos, sample(result, true) / result.batch);
+    }
+  }
+
+  /**
+   * Sets up the cities before the clock starts and dispatches on each of them
+   *
+   * @param settle whether to collect first, so the cities are not copied by a collection mid sample
+   * @return time taken by every dispatch together, in nanoseconds
+   */
+  private static long sample(Result result, boolean settle) {
+    CityImpl[] cities = new CityImpl[result.batch];
+    for (int i = 0; i < result.batch; i++)
+      cities[i] = city(result.instance, result.fireNodes);
+    if (settle)
+      System.gc();
+    long startTime = System.nanoTime();
+    for (CityImpl city : cities)
+      city.getFireDispatch().dispatch(result.solver, result.fireNodes);
+    return System.nanoTime() - startTime;
+  }
+
+  private static CityNode fireStation(Instance instance) {
+    return new CityNode(instance.cityBound / 2, instance.cityBound / 2);
+  }
+
+  private static CityNode[] fires(Instance instance) {
+    WorkloadGenerator.Distribution distribution =
+        WorkloadGenerator.Distribution.values()[(int) (instance.seed % WorkloadGenerator.Distribution.values().length)];
+    return new WorkloadGenerator(instance.cityBound, instance.cityBound, fireStation(instance), instance.seed)
+        .generate(distribution, instance.numFires);
+  }
+
+  /**
+   * A fresh city with the instance's fires set and its firefighters at the FireStation
+   */
+  private static CityImpl city(Instance instance, CityNode[] fireNodes) {
+    CityImpl city = new CityImpl(instance.cityBound, instance.cityBound, fireStation(instance));
+    try {
+      Pyromaniac.setFires(city, fireNodes);
+    } catch (FireproofBuildingException e) {
+      throw new IllegalStateException(e);
+    }
+    FireDispatchImpl fireDispatch = city.getFireDispatch();
+    fireDispatch.setFirefighters(instance.numFirefighters);
+    fireDispatch.setSearchBudget(Long.MAX_VALUE, SEARCH_ITERATIONS, 1);
+    return city;
+  }
+
+  private static long exactOptimum(CityNode fireStation, CityNode[] fireNodes) {
+    int m = fireNodes.length;
+    int[] xs = new int[m];
+    int[] ys = new int[m];
+    DistanceKernel.toArrays(fireNodes, xs, ys);
+
+    int[] stationDist = new int[m];
+    int[][] pairDist = new int[m][m];
+    DistanceKernel.distanceRow(fireStation.getX(), fireStation.getY(), xs, ys, stationDist, m);
+    for (int i = 0; i < m; i++)
+      DistanceKernel.distanceRow(xs[i], ys[i], xs, ys, pairDist[i], m);
+    return HeldKarp.openPathCost(stationDist, pairDist, m);
+  }
+
+  /**
+   * Finds the baseline without depending on where the tests are run from. When nothing is found the
+   * source tree location under the working directory is returned, for an update to create
+   */
+  private static Path baselineFile() {
+    String configured = System.getProperty("regression.baseline");
+    if (configured != null)
+      return Paths.get(configured);
+
+    URL resource = RegressionScenarios.class.getResource(BASELINE_NAME);
+    if (resource != null && "file".equals(resource.getProtocol())) {
+      try {
+        return Paths.get(resource.toURI());
+      } catch (URISyntaxException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    for (Path dir = Paths.get("").toAbsolutePath(); dir != null; dir = dir.getParent()) {
+      Path candidate = dir.resolve(BASELINE_SOURCE_DIR).resolve(BASELINE_NAME);
+      if (Files.exists(candidate))
+        return candidate;
+    }
+    return Paths.get(BASELINE_SOURCE_DIR, BASELINE_NAME);
+  }
+
+  private static Map<String, long[]> readBaseline(Path baselineFile) throws IOException {
+    Map<String, long[]> baseline = new TreeMap<>();
+    if (!Files.exists(baselineFile))
+      return baseline;
+
+    for (String line : Files.readAllLines(baselineFile, StandardCharsets.UTF_8)) {
+      if (line.isEmpty() || line.startsWith("#"))
+        continue;
+      String[] fields = line.split(",");
+      baseline.put(fields[0], new long[]{Long.parseLong(fields[1]), Long.parseLong(fields[2])});
+    }
+    return baseline;
+  }
+
+  private static void writeBaseline(Path baselineFile, Map<String, long[]> baseline) throws IOException {
+    List<String> lines = new ArrayList<>();
+    lines.add("# instance/solver,distance,runtimeNanos");
+    for (Map.Entry<String, long[]> entry : baseline.entrySet())
+      lines.add(entry.getKey() + "," + entry.getValue()[0] + "," + entry.getValue()[1]);
+    Files.write(baselineFile, lines, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,546 @@
+package main.shard;
+
+import main.api.CityNode;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Splits a city into a grid of rectangular regions, each owned by a {@link ShardWorker} with its own
+ * firefighters, and routes incidents to the
+ * workers over loopback sockets using {@link ShardProtocol}. Workers normally run as separate
+ * processes so throughput grows with the number of shards. An incident that spans regions is split
+ * and its parts run on their shards in parallel.
+ *
+ * The shard holding the city's FireStation keeps it, fireproof, and starts its firefighters there.
+ * Every other shard starts its firefighters from an ordinary building at the centre of its region,
+ * which burns and is put out like any other.
+ *
+ * When an incident leaves a shard with more than {@link #BORROW_FACTOR} fires per firefighter and a
+ * neighbouring shard has nothing in flight, half of the neighbour's spare firefighters are borrowed
+ * for the incident and handed back once it is done. The drive between the two stations is
+ * counted as transfer distance
+ */
+public class ShardCoordinator implements AutoCloseable {
+  public static final int BORROW_FACTOR = 8;
+  private static final int CONNECT_TIMEOUT_MILLIS = 30000;
+  private static final int SHUTDOWN_TIMEOUT_MILLIS = 5000;
+
+  private final int xDimension;
+  private final int yDimension;
+  private final CityNode fireStation;
+  private final int shardsX;
+  private final int shardsY;
+  private final Shard[] shards;
+  private final List<Process> processes;
+  private final AtomicInteger nextRequestId;
+  private final LongAdder borrows;
+  private final LongAdder transferDistance;
+  private boolean closed;
+
+  /**
+   * Starts one worker process per shard on this machine
+   *
+   * @param xDimension X dimension of the whole city
+   * @param yDimension Y dimension of the whole city
+   * @param fireStation location of the city's FireStation
+   * @param shardsX number of regions along X
+   * @param shardsY number of regions along Y
+   * @param firefightersPerShard firefighters each shard starts with
+   * @return a connected coordinator
+   * @throws IOException if a worker cannot be started or does not connect
+   */
+  public static ShardCoordinator launch(int xDimension, int yDimension, CityNode fireStation, int shardsX,
+                                        int shardsY, int firefightersPerShard) throws IOException {
+    return new ShardCoordinator(xDimension, yDimension, fireStation, shardsX, shardsY, firefightersPerShard, true);
+  }
+
+  /**
+   * Runs the workers as threads of this process, still talking over loopback sockets
+   *
+   * @see #launch
+   */
+  public static ShardCoordinator inProcess(int xDimension, int yDimension, CityNode fireStation, int shardsX,
+                                           int shardsY, int firefightersPerShard) throws IOException {
+    return new ShardCoordinator(xDimension, yDimension, fireStation, shardsX, shardsY, firefightersPerShard, false);
+  }
+
+  private ShardCoordinator(int xDimension, int yDimension, CityNode fireStation, int shardsX, int shardsY,
+                           int firefightersPerShard, boolean separateProcesses) throws IOException {
+    // Every region has to be a valid city of its own, at least 2 cells each way
+    if (shardsX < 1 || shardsY < 1 || xDimension / shardsX < 2 || yDimension / shardsY < 2)
+      throw new IllegalArgumentException("Cannot split a " + xDimension + "x" + yDimension + " city into " +
+          shardsX + "x" + shardsY + " shards");
+    if (fireStation.getX() < 0 || fireStation.getX() >= xDimension || fireStation.getY() < 0 ||
+        fireStation.getY() >= yDimension)
+      throw new IllegalArgumentException("FireStation outside the city: " + fireStation);
+    if (firefightersPerShard < 1)
+      throw new IllegalArgumentException("Each shard needs a firefighter: " + firefightersPerShard);
+
+    this.xDimension = xDimension;
+    this.yDimension = yDimension;
+    this.fireStation = fireStation;
+    this.shardsX = shardsX;
+    this.shardsY = shardsY;
+    this.shards = new Shard[shardsX * shardsY];
+    this.processes = new ArrayList<>();
+    this.nextRequestId = new AtomicInteger(1);
+    this.borrows = new LongAdder();
+    this.transferDistance = new LongAdder();
+
+    try (ServerSocket server = new ServerSocket(0, shards.length, InetAddress.getLoopbackAddress())) {
+      server.setSoTimeout(CONNECT_TIMEOUT_MILLIS);
+      for (int s = 0; s < shards.length; s++)
+        startWorker(server.getLocalPort(), separateProcesses);
+
+      List<CompletableFuture<long[]>> ready = new ArrayList<>();
+      for (int s = 0; s < shards.length; s++) {
+        shards[s] = new Shard(s, server.accept(), firefightersPerShard);
+        ready.add(shards[s].init());
+      }
+      for (CompletableFuture<long[]> future : ready)
+        await(future);
+    } catch (IOException | RuntimeException e) {
+      close();
+      throw e;
+    }
+  }
+
+  private void startWorker(int port, boolean separateProcess) throws IOException {
+    if (separateProcess) {
+      String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+      processes.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+          ShardWorker.class.getName(), Integer.toString(port)).inheritIO().start());
+      return;
+    }
+
+    Thread thread = new Thread(() -> {
+      try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+        new ShardWorker(socket).serve();
+      } catch (IOException e) {
+        // The coordinator sees the connection drop and fails whatever was pending
+      }
+    }, "shard-worker");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  public int shardCount() {
+    return shards.length;
+  }
+
+  /**
+   * @return number of times firefighters were borrowed from a neighbouring shard
+   */
+  public long borrows() {
+    return borrows.sum();
+  }
+
+  /**
+   * @return distance driven by borrowed firefighters between stations, there and back
+   */
+  public long transferDistance() {
+    return transferDistance.sum();
+  }
+
+  /**
+   * Splits an incident by region and sends each part to its shard
+   *
+   * @param burningBuildings locations of the fires in city coordinates
+   * @return future completed once every shard has dispatched its part
+   */
+  public CompletableFuture<Result> submit(CityNode... burningBuildings) {
+    long startTime = System.nanoTime();
+    int[] counts = new int[shards.length];
+    int[] shardOf = new int[burningBuildings.length];
+    for (int i = 0; i < burningBuildings.length; i++) {
+      CityNode fire = burningBuildings[i];
+      if (fire.getX() < 0 || fire.getX() >= xDimension || fire.getY() < 0 || fire.getY() >= yDimension)
+        throw new IllegalArgumentException("Fire outside the city: " + fire);
+      shardOf[i] = region(fire.getX(), xDimension, shardsX) * shardsY + region(fire.getY(), yDimension, shardsY);
+      counts[shardOf[i]]++;
+    }
+
+    int[][] xs = new int[shards.length][];
+    int[][] ys = new int[shards.length][];
+    for (int s = 0; s < shards.length; s++) {
+      xs[s] = new int[counts[s]];
+      ys[s] = new int[counts[s]];
+      counts[s] = 0;
+    }
+    for (int i = 0; i < burningBuildings.length; i++) {
+      Shard shard = shards[shardOf[i]];
+      xs[shard.id][counts[shard.id]] = burningBuildings[i].getX() - shard.regionX;
+      ys[shard.id][counts[shard.id]++] = burningBuildings[i].getY() - shard.regionY;
+    }
+
+    List<CompletableFuture<long[]>> parts = new ArrayList<>();
+    synchronized (this) {
+      if (closed)
+        throw new IllegalStateException("Coordinator is closed");
+      for (int s = 0; s < shards.length; s++) {
+        if (counts[s] > 0)
+          parts.add(dispatchPart(shards[s], xs[s], ys[s], counts[s]));
+      }
+    }
+    flush();
+
+    return CompletableFuture.allOf(parts.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+      int extinguished = 0;
+      int rejected = 0;
+      long distance = 0;
+      for (CompletableFuture<long[]> part : parts) {
+        long[] reply = part.join();
+        extinguished += (int) reply[0];
+        rejected += (int) reply[1];
+        distance += reply[2];
+      }
+      return new Result(burningBuildings.length, extinguished, rejected, distance, parts.size(),
+          System.nanoTime() - startTime);
+    });
+  }
+
+  /**
+   * Queues one shard's part of an incident, borrowing from an idle neighbour first when the shard
+   * is outnumbered. Caller holds the coordinator lock and flushes once it has let go of it
+   */
+  private CompletableFuture<long[]> dispatchPart(Shard shard, int[] xs, int[] ys, int count) {
+    Shard lender = null;
+    int helpers = 0;
+    if (count > BORROW_FACTOR * shard.firefighters) {
+      lender = idleNeighbour(shard);
+      if (lender != null) {
+        helpers = lender.firefighters / 2;
+        transfer(lender, shard, helpers);
+        borrows.increment();
+      }
+    }
+
+    shard.inFlight++;
+    Shard borrowedFrom = lender;
+    int borrowed = helpers;
+    return shard.incident(xs, ys, count).whenCompleteAsync((reply, error) -> {
+      synchronized (this) {
+        shard.inFlight--;
+        if (borrowed > 0 && !closed)
+          transfer(shard, borrowedFrom, borrowed);
+      }
+      flush();
+    });
+  }
+
+  /**
+   * Finds the neighbouring shard with the most firefighters to spare and nothing in flight
+   */
+  private Shard idleNeighbour(Shard shard) {
+    int i = shard.id / shardsY;
+    int j = shard.id % shardsY;
+    int[][] offsets = {{-1, 0}, {1, 0}, {0, -1}, {0, 1}};
+    Shard best = null;
+    for (int[] offset : offsets) {
+      int ni = i + offset[0];
+      int nj = j + offset[1];
+      if (ni < 0 || ni >= shardsX || nj < 0 || nj >= shardsY)
+        continue;
+      Shard neighbour = shards[ni * shardsY + nj];
+      if (neighbour.inFlight == 0 && neighbour.firefighters > 1 &&
+          (best == null || neighbour.firefighters > best.firefighters))
+        best = neighbour;
+    }
+    return best;
+  }
+
+  private void transfer(Shard from, Shard to, int firefighters) {
+    from.resize(ShardProtocol.RELEASE, firefighters);
+    from.firefighters -= firefighters;
+    to.resize(ShardProtocol.ADOPT, firefighters);
+    to.firefighters += firefighters;
+    transferDistance.add((long) firefighters * (Math.abs(from.stationX - to.stationX) +
+        Math.abs(from.stationY - to.stationY)));
+  }
+
+  /**
+   * Writes out every queued request. Only each shard's own output lock is held, so shards are
+   * written to in parallel and never under the coordinator lock
+   */
+  private void flush() {
+    for (Shard shard : shards)
+      shard.flush();
+  }
+
+  /**
+   * @return index of the region holding the coordinate, regions start at floor(i * dimension / count)
+   */
+  private static int region(int coordinate, int dimension, int count) {
+    return (int) ((((long) coordinate + 1) * count - 1) / dimension);
+  }
+
+  private static int regionStart(int region, int dimension, int count) {
+    return (int) ((long) region * dimension / count);
+  }
+
+  /**
+   * Shuts every worker down and waits for the worker processes to exit
+   */
+  @Override
+  public void close() {
+    synchronized (this) {
+      if (closed)
+        return;
+      closed = true;
+    }
+    for (Shard shard : shards) {
+      if (shard != null)
+        shard.shutdown();
+    }
+    for (Process process : processes) {
+      try {
+        if (!process.waitFor(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS))
+          process.destroyForcibly();
+      } catch (InterruptedException e) {
+        process.destroyForcibly();
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private static void await(CompletableFuture<long[]> future) throws IOException {
+    try {
+      future.get(CONNECT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while starting shards", e);
+    } catch (ExecutionException | TimeoutException e) {
+      throw new IOException("Shard failed to start", e);
+    }
+  }
+
+  /**
+   * Connection to one worker. Requests are queued in the order the coordinator decided on them,
+   * written under the output lock and their replies matched to their futures by request id on a
+   * reader thread
+   */
+  private final class Shard {
+    final int id;
+    final int regionX;
+    final int regionY;
+    final int width;
+    final int height;
+    final int stationX;
+    final int stationY;
+    final boolean fireproofStation;
+    final int coordinateBytes;
+    final Socket socket;
+    final DataOutputStream out;
+    final Map<Integer, CompletableFuture<long[]>> pending;
+    final Queue<Request> outbound;
+    final Thread reader;
+    // Guarded by the coordinator lock
+    int firefighters;
+    int inFlight;
+
+    Shard(int id, Socket socket, int firefighters) throws IOException {
+      this.id = id;
+      int i = id / shardsY;
+      int j = id % shardsY;
+      this.regionX = regionStart(i, xDimension, shardsX);
+      this.regionY = regionStart(j, yDimension, shardsY);
+      this.width = regionStart(i + 1, xDimension, shardsX) - regionX;
+      this.height = regionStart(j + 1, yDimension, shardsY) - regionY;
+      this.fireproofStation = fireStation.getX() >= regionX && fireStation.getX() < regionX + width &&
+          fireStation.getY() >= regionY && fireStation.getY() < regionY + height;
+      this.stationX = fireproofStation ? fireStation.getX() : regionX + width / 2;
+      this.stationY = fireproofStation ? fireStation.getY() : regionY + height / 2;
+      this.coordinateBytes = ShardProtocol.coordinateBytes(width, height);
+      this.socket = socket;
+      this.firefighters = firefighters;
+      this.pending = new ConcurrentHashMap<>();
+      this.outbound = new ConcurrentLinkedQueue<>();
+
+      socket.setTcpNoDelay(true);
+      this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      this.reader = new Thread(() -> read(in), "shard-" + id + "-reader");
+      reader.setDaemon(true);
+      reader.start();
+    }
+
+    CompletableFuture<long[]> init() {
+      CompletableFuture<long[]> ready = send(ShardProtocol.INIT, out -> {
+        out.writeInt(ShardProtocol.MAGIC);
+        out.writeShort(ShardProtocol.VERSION);
+        out.writeInt(id);
+        out.writeInt(regionX);
+        out.writeInt(regionY);
+        out.writeInt(width);
+        out.writeInt(height);
+        out.writeInt(stationX - regionX);
+        out.writeInt(stationY - regionY);
+        out.writeBoolean(fireproofStation);
+        out.writeInt(firefighters);
+      });
+      flush();
+      return ready;
+    }
+
+    CompletableFuture<long[]> incident(int[] xs, int[] ys, int count) {
+      return send(ShardProtocol.INCIDENT, out -> {
+        out.writeInt(count);
+        for (int i = 0; i < count; i++) {
+          ShardProtocol.writeCoordinate(out, coordinateBytes, xs[i]);
+          ShardProtocol.writeCoordinate(out, coordinateBytes, ys[i]);
+        }
+      });
+    }
+
+    CompletableFuture<long[]> resize(byte type, int firefighters) {
+      return send(type, out -> out.writeInt(firefighters));
+    }
+
+    void shutdown() {
+      // Requests already queued are answered before the worker sees SHUTDOWN
+      flush();
+      try {
+        synchronized (out) {
+          out.writeByte(ShardProtocol.SHUTDOWN);
+          out.writeInt(0);
+          out.flush();
+        }
+      } catch (IOException e) {
+        // Already gone
+      }
+      try {
+        socket.close();
+        reader.join(SHUTDOWN_TIMEOUT_MILLIS);
+      } catch (IOException | InterruptedException e) {
+        // Closing anyway
+      }
+    }
+
+    /**
+     * Queues a request, it goes out with the next {@link #flush}
+     */
+    private CompletableFuture<long[]> send(byte type, Payload payload) {
+      Request request = new Request(type, nextRequestId.getAndIncrement(), payload);
+      pending.put(request.id, request.future);
+      outbound.add(request);
+      return request.future;
+    }
+
+    /**
+     * Writes the queued requests in order. Whoever gets the output lock first writes the requests
+     * queued by everyone else too
+     */
+    void flush() {
+      if (outbound.isEmpty())
+        return;
+      synchronized (out) {
+        Request request;
+        while ((request = outbound.poll()) != null) {
+          try {
+            out.writeByte(request.type);
+            out.writeInt(request.id);
+            request.payload.write(out);
+          } catch (IOException e) {
+            pending.remove(request.id);
+            request.future.completeExceptionally(e);
+          }
+        }
+        try {
+          out.flush();
+        } catch (IOException e) {
+          // The reader sees the connection drop and fails whatever is pending
+        }
+      }
+    }
+
+    private void read(DataInputStream in) {
+      try {
+        while (true) {
+          byte type = in.readByte();
+          int requestId = in.readInt();
+          long[] reply;
+          if (type == ShardProtocol.RESULT)
+            reply = new long[]{in.readInt(), in.readInt(), in.readLong(), in.readLong()};
+          else if (type == ShardProtocol.FLEET)
+            reply = new long[]{in.readInt(), in.readLong()};
+          else
+            throw new IOException("Unknown reply type: " + type);
+
+          CompletableFuture<long[]> future = pending.remove(requestId);
+          if (future != null)
+            future.complete(reply);
+        }
+      } catch (IOException e) {
+        IOException failure = new IOException("Lost connection to shard " + id, e);
+        for (CompletableFuture<long[]> future : pending.values())
+          future.completeExceptionally(failure);
+        pending.clear();
+      }
+    }
+  }
+
+  private interface Payload {
+    void write(DataOutputStream out) throws IOException;
+  }
+
+  private static final class Request {
+    final byte type;
+    final int id;
+    final Payload payload;
+    final CompletableFuture<long[]> future;
+
+    Request(byte type, int id, Payload payload) {
+      this.type = type;
+      this.id = id;
+      this.payload = payload;
+      this.future = new CompletableFuture<>();
+    }
+  }
+
+  /**
+   * Outcome of one incident across every shard it touched
+   */
+  public static class Result {
+    public final int fires;
+    public final int extinguished;
+    public final int rejected;
+    public final long distanceTraveled;
+    public final int shards;
+    public final long latencyNanos;
+
+    public Result(int fires, int extinguished, int rejected, long distanceTraveled, int shards, long latencyNanos) {
+      this.fires = fires;
+      this.extinguished = extinguished;
+      this.rejected = rejected;
+      this.distanceTraveled = distanceTraveled;
+      this.shards = shards;
+      this.latencyNanos = latencyNanos;
+    }
+
+    @Override
+    public String toString() {
+      return "Result{" + "fires=" + fires + ", extinguished=" + extinguished + ", rejected=" + rejected +
+          ", distanceTraveled=" + distanceTraveled + ", shards=" + shards + ", latencyNanos=" + latencyNanos + '}';
+    }
+  }
+}
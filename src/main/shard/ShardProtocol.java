@@ -0,0 +1,51 @@
+package main.shard;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Binary protocol between a {@link ShardCoordinator} and its {@link ShardWorker}s.
+ *
+ * Every message is a type byte and an int request id followed by a fixed payload (big endian):
+ *   INIT     coordinator to worker: int MAGIC, short VERSION, int shardId, int regionX, int regionY,
+ *            int width, int height, int stationX, int stationY, boolean fireproof, int firefighters
+ *   INCIDENT coordinator to worker: int count, count * (x, y) in shard coordinates
+ *   ADOPT    coordinator to worker: int firefighters to add at the shard's FireStation
+ *   RELEASE  coordinator to worker: int firefighters to hand back
+ *   SHUTDOWN coordinator to worker: no payload, no reply
+ *   RESULT   worker reply to INCIDENT: int extinguished, int rejected at the city's FireStation, long distance,
+ *            long nanos
+ *   FLEET    worker reply to INIT, ADOPT and RELEASE: int fleet size, long total distance
+ * Only the shard holding the city's FireStation has a fireproof station, every other shard starts
+ * its firefighters from an ordinary building. Coordinates take 2 bytes each (unsigned) when both shard dimensions fit, otherwise 4
+ */
+final class ShardProtocol {
+  static final int MAGIC = 0x46534844;
+  static final short VERSION = 2;
+
+  static final byte INIT = 1;
+  static final byte INCIDENT = 2;
+  static final byte ADOPT = 3;
+  static final byte RELEASE = 4;
+  static final byte SHUTDOWN = 5;
+  static final byte RESULT = 16;
+  static final byte FLEET = 17;
+
+  private ShardProtocol() {}
+
+  static int coordinateBytes(int width, int height) {
+    return Math.max(width, height) <= 0xFFFF ? 2 : 4;
+  }
+
+  static void writeCoordinate(DataOutputStream out, int coordinateBytes, int value) throws IOException {
+    if (coordinateBytes == 2)
+      out.writeShort(value);
+    else
+      out.writeInt(value);
+  }
+
+  static int readCoordinate(DataInputStream in, int coordinateBytes) throws IOException {
+    return coordinateBytes == 2 ? in.readUnsignedShort() : in.readInt();
+  }
+}
@@ -0,0 +1,177 @@
+package main.shard;
+
+import main.api.CityNode;
+import main.api.Pyromaniac;
+import main.api.exceptions.FireproofBuildingException;
+import main.firefighters.FireDispatchImpl;
+import main.firefighters.FirefighterFleet;
+import main.impls.CityImpl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Arrays;
+
+/**
+ * Owns one region of a sharded city: the buildings of the region, the station its firefighters
+ * start from and the firefighters themselves. Runs as its own process, connects back to the {@link ShardCoordinator} on loopback
+ * and serves requests one at a time until told to shut down.
+ * Coordinates on the wire are relative to the region
+ */
+public class ShardWorker {
+  private final DataInputStream in;
+  private final DataOutputStream out;
+  private CityImpl city;
+  private FireDispatchImpl fireDispatch;
+  private CityNode fireStation;
+  private boolean fireproofStation;
+  private int coordinateBytes;
+  // Distance traveled by firefighters that were handed back to other shards
+  private long releasedDistance;
+
+  ShardWorker(Socket socket) throws IOException {
+    socket.setTcpNoDelay(true);
+    this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+    this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+  }
+
+  /**
+   * Entry point of a worker process
+   *
+   * @param args coordinator port on the loopback address
+   * @throws IOException if the coordinator cannot be reached
+   */
+  public static void main(String[] args) throws IOException {
+    try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(args[0]))) {
+      new ShardWorker(socket).serve();
+    }
+  }
+
+  /**
+   * Serves requests until SHUTDOWN or the coordinator hangs up
+   *
+   * @throws IOException if the connection fails or a message is malformed
+   */
+  void serve() throws IOException {
+    try {
+      while (true) {
+        byte type = in.readByte();
+        int requestId = in.readInt();
+        switch (type) {
+          case ShardProtocol.INIT:
+            init();
+            replyFleet(requestId);
+            break;
+          case ShardProtocol.INCIDENT:
+            incident(requestId);
+            break;
+          case ShardProtocol.ADOPT:
+            resize(fireDispatch.getFleet().size() + in.readInt());
+            replyFleet(requestId);
+            break;
+          case ShardProtocol.RELEASE:
+            resize(Math.max(0, fireDispatch.getFleet().size() - in.readInt()));
+            replyFleet(requestId);
+            break;
+          case ShardProtocol.SHUTDOWN:
+            return;
+          default:
+            throw new IOException("Unknown message type: " + type);
+        }
+        out.flush();
+      }
+    } catch (EOFException e) {
+      // Coordinator went away, nothing left to serve
+    }
+  }
+
+  private void init() throws IOException {
+    if (in.readInt() != ShardProtocol.MAGIC)
+      throw new IOException("Not a shard coordinator");
+    short version = in.readShort();
+    if (version != ShardProtocol.VERSION)
+      throw new IOException("Unsupported shard protocol version: " + version);
+    in.readInt(); // shard id
+    in.readInt(); // region X
+    in.readInt(); // region Y
+    int width = in.readInt();
+    int height = in.readInt();
+    this.fireStation = new CityNode(in.readInt(), in.readInt());
+    this.fireproofStation = in.readBoolean();
+    int firefighters = in.readInt();
+
+    this.city = new CityImpl(width, height, fireStation, fireproofStation);
+    this.fireDispatch = city.getFireDispatch();
+    this.coordinateBytes = ShardProtocol.coordinateBytes(width, height);
+    fireDispatch.setFirefighters(firefighters);
+  }
+
+  private void incident(int requestId) throws IOException {
+    int count = in.readInt();
+    CityNode[] fires = new CityNode[count];
+    int accepted = 0;
+    for (int i = 0; i < count; i++) {
+      int x = ShardProtocol.readCoordinate(in, coordinateBytes);
+      CityNode fire = new CityNode(x, ShardProtocol.readCoordinate(in, coordinateBytes));
+      // The city's FireStation is fireproof, an incident there is rejected rather than failing the batch
+      if (!fireproofStation || !fire.equals(fireStation))
+        fires[accepted++] = fire;
+    }
+    CityNode[] burning = accepted == count ? fires : Arrays.copyOf(fires, accepted);
+
+    long startTime = System.nanoTime();
+    long distanceBefore = fireDispatch.getFleet().totalDistanceTraveled();
+    int extinguished = 0;
+    try {
+      Pyromaniac.setFires(city, burning);
+      fireDispatch.dispatchFirefighters(burning);
+      for (CityNode fire : burning) {
+        if (!city.getBuilding(fire).isBurning())
+          extinguished++;
+      }
+    } catch (FireproofBuildingException e) {
+      throw new IllegalStateException("Only the FireStation is fireproof", e);
+    }
+
+    out.writeByte(ShardProtocol.RESULT);
+    out.writeInt(requestId);
+    out.writeInt(extinguished);
+    out.writeInt(count - accepted);
+    out.writeLong(fireDispatch.getFleet().totalDistanceTraveled() - distanceBefore);
+    out.writeLong(System.nanoTime() - startTime);
+  }
+
+  /**
+   * Grows the fleet with new firefighters at the station, or shrinks it by handing back the
+   * last firefighters and keeping their distance traveled on the books
+   */
+  private void resize(int numFirefighters) {
+    FirefighterFleet fleet = fireDispatch.getFleet();
+    int size = fleet.size();
+    int capacity = Math.max(size, numFirefighters);
+    int[] xs = new int[capacity];
+    int[] ys = new int[capacity];
+    int[] distances = new int[capacity];
+    fleet.copyTo(xs, ys, distances);
+
+    for (int i = numFirefighters; i < size; i++)
+      releasedDistance += distances[i];
+    for (int i = size; i < numFirefighters; i++) {
+      xs[i] = fireStation.getX();
+      ys[i] = fireStation.getY();
+    }
+    fleet.restore(numFirefighters, xs, ys, distances, fireDispatch.getDistanceMetric());
+  }
+
+  private void replyFleet(int requestId) throws IOException {
+    out.writeByte(ShardProtocol.FLEET);
+    out.writeInt(requestId);
+    out.writeInt(fireDispatch.getFleet().size());
+    out.writeLong(fireDispatch.getFleet().totalDistanceTraveled() + releasedDistance);
+  }
+}
@@ -0,0 +1,294 @@
+package main.simulation;
+
+import main.api.City;
+import main.api.CityNode;
+import main.api.FireDispatch;
+import main.api.Firefighter;
+import main.api.Pyromaniac;
+import main.firefighters.LoadShedder;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hosts many independent cities in one process and runs their incidents concurrently.
+ * Incidents for the same city run one at a time in the order they were submitted, while different
+ * cities run in parallel. Tasks run on virtual threads when the JVM has them, otherwise on a
+ * work stealing pool. The number of incidents in flight is capped, and submit blocks once the cap
+ * is reached. A {@link LoadShedder} shared with the cities' dispatchers is told about every queued
+ * incident, so solvers get cheaper while the queue is long
+ */
+public class DispatchService implements AutoCloseable {
+  private final ExecutorService executor;
+  private final Semaphore inFlight;
+  private final Map<Integer, CityLane> lanes;
+  private final AtomicInteger nextCityId;
+  private final LongAdder completed;
+  private final LongAdder failed;
+  private final LongAdder totalLatencyNanos;
+  private final AtomicLong maxLatencyNanos;
+  private final long startTime;
+  private final LoadShedder loadShedder;
+
+  public DispatchService(int maxInFlight) {
+    this(maxInFlight, null);
+  }
+
+  /**
+   * @param maxInFlight incidents that may be queued or running at once
+   * @param loadShedder load shedder to report queued incidents to, or null
+   */
+  public DispatchService(int maxInFlight, LoadShedder loadShedder) {
+    if (maxInFlight < 1)
+      throw new IllegalArgumentException("Need to allow at least one incident in flight: " + maxInFlight);
+
+    this.executor = newExecutor();
+    this.inFlight = new Semaphore(maxInFlight);
+    this.lanes = new ConcurrentHashMap<>();
+    this.nextCityId = new AtomicInteger();
+    this.completed = new LongAdder();
+    this.failed = new LongAdder();
+    this.totalLatencyNanos = new LongAdder();
+    this.maxLatencyNanos = new AtomicLong();
+    this.startTime = System.nanoTime();
+    this.loadShedder = loadShedder;
+  }
+
+  /**
+   * Adds a city to the service. Its FireDispatch should already have firefighters
+   *
+   * @param city city to host
+   * @return id to submit incidents for this city with
+   */
+  public int addCity(City city) {
+    int cityId = nextCityId.getAndIncrement();
+    lanes.put(cityId, new CityLane(city));
+    return cityId;
+  }
+
+  /**
+   * Queues an incident for a city. The fires are set and then dispatched to on the city's lane.
+   * Blocks while the service is at its in flight limit
+   *
+   * @param cityId id returned by {@link #addCity}
+   * @param burningBuildings locations of the fires
+   * @return future completed once the fires have been dispatched to
+   * @throws InterruptedException if interrupted while waiting for capacity
+   * @throws RejectedExecutionException if the service has been closed
+   */
+  public CompletableFuture<IncidentResult> submit(int cityId, CityNode... burningBuildings)
+      throws InterruptedException {
+    CityLane lane = lanes.get(cityId);
+    if (lane == null)
+      throw new IllegalArgumentException("Unknown city: " + cityId);
+
+    inFlight.acquire();
+    long submitTime = System.nanoTime();
+    CompletableFuture<IncidentResult> future = new CompletableFuture<>();
+    if (loadShedder != null)
+      loadShedder.enqueued();
+    Runnable task = () -> {
+      if (loadShedder != null)
+        loadShedder.dequeued();
+      try {
+        Pyromaniac.setFires(lane.city, burningBuildings);
+        FireDispatch fireDispatch = lane.city.getFireDispatch();
+        // The lane runs one incident at a time, so the difference is this incident's alone
+        int distanceBefore = totalDistance(fireDispatch);
+        fireDispatch.dispatchFirefighters(burningBuildings);
+        int distance = totalDistance(fireDispatch) - distanceBefore;
+
+        long latency = System.nanoTime() - submitTime;
+        record(latency);
+        future.complete(new IncidentResult(cityId, burningBuildings.length, distance, latency));
+      } catch (Throwable e) {
+        failed.increment();
+        future.completeExceptionally(e);
+        if (e instanceof Error)
+          throw (Error) e;
+      } finally {
+        inFlight.release();
+      }
+    };
+    lane.queue.add(task);
+    try {
+      schedule(lane);
+    } catch (RejectedExecutionException e) {
+      // Closed, so nothing will run the task. Take it back unless a drain already got to it
+      if (lane.queue.remove(task)) {
+        if (loadShedder != null)
+          loadShedder.dequeued();
+        inFlight.release();
+      }
+      throw e;
+    }
+    return future;
+  }
+
+  /**
+   * Get throughput and latency over everything completed so far
+   *
+   * @return a {@link Stats} snapshot
+   */
+  public Stats stats() {
+    long count = completed.sum();
+    long elapsed = System.nanoTime() - startTime;
+    return new Stats(count, failed.sum(), count == 0 ? 0 : totalLatencyNanos.sum() / count,
+        maxLatencyNanos.get(), count * 1e9 / Math.max(1, elapsed));
+  }
+
+  /**
+   * Stops taking incidents and waits up to a minute for the queued ones to finish
+   *
+   * @throws IllegalStateException if incidents are still running after a minute
+   */
+  @Override
+  public void close() {
+    executor.shutdown();
+    try {
+      if (!executor.awaitTermination(1, TimeUnit.MINUTES))
+        throw new IllegalStateException("Incidents still running a minute after the service was closed");
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void record(long latency) {
+    completed.increment();
+    totalLatencyNanos.add(latency);
+    maxLatencyNanos.accumulateAndGet(latency, Math::max);
+  }
+
+  /**
+   * Starts draining a lane unless a drain is already running, which keeps each city serial
+   */
+  private void schedule(CityLane lane) {
+    if (!lane.draining.compareAndSet(false, true))
+      return;
+    try {
+      executor.execute(() -> drain(lane));
+    } catch (RejectedExecutionException e) {
+      lane.draining.set(false);
+      throw e;
+    }
+  }
+
+  private void drain(CityLane lane) {
+    do {
+      Runnable task;
+      while ((task = lane.queue.poll()) != null) {
+        try {
+          task.run();
+        } catch (Error e) {
+          // The task has failed its own future. Leave the rest of the lane to another drain so the Error
+          // can go on up this thread
+          handOff(lane);
+          throw e;
+        }
+      }
+      lane.draining.set(false);
+      // An incident may have been queued after the last poll but before the flag was cleared. Keep
+      // going here rather than scheduling again, which a closed executor would refuse
+    } while (!lane.queue.isEmpty() && lane.draining.compareAndSet(false, true));
+  }
+
+  private void handOff(CityLane lane) {
+    lane.draining.set(false);
+    if (lane.queue.isEmpty() || !lane.draining.compareAndSet(false, true))
+      return;
+    try {
+      executor.execute(() -> drain(lane));
+    } catch (RejectedExecutionException closed) {
+      // Closed, so nothing else will run the lane. Finish it here before the Error goes any further
+      drain(lane);
+    }
+  }
+
+  private static int totalDistance(FireDispatch fireDispatch) {
+    int total = 0;
+    for (Firefighter firefighter : fireDispatch.getFirefighters())
+      total += firefighter.distanceTraveled();
+    return total;
+  }
+
+  /**
+   * Uses Executors.newVirtualThreadPerTaskExecutor when running on a JDK that has it
+   */
+  private static ExecutorService newExecutor() {
+    try {
+      Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) factory.invoke(null);
+    } catch (ReflectiveOperationException e) {
+      return new ForkJoinPool(Runtime.getRuntime().availableProcessors(),
+          ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+    }
+  }
+
+  private static class CityLane {
+    final City city;
+    final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+    final AtomicBoolean draining = new AtomicBoolean();
+
+    CityLane(City city) {
+      this.city = city;
+    }
+  }
+
+  /**
+   * Outcome of one incident
+   */
+  public static class IncidentResult {
+    public final int cityId;
+    public final int fires;
+    public final int distanceTraveled;
+    public final long latencyNanos;
+
+    public IncidentResult(int cityId, int fires, int distanceTraveled, long latencyNanos) {
+      this.cityId = cityId;
+      this.fires = fires;
+      this.distanceTraveled = distanceTraveled;
+      this.latencyNanos = latencyNanos;
+    }
+  }
+
+  /**
+   * Aggregate numbers across all cities
+   */
+  public static class Stats {
+    public final long completed;
+    public final long failed;
+    public final long meanLatencyNanos;
+    public final long maxLatencyNanos;
+    public final double incidentsPerSecond;
+
+    public Stats(long completed, long failed, long meanLatencyNanos, long maxLatencyNanos,
+                 double incidentsPerSecond) {
+      this.completed = completed;
+      this.failed = failed;
+      this.meanLatencyNanos = meanLatencyNanos;
+      this.maxLatencyNanos = maxLatencyNanos;
+      this.incidentsPerSecond = incidentsPerSecond;
+    }
+
+    @Override
+    public String toString() {
+      return "Stats{" + "completed=" + completed + ", failed=" + failed + ", meanLatencyNanos=" +
+          meanLatencyNanos + ", maxLatencyNanos=" + maxLatencyNanos + ", incidentsPerSecond=" +
+          incidentsPerSecond + '}';
+    }
+  }
+}
@@ -0,0 +1,249 @@
+package main.simulation;
+
+import main.api.City;
+import main.api.CityNode;
+import main.api.FireDispatch;
+import main.api.exceptions.FireproofBuildingException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Spreads fire through a city one tick at a time.
+ * Each tick a building that is not fireproof catches fire with probability 1 - (1 - p)^k
+ * where k is the number of burning neighbours. State is double buffered and each tick is
+ * computed in parallel stripes of rows. The random draw for a cell depends only on the seed,
+ * the tick and the cell, so the result does not depend on how the rows are split up
+ */
+public class FireSpreadEngine {
+  private final City city;
+  private final int xDimension;
+  private final int yDimension;
+  private final double spreadProbability;
+  private final long seed;
+  private final int stripes;
+  private final boolean[] fireproof;
+  private boolean[] current;
+  private boolean[] next;
+  // Tick each building caught fire at, -1 while it is not burning
+  private final int[] burningSince;
+  private int tick;
+
+  public FireSpreadEngine(City city, double spreadProbability, long seed) {
+    this(city, spreadProbability, seed, Runtime.getRuntime().availableProcessors());
+  }
+
+  public FireSpreadEngine(City city, double spreadProbability, long seed, int stripes) {
+    if (spreadProbability < 0 || spreadProbability > 1)
+      throw new IllegalArgumentException("Spread probability must be between 0 and 1: " + spreadProbability);
+    if (stripes < 1)
+      throw new IllegalArgumentException("Need at least one stripe: " + stripes);
+
+    this.city = city;
+    this.xDimension = city.getXDimension();
+    this.yDimension = city.getYDimension();
+    this.spreadProbability = spreadProbability;
+    this.seed = seed;
+    this.stripes = Math.min(stripes, xDimension);
+    this.fireproof = new boolean[xDimension * yDimension];
+    this.current = new boolean[xDimension * yDimension];
+    this.next = new boolean[xDimension * yDimension];
+    this.burningSince = new int[xDimension * yDimension];
+    Arrays.fill(burningSince, -1);
+
+    for (int x = 0; x < xDimension; x++) {
+      for (int y = 0; y < yDimension; y++) {
+        fireproof[x * yDimension + y] = city.getBuilding(x, y).isFireproof();
+      }
+    }
+  }
+
+  /**
+   * Advances the simulation by one tick and sets the new fires in the city
+   *
+   * @return locations that caught fire during this tick
+   */
+  public List<CityNode> tick() {
+    // Pick up fires set or put out by anyone else since the last tick
+    forEachStripe(this::load);
+    forEachStripe(this::spread);
+
+    boolean[] swap = current;
+    current = next;
+    next = swap;
+
+    List<CityNode> ignited = new ArrayList<>();
+    for (int idx = 0; idx < current.length; idx++) {
+      if (current[idx] && !next[idx]) {
+        CityNode location = new CityNode(idx / yDimension, idx % yDimension);
+        try {
+          city.getBuilding(location).setFire();
+        } catch (FireproofBuildingException e) {
+          // Fireproof cells never spread, so this means the city changed under the engine
+          throw new IllegalStateException("Fire spread to a fireproof building at " + location, e);
+        }
+        burningSince[idx] = tick;
+        ignited.add(location);
+      }
+    }
+    tick++;
+    return ignited;
+  }
+
+  /**
+   * Runs the simulation for a number of ticks, dispatching firefighters to at most capacity burning
+   * buildings after each tick, the ones that have burned longest first. Anything left keeps spreading,
+   * so a response that cannot keep up shows as a growing number of fires
+   *
+   * @param fireDispatch dispatcher to respond to the fires
+   * @param ticks number of ticks to run
+   * @param capacity most buildings dispatched to per tick, Integer.MAX_VALUE for all of them
+   * @return one {@link TickReport} per tick
+   */
+  public List<TickReport> runInterleaved(FireDispatch fireDispatch, int ticks, int capacity) {
+    if (capacity < 1)
+      throw new IllegalArgumentException("Need to respond to at least one fire per tick: " + capacity);
+
+    List<TickReport> reports = new ArrayList<>();
+    for (int i = 0; i < ticks; i++) {
+      int ignited = tick().size();
+      CityNode[] burning = burningLocations();
+      CityNode[] response = oldestBurning(capacity);
+
+      long startTime = System.nanoTime();
+      if (response.length > 0)
+        fireDispatch.dispatchFirefighters(response);
+      long endTime = System.nanoTime();
+
+      reports.add(new TickReport(tick, ignited, burning.length, response.length, endTime - startTime));
+    }
+    return reports;
+  }
+
+  /**
+   * Get the buildings that were burning at the end of the last tick
+   *
+   * @return array of burning locations
+   */
+  public CityNode[] burningLocations() {
+    List<CityNode> burning = new ArrayList<>();
+    for (int idx = 0; idx < current.length; idx++) {
+      if (current[idx])
+        burning.add(new CityNode(idx / yDimension, idx % yDimension));
+    }
+    return burning.toArray(new CityNode[0]);
+  }
+
+  /**
+   * Get up to count buildings burning at the end of the last tick, longest burning first
+   */
+  private CityNode[] oldestBurning(int count) {
+    long[] keys = new long[current.length];
+    int size = 0;
+    for (int idx = 0; idx < current.length; idx++) {
+      if (current[idx])
+        keys[size++] = (long) burningSince[idx] << 32 | idx;
+    }
+    Arrays.sort(keys, 0, size);
+
+    CityNode[] oldest = new CityNode[Math.min(count, size)];
+    for (int k = 0; k < oldest.length; k++) {
+      int idx = (int) keys[k];
+      oldest[k] = new CityNode(idx / yDimension, idx % yDimension);
+    }
+    return oldest;
+  }
+
+  public int getTick() {
+    return tick;
+  }
+
+  private void forEachStripe(StripeTask task) {
+    IntStream.range(0, stripes).parallel().forEach(stripe -> {
+      int startX = (int) ((long) xDimension * stripe / stripes);
+      int endX = (int) ((long) xDimension * (stripe + 1) / stripes);
+      task.run(startX, endX);
+    });
+  }
+
+  private void load(int startX, int endX) {
+    for (int x = startX; x < endX; x++) {
+      for (int y = 0; y < yDimension; y++) {
+        int idx = x * yDimension + y;
+        current[idx] = city.getBuilding(x, y).isBurning();
+        if (!current[idx])
+          burningSince[idx] = -1;
+        else if (burningSince[idx] < 0)
+          burningSince[idx] = tick;
+      }
+    }
+  }
+
+  private void spread(int startX, int endX) {
+    for (int x = startX; x < endX; x++) {
+      for (int y = 0; y < yDimension; y++) {
+        int idx = x * yDimension + y;
+        if (current[idx] || fireproof[idx]) {
+          next[idx] = current[idx];
+          continue;
+        }
+
+        int burningNeighbours = 0;
+        if (x > 0 && current[idx - yDimension])
+          burningNeighbours++;
+        if (x < xDimension - 1 && current[idx + yDimension])
+          burningNeighbours++;
+        if (y > 0 && current[idx - 1])
+          burningNeighbours++;
+        if (y < yDimension - 1 && current[idx + 1])
+          burningNeighbours++;
+
+        next[idx] = burningNeighbours > 0 &&
+            random(idx) < 1 - Math.pow(1 - spreadProbability, burningNeighbours);
+      }
+    }
+  }
+
+  /**
+   * SplitMix64 hash of (seed, tick, cell) mapped to [0, 1)
+   */
+  private double random(int idx) {
+    long z = seed + 0x9E3779B97F4A7C15L * (((long) tick << 32) ^ idx) + 0x9E3779B97F4A7C15L;
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    z = z ^ (z >>> 31);
+    return (z >>> 11) * 0x1.0p-53;
+  }
+
+  @FunctionalInterface
+  private interface StripeTask {
+    void run(int startX, int endX);
+  }
+
+  /**
+   * Outcome of one tick of {@link #runInterleaved}
+   */
+  public static class TickReport {
+    public final int tick;
+    public final int ignited;
+    public final int burning;
+    public final int dispatched;
+    public final long dispatchNanos;
+
+    public TickReport(int tick, int ignited, int burning, int dispatched, long dispatchNanos) {
+      this.tick = tick;
+      this.ignited = ignited;
+      this.burning = burning;
+      this.dispatched = dispatched;
+      this.dispatchNanos = dispatchNanos;
+    }
+
+    @Override
+    public String toString() {
+      return "TickReport{" + "tick=" + tick + ", ignited=" + ignited + ", burning=" + burning +
+          ", dispatched=" + dispatched + ", dispatchNanos=" + dispatchNanos + '}';
+    }
+  }
+}
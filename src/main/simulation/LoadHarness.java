@@ -0,0 +1,114 @@
+package main.simulation;
+
+import main.api.City;
+import main.api.CityNode;
+import main.api.FireDispatch;
+import main.api.Firefighter;
+import main.api.Pyromaniac;
+import main.api.exceptions.FireproofBuildingException;
+
+import java.util.Arrays;
+
+/**
+ * Drives a {@link FireDispatch} with generated workloads and reports latency percentiles,
+ * throughput and distance traveled.
+ * Works with any {@link City}, use {@link main.impls.ConcurrentCity} for very large grids since
+ * it stores burning state as a bitmap instead of one object per building
+ */
+public class LoadHarness {
+  private final City city;
+  private final FireDispatch fireDispatch;
+  private final WorkloadGenerator generator;
+
+  public LoadHarness(City city, long seed) {
+    this.city = city;
+    this.fireDispatch = city.getFireDispatch();
+    this.generator = new WorkloadGenerator(city.getXDimension(), city.getYDimension(),
+        city.getFireStation().getLocation(), seed);
+  }
+
+  public WorkloadGenerator getGenerator() {
+    return generator;
+  }
+
+  /**
+   * Sets and dispatches a number of generated incidents, timing each dispatch
+   *
+   * @param distribution how to spread the fires
+   * @param incidents number of incidents to run
+   * @param firesPerIncident number of fires in each incident
+   * @return a {@link Report} over all incidents
+   * @throws FireproofBuildingException if a fire lands on a fireproof building
+   */
+  public Report run(WorkloadGenerator.Distribution distribution, int incidents, int firesPerIncident)
+      throws FireproofBuildingException {
+    long[] latencies = new long[incidents];
+    long distanceBefore = totalDistance();
+    long startTime = System.nanoTime();
+
+    for (int i = 0; i < incidents; i++) {
+      CityNode[] fires = generator.generate(distribution, firesPerIncident);
+      Pyromaniac.setFires(city, fires);
+
+      long dispatchStart = System.nanoTime();
+      fireDispatch.dispatchFirefighters(fires);
+      latencies[i] = System.nanoTime() - dispatchStart;
+    }
+
+    long elapsed = System.nanoTime() - startTime;
+    Arrays.sort(latencies);
+    return new Report(incidents, (long) incidents * firesPerIncident, percentile(latencies, 0.5),
+        percentile(latencies, 0.9), percentile(latencies, 0.99), incidents == 0 ? 0 : latencies[incidents - 1],
+        (double) incidents * firesPerIncident * 1e9 / Math.max(1, elapsed), totalDistance() - distanceBefore);
+  }
+
+  private long totalDistance() {
+    long total = 0;
+    for (Firefighter firefighter : fireDispatch.getFirefighters())
+      total += firefighter.distanceTraveled();
+    return total;
+  }
+
+  /**
+   * Nearest rank percentile of sorted values
+   */
+  private static long percentile(long[] sorted, double p) {
+    if (sorted.length == 0)
+      return 0;
+    int rank = (int) Math.ceil(p * sorted.length);
+    return sorted[Math.max(0, rank - 1)];
+  }
+
+  /**
+   * Result of a {@link LoadHarness} run
+   */
+  public static class Report {
+    public final int incidents;
+    public final long fires;
+    public final long p50Nanos;
+    public final long p90Nanos;
+    public final long p99Nanos;
+    public final long maxNanos;
+    public final double firesPerSecond;
+    public final long distanceTraveled;
+
+    public Report(int incidents, long fires, long p50Nanos, long p90Nanos, long p99Nanos, long maxNanos,
+                  double firesPerSecond, long distanceTraveled) {
+      this.incidents = incidents;
+      this.fires = fires;
+      this.p50Nanos = p50Nanos;
+      this.p90Nanos = p90Nanos;
+      this.p99Nanos = p99Nanos;
+      this.maxNanos = maxNanos;
+      this.firesPerSecond = firesPerSecond;
+      this.distanceTraveled = distanceTraveled;
+    }
+
+    @Override
+    public String toString() {
+      return "Report{" + "incidents=" + incidents + ", fires=" + fires + ", p50Nanos=" + p50Nanos +
+          ", p90Nanos=" + p90Nanos + ", p99Nanos=" + p99Nanos + ", maxNanos=" + maxNanos +
+          ", firesPerSecond=" + firesPerSecond + ", distanceTraveled=" + distanceTraveled + '}';
+    }
+  }
+}
@@ -0,0 +1,248 @@
+package main.simulation;
+
+import main.api.CityNode;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Generates sets of distinct fire locations for load testing. The FireStation is never picked.
+ * Sampling is seeded, works on primitive arrays and tracks picked cells in an open addressing
+ * hash set sized to the number of fires rather than the city, so very large cities are cheap
+ */
+public class WorkloadGenerator {
+  public enum Distribution {
+    /** Every cell equally likely */
+    UNIFORM,
+    /** Fires gathered in gaussian clusters around a few random centres */
+    CLUSTERED,
+    /** Most fires packed into a few small squares, the rest uniform */
+    HOTSPOT
+  }
+
+  private static final long EMPTY = -1;
+  private static final int MAX_ATTEMPTS_PER_FIRE = 32;
+
+  private final int xDimension;
+  private final int yDimension;
+  private final long cells;
+  private final long fireStationIdx;
+  private final SplittableRandom random;
+  private long[] seen;
+  private int seenMask;
+
+  private int clusters = 8;
+  private double clusterSpread = 0.02;
+  private int hotspots = 3;
+  private double hotspotFraction = 0.8;
+  private double hotspotSize = 0.01;
+
+  public WorkloadGenerator(int xDimension, int yDimension, CityNode fireStation, long seed) {
+    this.xDimension = xDimension;
+    this.yDimension = yDimension;
+    this.cells = (long) xDimension * yDimension;
+    this.fireStationIdx = (long) fireStation.getX() * yDimension + fireStation.getY();
+    this.random = new SplittableRandom(seed);
+    this.seen = new long[0];
+  }
+
+  /**
+   * @param clusters number of cluster centres
+   * @param spread standard deviation of a cluster as a fraction of the city size
+   * @return this generator
+   */
+  public WorkloadGenerator withClusters(int clusters, double spread) {
+    this.clusters = clusters;
+    this.clusterSpread = spread;
+    return this;
+  }
+
+  /**
+   * @param hotspots number of hotspot squares
+   * @param fraction fraction of fires placed in hotspots
+   * @param size side of a hotspot as a fraction of the city size
+   * @return this generator
+   */
+  public WorkloadGenerator withHotspots(int hotspots, double fraction, double size) {
+    this.hotspots = hotspots;
+    this.hotspotFraction = fraction;
+    this.hotspotSize = size;
+    return this;
+  }
+
+  /**
+   * Generates distinct fire locations into the given arrays
+   *
+   * @param distribution how to spread the fires
+   * @param count number of fires
+   * @param xs destination for the X coordinates
+   * @param ys destination for the Y coordinates
+   */
+  public void generate(Distribution distribution, int count, int[] xs, int[] ys) {
+    if (count > cells - 1)
+      throw new IllegalArgumentException("City only has room for " + (cells - 1) + " fires: " + count);
+    resetSeen(count);
+
+    int generated = 0;
+    switch (distribution) {
+      case UNIFORM:
+        generated = uniform(count, xs, ys, 0);
+        break;
+      case CLUSTERED:
+        generated = clustered(count, xs, ys);
+        break;
+      case HOTSPOT:
+        generated = hotspot(count, xs, ys);
+        break;
+    }
+
+    // Dense clusters and hotspots can run out of free cells, top up with uniform fires
+    if (generated < count)
+      uniform(count, xs, ys, generated);
+  }
+
+  /**
+   * Generates distinct fire locations
+   *
+   * @param distribution how to spread the fires
+   * @param count number of fires
+   * @return the fire locations
+   */
+  public CityNode[] generate(Distribution distribution, int count) {
+    int[] xs = new int[count];
+    int[] ys = new int[count];
+    generate(distribution, count, xs, ys);
+
+    CityNode[] fires = new CityNode[count];
+    for (int i = 0; i < count; i++)
+      fires[i] = new CityNode(xs[i], ys[i]);
+    return fires;
+  }
+
+  /**
+   * Robert Floyd's sampling of distinct cells, skipping the FireStation. Needs no retries however
+   * dense the sample is. Fills xs, ys from start to count
+   */
+  private int uniform(int count, int[] xs, int[] ys, int start) {
+    int generated = start;
+    long n = cells - 1;
+    for (long j = n - (count - start); j < n && generated < count; j++) {
+      long pick = random.nextLong(j + 1);
+      long idx = skipFireStation(pick);
+      if (!add(idx)) {
+        idx = skipFireStation(j);
+        // j is new to Floyd's sample, but may clash with a cell taken by a non uniform phase
+        if (!add(idx))
+          continue;
+      }
+      xs[generated] = (int) (idx / yDimension);
+      ys[generated] = (int) (idx % yDimension);
+      generated++;
+    }
+    while (generated < count) {
+      long idx = skipFireStation(random.nextLong(n));
+      if (add(idx)) {
+        xs[generated] = (int) (idx / yDimension);
+        ys[generated] = (int) (idx % yDimension);
+        generated++;
+      }
+    }
+    return generated;
+  }
+
+  private int clustered(int count, int[] xs, int[] ys) {
+    int[] centreXs = new int[clusters];
+    int[] centreYs = new int[clusters];
+    for (int i = 0; i < clusters; i++) {
+      centreXs[i] = random.nextInt(xDimension);
+      centreYs[i] = random.nextInt(yDimension);
+    }
+    double spreadX = Math.max(1, clusterSpread * xDimension);
+    double spreadY = Math.max(1, clusterSpread * yDimension);
+
+    int generated = 0;
+    long attempts = (long) count * MAX_ATTEMPTS_PER_FIRE;
+    while (generated < count && attempts-- > 0) {
+      int cluster = random.nextInt(clusters);
+      int x = clamp((int) Math.round(centreXs[cluster] + gaussian() * spreadX), xDimension);
+      int y = clamp((int) Math.round(centreYs[cluster] + gaussian() * spreadY), yDimension);
+      generated = tryAdd(x, y, xs, ys, generated);
+    }
+    return generated;
+  }
+
+  private int hotspot(int count, int[] xs, int[] ys) {
+    int side = Math.max(1, (int) Math.round(hotspotSize * Math.min(xDimension, yDimension)));
+    int[] cornerXs = new int[hotspots];
+    int[] cornerYs = new int[hotspots];
+    for (int i = 0; i < hotspots; i++) {
+      cornerXs[i] = random.nextInt(Math.max(1, xDimension - side + 1));
+      cornerYs[i] = random.nextInt(Math.max(1, yDimension - side + 1));
+    }
+
+    int hot = (int) Math.round(count * hotspotFraction);
+    int generated = 0;
+    long attempts = (long) hot * MAX_ATTEMPTS_PER_FIRE;
+    while (generated < hot && attempts-- > 0) {
+      int spot = random.nextInt(hotspots);
+      int x = Math.min(xDimension - 1, cornerXs[spot] + random.nextInt(side));
+      int y = Math.min(yDimension - 1, cornerYs[spot] + random.nextInt(side));
+      generated = tryAdd(x, y, xs, ys, generated);
+    }
+    return generated;
+  }
+
+  private int tryAdd(int x, int y, int[] xs, int[] ys, int generated) {
+    long idx = (long) x * yDimension + y;
+    if (idx == fireStationIdx || !add(idx))
+      return generated;
+    xs[generated] = x;
+    ys[generated] = y;
+    return generated + 1;
+  }
+
+  private long skipFireStation(long idx) {
+    return idx >= fireStationIdx ? idx + 1 : idx;
+  }
+
+  private double gaussian() {
+    // Box-Muller, SplittableRandom has no nextGaussian
+    double u = 1 - random.nextDouble();
+    double v = random.nextDouble();
+    return Math.sqrt(-2 * Math.log(u)) * Math.cos(2 * Math.PI * v);
+  }
+
+  private static int clamp(int value, int dimension) {
+    return Math.max(0, Math.min(dimension - 1, value));
+  }
+
+  private void resetSeen(int count) {
+    int capacity = Integer.highestOneBit(Math.max(4, count) * 2 - 1) << 1;
+    if (seen.length < capacity)
+      seen = new long[capacity];
+    Arrays.fill(seen, EMPTY);
+    seenMask = seen.length - 1;
+  }
+
+  /**
+   * Adds a cell to the seen set
+   *
+   * @return true if the cell was not already in the set
+   */
+  private boolean add(long idx) {
+    int slot = (int) (mix(idx) & seenMask);
+    while (seen[slot] != EMPTY) {
+      if (seen[slot] == idx)
+        return false;
+      slot = (slot + 1) & seenMask;
+    }
+    seen[slot] = idx;
+    return true;
+  }
+
+  private static long mix(long z) {
+    z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+    z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+    return z ^ (z >>> 33);
+  }
+}